@@ -0,0 +1,90 @@
+package com.snourian.micronaut.querydsl.processor;
+
+import io.micronaut.inject.ast.ClassElement;
+import io.micronaut.inject.ast.PropertyElement;
+import io.micronaut.inject.visitor.TypeElementVisitor;
+import io.micronaut.inject.visitor.VisitorContext;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Set;
+
+// Generates a static metadata table (see EntityMetadata in the library) for each @Entity and @Embeddable class,
+// and registers it as an EntityMetadataProvider service. At runtime, property paths are resolved from these tables
+// instead of walking the bean introspections and their generic type arguments.
+public class EntityMetadataVisitor implements TypeElementVisitor<Object, Object> {
+
+    private static final String ENTITY = "javax.persistence.Entity";
+    private static final String EMBEDDABLE = "javax.persistence.Embeddable";
+    private static final String METADATA = "com.snourian.micronaut.querydsl.expression.EntityMetadata";
+    private static final String PROVIDER = "com.snourian.micronaut.querydsl.expression.EntityMetadataProvider";
+
+    @Override
+    public Set<String> getSupportedAnnotationNames() {
+        return Set.of(ENTITY, EMBEDDABLE);
+    }
+
+    @Override
+    public VisitorKind getVisitorKind() {
+        return VisitorKind.AGGREGATING;
+    }
+
+    @Override
+    public void visitClass(ClassElement element, VisitorContext context) {
+        final boolean entity = element.hasAnnotation(ENTITY);
+        if (!entity && !element.hasAnnotation(EMBEDDABLE))
+            return;
+        final String packageName = element.getPackageName();
+        // e.g. com.example.Department -> com.example.$Department$QuerydslMetadata
+        final String binaryName = packageName.isEmpty()
+                ? element.getName()
+                : element.getName().substring(packageName.length() + 1);
+        final String simpleName = "$" + binaryName.replace('$', '_') + "$QuerydslMetadata";
+        context.visitGeneratedSourceFile(packageName, simpleName, element).ifPresent(file -> {
+            try (Writer writer = file.openWriter()) {
+                writer.write(source(element, entity, packageName, simpleName));
+            } catch (IOException e) {
+                context.fail("Cannot generate the entity metadata of " + element.getName() + ": " + e.getMessage(), element);
+            }
+        });
+        context.visitServiceDescriptor(PROVIDER, packageName.isEmpty() ? simpleName : packageName + "." + simpleName);
+    }
+
+    private static String source(ClassElement element, boolean entity, String packageName, String simpleName) {
+        final StringBuilder sb = new StringBuilder();
+        if (!packageName.isEmpty())
+            sb.append("package ").append(packageName).append(";\n\n");
+        sb.append("public final class ").append(simpleName).append(" implements ").append(PROVIDER).append(" {\n\n")
+                .append("    private static final ").append(METADATA).append(" METADATA = ").append(METADATA)
+                .append(entity ? ".entity(" : ".embeddable(").append(classLiteral(element));
+        for (PropertyElement property : element.getBeanProperties()) {
+            final ClassElement type = property.getType();
+            sb.append(",\n            ").append(METADATA).append(".Property.of(\"").append(property.getName())
+                    .append("\", ").append(classLiteral(type)).append(", ");
+            // the generic type of collections, e.g. Employee for List<Employee>
+            if (!type.isArray() && type.isAssignable(Iterable.class) && type.getFirstTypeArgument().isPresent())
+                sb.append(classLiteral(type.getFirstTypeArgument().get()));
+            else
+                sb.append("null");
+            sb.append(')');
+        }
+        sb.append(");\n\n")
+                .append("    @Override\n")
+                .append("    public ").append(METADATA).append(" getMetadata() {\n")
+                .append("        return METADATA;\n")
+                .append("    }\n")
+                .append("}\n");
+        return sb.toString();
+    }
+
+    // e.g. java.lang.String.class, long.class, byte[].class or com.example.Outer.Inner.class
+    private static String classLiteral(ClassElement type) {
+        return typeName(type) + ".class";
+    }
+
+    private static String typeName(ClassElement type) {
+        if (type.isArray())
+            return typeName(type.fromArray()) + "[]";
+        return type.getName().replace('$', '.');
+    }
+}
@@ -0,0 +1,43 @@
+package com.snourian.micronaut.querydsl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Search params of the benchmarks, on root properties, embeddables, and one or two levels of relations.
+// The first predicates are separate params, and the rest are added to an anyOf(...) group of the 'EXPR' param
+final class BenchmarkParams {
+
+    private static final String[][] PREDICATES = {
+            {"name", "starts_with(Department-1)"},
+            {"employees.rank", "in(Manager,Chief)"},
+            {"employees.score", "gt(40)"},
+            {"location.city", "in(City-1,City-2,City-3)"},
+            {"employees.projects.budget", "loe(60000)"},
+            {"location.country", "eq(Country-1)"},
+            {"employees.hired", "goe(2015-01-01)"},
+            {"employees.projects.name", "string_contains_ic(project)"},
+            {"employees.name", "is_not_null()"},
+            {"id", "lt(1000)"}
+    };
+
+    private BenchmarkParams() {
+    }
+
+    static Map<String, String> of(int count) {
+        final Map<String, String> params = new HashMap<>();
+        final List<String> group = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (i < PREDICATES.length)
+                params.put(PREDICATES[i][0], PREDICATES[i][1]);
+            else if (i % 2 == 0)
+                group.add("employees.name=eq(Employee-" + i + ")");
+            else
+                group.add("employees.projects.name=starts_with(Project-" + i + ")");
+        }
+        if (!group.isEmpty())
+            params.put("EXPR", "anyOf(" + String.join(",", group) + ")");
+        return params;
+    }
+}
@@ -0,0 +1,52 @@
+package com.snourian.micronaut.querydsl;
+
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.PathBuilder;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.snourian.micronaut.querydsl.expression.ExpressionEntries;
+import com.snourian.micronaut.querydsl.expression.ExpressionFactory;
+import com.snourian.micronaut.querydsl.model.Department;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// The steps of a query before it reaches the database: parsing the params, building the predicate and
+// serializing the JPQL of the query
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExpressionBenchmark {
+
+    @Param({"1", "10", "50"})
+    private int paramCount;
+
+    private Map<String, String> params;
+    private QueryParameters queryParameters;
+    private JPAQuery<Department> query;
+
+    @Setup
+    public void setup() {
+        params = BenchmarkParams.of(paramCount);
+        queryParameters = new QueryParameters(params);
+        final ExpressionEntries entries = ExpressionFactory.createFromParams(Department.class, params);
+        final QueryPlan plan = QueryPlanCache.getInstance().getPlan(Department.class, entries, QueryOptions.DEFAULT);
+        final PathBuilder<Department> path = new PathBuilder<>(Department.class, "department");
+        query = plan.applyTo(new JPAQuery<Department>().select(path).from(path), entries);
+    }
+
+    @Benchmark
+    public ExpressionEntries createFromParams() {
+        return ExpressionFactory.createFromParams(Department.class, params);
+    }
+
+    @Benchmark
+    public Predicate toPredicate() {
+        return new QuerydslPredicateBuilder<>(Department.class, queryParameters).toPredicate();
+    }
+
+    @Benchmark
+    public String serialize() {
+        return query.toString();
+    }
+}
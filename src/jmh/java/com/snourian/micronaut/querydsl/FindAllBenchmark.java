@@ -0,0 +1,134 @@
+package com.snourian.micronaut.querydsl;
+
+import com.snourian.micronaut.querydsl.model.*;
+import io.micronaut.data.model.Page;
+import io.micronaut.data.model.Pageable;
+import io.micronaut.data.model.Sort;
+import org.openjdk.jmh.annotations.*;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// End-to-end paged findAll against an in-memory H2 database (see META-INF/persistence.xml).
+// The data set is generated with a fixed seed, so every run queries the same rows
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FindAllBenchmark {
+
+    private static final int DEPARTMENTS = 100;
+    private static final int EMPLOYEES_PER_DEPARTMENT = 50;
+    private static final int PROJECTS = 200;
+
+    @Param({"1", "5", "10"})
+    private int paramCount;
+
+    private EntityManagerFactory emf;
+    private QueryParameters params;
+    private final Pageable pageable = Pageable.from(0, 20, Sort.of(Sort.Order.asc("id")));
+
+    @Setup
+    public void setup() {
+        emf = Persistence.createEntityManagerFactory("benchmark");
+        populate();
+        params = new QueryParameters(BenchmarkParams.of(paramCount));
+    }
+
+    @TearDown
+    public void tearDown() {
+        emf.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Session {
+        private EntityManager em;
+        private DepartmentRepository repository;
+
+        @Setup
+        public void setup(FindAllBenchmark benchmark) {
+            em = benchmark.emf.createEntityManager();
+            repository = new DepartmentRepository(em);
+        }
+
+        @TearDown
+        public void tearDown() {
+            em.close();
+        }
+    }
+
+    @Benchmark
+    public Page<Department> findAll(Session session) {
+        final Page<Department> page = session.repository.findAll(params, pageable);
+        // don't let the persistence context grow between invocations
+        session.em.clear();
+        return page;
+    }
+
+    private void populate() {
+        final Random random = new Random(42);
+        final Rank[] ranks = Rank.values();
+        final EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        final List<Project> projects = new ArrayList<>(PROJECTS);
+        for (long i = 1; i <= PROJECTS; i++) {
+            final Project project = new Project();
+            project.setId(i);
+            project.setName("Project-" + i);
+            project.setBudget(BigDecimal.valueOf(1000L + random.nextInt(100_000)));
+            em.persist(project);
+            projects.add(project);
+        }
+        long employeeId = 1;
+        for (long i = 1; i <= DEPARTMENTS; i++) {
+            final Department department = new Department();
+            department.setId(i);
+            department.setName("Department-" + i);
+            final Location location = new Location();
+            location.setCity("City-" + random.nextInt(20));
+            location.setCountry("Country-" + random.nextInt(5));
+            department.setLocation(location);
+            em.persist(department);
+            for (int j = 0; j < EMPLOYEES_PER_DEPARTMENT; j++) {
+                final Employee employee = new Employee();
+                employee.setId(employeeId);
+                employee.setName("Employee-" + employeeId++);
+                employee.setRank(ranks[random.nextInt(ranks.length)]);
+                employee.setScore(random.nextInt(100));
+                employee.setHired(LocalDate.of(2005, 1, 1).plusDays(random.nextInt(6000)));
+                employee.setDepartment(department);
+                for (int k = 0; k < 3; k++)
+                    employee.getProjects().add(projects.get(random.nextInt(PROJECTS)));
+                em.persist(employee);
+            }
+            em.flush();
+            em.clear();
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    static class DepartmentRepository implements QuerydslPredicateExecutor<Department> {
+        private final EntityManager em;
+
+        DepartmentRepository(EntityManager em) {
+            this.em = em;
+        }
+
+        @Override
+        public EntityManager getEntityManager() {
+            return em;
+        }
+
+        @Override
+        public Class<Department> getEntityClass() {
+            return Department.class;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.snourian.micronaut.querydsl.model;
+
+import io.micronaut.core.annotation.Introspected;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+@Entity
+@Introspected
+public class Employee {
+
+    @Id
+    private Long id;
+    private String name;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "employee_rank")
+    private Rank rank;
+    private Integer score;
+    private LocalDate hired;
+    @ManyToOne(fetch = FetchType.LAZY)
+    private Department department;
+    @ManyToMany
+    private List<Project> projects = new ArrayList<>();
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Rank getRank() {
+        return rank;
+    }
+
+    public void setRank(Rank rank) {
+        this.rank = rank;
+    }
+
+    public Integer getScore() {
+        return score;
+    }
+
+    public void setScore(Integer score) {
+        this.score = score;
+    }
+
+    public LocalDate getHired() {
+        return hired;
+    }
+
+    public void setHired(LocalDate hired) {
+        this.hired = hired;
+    }
+
+    public Department getDepartment() {
+        return department;
+    }
+
+    public void setDepartment(Department department) {
+        this.department = department;
+    }
+
+    public List<Project> getProjects() {
+        return projects;
+    }
+
+    public void setProjects(List<Project> projects) {
+        this.projects = projects;
+    }
+}
@@ -0,0 +1,41 @@
+package com.snourian.micronaut.querydsl.model;
+
+import io.micronaut.core.annotation.Introspected;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.math.BigDecimal;
+
+@Entity
+@Introspected
+public class Project {
+
+    @Id
+    private Long id;
+    private String name;
+    private BigDecimal budget;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public BigDecimal getBudget() {
+        return budget;
+    }
+
+    public void setBudget(BigDecimal budget) {
+        this.budget = budget;
+    }
+}
@@ -0,0 +1,5 @@
+package com.snourian.micronaut.querydsl.model;
+
+public enum Rank {
+    Staff, Senior, Manager, Chief
+}
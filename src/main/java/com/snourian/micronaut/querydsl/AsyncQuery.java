@@ -0,0 +1,128 @@
+package com.snourian.micronaut.querydsl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Runs a query of an async executor method (findAllAsync, ...) on QueryOptions.asyncExecutor, with an EntityManager
+// of its own, since the EntityManager of the repository is bound to the session of the caller's thread.
+// If the future is cancelled or times out while the query runs, the JDBC statement is cancelled too
+// (if the JPA provider supports it, e.g. Hibernate's Session.cancelQuery()); the query timeout hint of
+// QueryOptions.timeout stops it on the database otherwise
+final class AsyncQuery<R> implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncQuery.class);
+
+    // the EntityManager of the query running on the current thread, see QuerydslPredicateExecutor.entityManager()
+    private static final ThreadLocal<EntityManager> current = new ThreadLocal<>();
+
+    private final EntityManagerFactory factory;
+    private final Supplier<R> query;
+    private final CompletableFuture<R> future = new CompletableFuture<>();
+    private volatile EntityManager running;
+
+    private AsyncQuery(EntityManagerFactory factory, Supplier<R> query) {
+        this.factory = factory;
+        this.query = query;
+        future.whenComplete((result, error) -> {
+            if (error != null)
+                cancelStatement();
+        });
+    }
+
+    static EntityManager current() {
+        return current.get();
+    }
+
+    static <R> CompletableFuture<R> supply(EntityManagerFactory factory, QueryOptions options, Supplier<R> query) {
+        AsyncQuery<R> task = new AsyncQuery<>(factory, query);
+        Duration timeout = options.getTimeout();
+        if (timeout != null)
+            task.future.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        try {
+            options.getAsyncExecutor().execute(task);
+        } catch (RejectedExecutionException e) {
+            task.future.completeExceptionally(e);
+        }
+        return task.future;
+    }
+
+    // opens the stream with an EntityManager of its own, which is closed with the stream. A resource-local
+    // EntityManager streams in a transaction of its own, so the connection (and the cursor) stays open between
+    // chunks, e.g. the PostgreSQL driver only fetches in chunks without auto-commit. It is rolled back on close
+    static <T> Stream<T> stream(EntityManagerFactory factory, Supplier<Stream<T>> source) {
+        EntityManager em = factory.createEntityManager();
+        EntityTransaction tx = begin(em);
+        current.set(em);
+        try {
+            return source.get().onClose(() -> close(em, tx));
+        } catch (RuntimeException e) {
+            close(em, tx);
+            throw e;
+        } finally {
+            current.remove();
+        }
+    }
+
+    // null for a JTA EntityManager
+    private static EntityTransaction begin(EntityManager em) {
+        try {
+            EntityTransaction tx = em.getTransaction();
+            tx.begin();
+            return tx;
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    private static void close(EntityManager em, EntityTransaction tx) {
+        try {
+            if (tx != null && tx.isActive())
+                tx.rollback();
+        } finally {
+            em.close();
+        }
+    }
+
+    @Override
+    public void run() {
+        // cancelled or timed out while waiting in the queue
+        if (future.isDone())
+            return;
+        EntityManager em = factory.createEntityManager();
+        current.set(em);
+        running = em;
+        try {
+            future.complete(query.get());
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        } finally {
+            running = null;
+            current.remove();
+            em.close();
+        }
+    }
+
+    private void cancelStatement() {
+        EntityManager em = running;
+        if (em == null)
+            return;
+        try {
+            Object session = em.getDelegate();
+            session.getClass().getMethod("cancelQuery").invoke(session);
+        } catch (NoSuchMethodException e) {
+            // not supported by the provider, the statement runs until the query timeout
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.debug("Failed to cancel the query", e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.snourian.micronaut.querydsl;
+
+import io.micronaut.core.annotation.Introspected;
+import io.micronaut.data.model.Page;
+import io.micronaut.data.model.Pageable;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// A page counted with CountStrategy.capped(cap). Above the cap, the total size is a lower bound (at least cap + 1)
+// and the result should be shown as 'more than cap'
+@Introspected
+public class CappedPage<T> implements Page<T> {
+
+    private final List<T> content;
+    private final Pageable pageable;
+    private final long totalSize;
+    private final long cap;
+
+    public CappedPage(List<T> content, Pageable pageable, long totalSize, long cap) {
+        this.content = Collections.unmodifiableList(content);
+        this.pageable = pageable;
+        this.totalSize = totalSize;
+        this.cap = cap;
+    }
+
+    @Override
+    public List<T> getContent() {
+        return content;
+    }
+
+    @Override
+    public Pageable getPageable() {
+        return pageable;
+    }
+
+    @Override
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public long getCap() {
+        return cap;
+    }
+
+    // true if there are more than 'cap' rows, and the total size is not exact
+    public boolean isCapped() {
+        return totalSize > cap;
+    }
+
+    @Override
+    public <R> CappedPage<R> map(Function<T, R> function) {
+        return new CappedPage<>(content.stream().map(function).collect(Collectors.toList()), pageable, totalSize, cap);
+    }
+}
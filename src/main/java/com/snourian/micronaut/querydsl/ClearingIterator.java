@@ -0,0 +1,38 @@
+package com.snourian.micronaut.querydsl;
+
+import javax.persistence.EntityManager;
+import java.util.Iterator;
+
+// Clears the persistence context every 'clearEvery' rows while iterating over a scrolled query. Otherwise the
+// persistence context would grow with every row: the entities, their dirty-checking snapshots, and the relations
+// fetch joined or lazily loaded with them. The EntityManager must belong to the stream (see AsyncQuery.stream)
+class ClearingIterator<T> implements Iterator<T> {
+
+    private final Iterator<T> iterator;
+    private final EntityManager em;
+    private final int clearEvery;
+    private int emitted;
+
+    ClearingIterator(Iterator<T> iterator, EntityManager em, int clearEvery) {
+        this.iterator = iterator;
+        this.em = em;
+        this.clearEvery = clearEvery;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return iterator.hasNext();
+    }
+
+    @Override
+    public T next() {
+        // cleared before fetching the next row, so the consumer can still use the previous row
+        if (clearEvery > 0 && emitted >= clearEvery) {
+            em.clear();
+            emitted = 0;
+        }
+        T row = iterator.next();
+        emitted++;
+        return row;
+    }
+}
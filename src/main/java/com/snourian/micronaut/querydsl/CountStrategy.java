@@ -0,0 +1,64 @@
+package com.snourian.micronaut.querydsl;
+
+import io.micronaut.core.util.clhm.ConcurrentLinkedHashMap;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+
+// How the total size of a paged findAll is counted, see QueryOptions.countStrategy
+public final class CountStrategy {
+
+    // a count query for every page (unless the total size can be computed from the page itself)
+    public static final CountStrategy EXACT = new CountStrategy(null, -1);
+
+    // strategies of cached(Duration), so options built per call (e.g. in getQueryOptions()) share their cache
+    private static final Map<Duration, CountStrategy> cachedByTtl =
+            new ConcurrentLinkedHashMap.Builder<Duration, CountStrategy>()
+                    .maximumWeightedCapacity(16)
+                    .build();
+
+    private final QueryResultCache cache;
+    private final long cap;
+
+    private CountStrategy(QueryResultCache cache, long cap) {
+        this.cache = cache;
+        this.cap = cap;
+    }
+
+    // exact counts, cached by the shape and values of the query (not its page or sort) for the ttl, so paging and
+    // sorting the same result don't count it again. Entries are invalidated by changes of the entity types of the
+    // query, see EntityChangeTracker. Queries of a Predicate are counted exactly.
+    // The same ttl returns the same strategy (and cache), whose counts are keyed by their entity
+    public static CountStrategy cached(Duration ttl) {
+        Objects.requireNonNull(ttl, "ttl");
+        return cachedByTtl.computeIfAbsent(ttl,
+                key -> cached(new QueryResultCache(QueryResultCache.DEFAULT_MAX_SIZE, key)));
+    }
+
+    // counts cached in the given cache. Build it once (e.g. in a static field or a bean), not per call
+    public static CountStrategy cached(QueryResultCache cache) {
+        return new CountStrategy(Objects.requireNonNull(cache, "cache"), -1);
+    }
+
+    // counts up to cap + 1 rows. Pages are CappedPages, which report 'more than cap' above the cap
+    public static CountStrategy capped(long cap) {
+        if (cap <= 0)
+            throw new IllegalArgumentException("cap must be positive: " + cap);
+        return new CountStrategy(null, cap);
+    }
+
+    // null if counts are not cached
+    QueryResultCache getCache() {
+        return cache;
+    }
+
+    // -1 if counts are not capped
+    long getCap() {
+        return cap;
+    }
+
+    boolean isCapped() {
+        return cap > 0;
+    }
+}
@@ -0,0 +1,54 @@
+package com.snourian.micronaut.querydsl;
+
+import io.micronaut.core.annotation.Introspected;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// A page of a keyset (seek) paginated query. The cursors are opaque and should be passed back as they are to
+// fetch the next or the previous page. A null cursor means there is no page in that direction.
+@Introspected
+public class CursorPage<T> {
+
+    private final List<T> content;
+    private final int size;
+    private final String nextCursor;
+    private final String previousCursor;
+
+    public CursorPage(List<T> content, int size, String nextCursor, String previousCursor) {
+        this.content = Collections.unmodifiableList(content);
+        this.size = size;
+        this.nextCursor = nextCursor;
+        this.previousCursor = previousCursor;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public String getPreviousCursor() {
+        return previousCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    public boolean hasPrevious() {
+        return previousCursor != null;
+    }
+
+    public <R> CursorPage<R> map(Function<T, R> mapper) {
+        return new CursorPage<>(content.stream().map(mapper).collect(Collectors.toList()), size, nextCursor, previousCursor);
+    }
+}
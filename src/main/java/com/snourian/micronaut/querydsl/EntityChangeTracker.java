@@ -0,0 +1,47 @@
+package com.snourian.micronaut.querydsl;
+
+import io.micronaut.core.reflect.ClassUtils;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// JPA entity listener counting the changes (generations) of every entity type. Register it for all entities as a
+// default listener in META-INF/orm.xml (persistence-unit-defaults/entity-listeners), or per entity with
+// @EntityListeners(EntityChangeTracker.class). Entries of a QueryResultCache are invalidated when the generation of
+// an entity type they touch has changed. Every change also starts the sticky primary window of ReadRouting.
+// The listeners run at flush time, before the commit: a concurrent query could still read (and cache) the rows of
+// before the commit under the new generation. So the types are changed again after the transaction completes, if
+// micronaut-data-tx manages it. Otherwise such entries are only evicted by their time-to-live
+public class EntityChangeTracker {
+
+    private static final Map<Class<?>, AtomicLong> generations = new ConcurrentHashMap<>();
+    private static final boolean TX_SYNCHRONIZATION = ClassUtils.isPresent(
+            "io.micronaut.transaction.support.TransactionSynchronizationManager",
+            EntityChangeTracker.class.getClassLoader());
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(Object entity) {
+        changed(entity.getClass());
+        ReadRouting.markWrite();
+        if (TX_SYNCHRONIZATION)
+            TransactionCompletion.register(entity.getClass());
+    }
+
+    // the type and its super types are changed, so queries on a parent of an entity hierarchy are invalidated too.
+    // Call it after bulk updates/deletes and native queries, which don't trigger entity listeners
+    public static void changed(Class<?> type) {
+        for (Class<?> clazz = type; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass())
+            generations.computeIfAbsent(clazz, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    public static long generation(Class<?> type) {
+        AtomicLong generation = generations.get(type);
+        return generation != null ? generation.get() : 0;
+    }
+}
@@ -0,0 +1,38 @@
+package com.snourian.micronaut.querydsl;
+
+import io.micronaut.core.beans.BeanIntrospection;
+import io.micronaut.core.beans.BeanProperty;
+
+import javax.persistence.Id;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Finds the @Id property of entities through their compile-time BeanIntrospection
+public class EntityIds {
+
+    private static final Map<Class<?>, BeanProperty<?, Object>> idProperties = new ConcurrentHashMap<>();
+
+    private EntityIds() {
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> BeanProperty<T, Object> idProperty(Class<T> entity) {
+        return (BeanProperty<T, Object>) idProperties.computeIfAbsent(entity, EntityIds::findIdProperty);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Object getId(Class<?> entity, Object bean) {
+        return ((BeanProperty<Object, Object>) idProperty(entity)).get(bean);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BeanProperty<?, Object> findIdProperty(Class<?> entity) {
+        BeanIntrospection<?> intro = BeanIntrospection.getIntrospection(entity);
+        return intro.getBeanProperties()
+                .stream()
+                .filter(prop -> prop.hasAnnotation(Id.class))
+                .findFirst()
+                .map(prop -> (BeanProperty<?, Object>) prop)
+                .orElseThrow(() -> new RuntimeException("Cannot find the @Id property of entity '" + entity.getName() + "'"));
+    }
+}
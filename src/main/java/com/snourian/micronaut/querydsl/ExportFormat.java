@@ -0,0 +1,9 @@
+package com.snourian.micronaut.querydsl;
+
+// The format of QuerydslPredicateExecutor.export()
+public enum ExportFormat {
+    // one JSON object per line, with the selected fields as properties
+    NDJSON,
+    // RFC 4180 CSV with a header line of the selected fields
+    CSV
+}
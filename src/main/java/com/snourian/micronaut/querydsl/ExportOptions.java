@@ -0,0 +1,102 @@
+package com.snourian.micronaut.querydsl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.util.Objects;
+
+// Options of QuerydslPredicateExecutor.export()
+public class ExportOptions {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1000;
+
+    private static final ObjectMapper DEFAULT_MAPPER = new ObjectMapper()
+            .findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private final ExportFormat format;
+    private final int partitions;
+    private final boolean ordered;
+    private final int bufferSize;
+    private final ObjectMapper objectMapper;
+
+    private ExportOptions(Builder builder) {
+        this.format = builder.format;
+        this.partitions = builder.partitions;
+        this.ordered = builder.ordered;
+        this.bufferSize = builder.bufferSize;
+        this.objectMapper = builder.objectMapper;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public ExportFormat getFormat() {
+        return format;
+    }
+
+    // number of primary key ranges which are scanned concurrently, each on its own EntityManager (and connection)
+    public int getPartitions() {
+        return partitions;
+    }
+
+    // rows are written in the order of the primary key, instead of as they arrive from the partitions
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    // rows a partition can read ahead of the writer. Bounds the heap usage of an export
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    // writes the values of NDJSON rows, e.g. the ObjectMapper bean of the application
+    public ObjectMapper getObjectMapper() {
+        return objectMapper != null ? objectMapper : DEFAULT_MAPPER;
+    }
+
+    public static class Builder {
+        private ExportFormat format = ExportFormat.NDJSON;
+        private int partitions = Runtime.getRuntime().availableProcessors();
+        private boolean ordered;
+        private int bufferSize = DEFAULT_BUFFER_SIZE;
+        private ObjectMapper objectMapper;
+
+        private Builder() {
+        }
+
+        public Builder format(ExportFormat format) {
+            this.format = Objects.requireNonNull(format, "format");
+            return this;
+        }
+
+        public Builder partitions(int partitions) {
+            if (partitions <= 0)
+                throw new IllegalArgumentException("partitions must be positive: " + partitions);
+            this.partitions = partitions;
+            return this;
+        }
+
+        public Builder ordered(boolean ordered) {
+            this.ordered = ordered;
+            return this;
+        }
+
+        public Builder bufferSize(int bufferSize) {
+            if (bufferSize <= 0)
+                throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        public Builder objectMapper(ObjectMapper objectMapper) {
+            this.objectMapper = objectMapper;
+            return this;
+        }
+
+        public ExportOptions build() {
+            return new ExportOptions(this);
+        }
+    }
+}
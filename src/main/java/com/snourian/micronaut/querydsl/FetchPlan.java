@@ -0,0 +1,205 @@
+package com.snourian.micronaut.querydsl;
+
+import com.querydsl.core.types.EntityPath;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.PathBuilder;
+import com.querydsl.core.types.dsl.SimplePath;
+import com.querydsl.core.util.StringUtils;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.snourian.micronaut.querydsl.expression.ExpressionFactory;
+import com.snourian.micronaut.querydsl.expression.PredicatePath;
+import io.micronaut.core.beans.BeanIntrospection;
+import io.micronaut.core.beans.BeanProperty;
+import io.micronaut.core.util.clhm.ConcurrentLinkedHashMap;
+
+import javax.persistence.EntityManager;
+import java.util.*;
+
+// Relations to load with the entities of a query, e.g. 'employees,location.country', so mapping the result doesn't
+// trigger a lazy select per entity (N+1).
+// To-one paths are fetch joined. Joins which the filters already added get the same aliases and are fetched instead
+// of being joined twice. Collections are never fetch joined, so pages keep their size and offset: after the query,
+// every collection is loaded for all the entities of the result with one query per level, e.g.
+// select department from Department department left join fetch department.employees where department.id in (...)
+// Fetch plans are immutable and cached per (entity, paths).
+public class FetchPlan {
+
+    private static final Map<List<Object>, FetchPlan> cache =
+            new ConcurrentLinkedHashMap.Builder<List<Object>, FetchPlan>()
+                    .maximumWeightedCapacity(QueryPlanCache.DEFAULT_MAX_SIZE)
+                    .build();
+
+    private final Class<?> entity;
+    private final List<String> paths;
+    // to-one fetch joins, in the order they must be added to the query
+    private final List<QuerydslPredicateBuilder.JoinsData> joins;
+    private final Set<String> joinAliases;
+    // paths with a collection, loaded after the query
+    private final List<List<PredicatePath>> collections;
+
+    private FetchPlan(Class<?> entity, List<String> paths, Collection<QuerydslPredicateBuilder.JoinsData> joins,
+                      List<List<PredicatePath>> collections) {
+        this.entity = entity;
+        this.paths = Collections.unmodifiableList(paths);
+        this.joins = Collections.unmodifiableList(new ArrayList<>(joins));
+        final Set<String> aliases = new HashSet<>();
+        for (QuerydslPredicateBuilder.JoinsData join : joins)
+            aliases.add(PathResolver.aliasOf(join));
+        this.joinAliases = Collections.unmodifiableSet(aliases);
+        this.collections = Collections.unmodifiableList(collections);
+    }
+
+    // relation paths of the entity, e.g. 'employees', 'location' or 'employees.projects'
+    public static FetchPlan of(Class<?> entity, Collection<String> paths) {
+        final List<String> distinctPaths = new ArrayList<>(new LinkedHashSet<>(paths));
+        return cache.computeIfAbsent(Arrays.asList(entity, distinctPaths), key -> create(entity, distinctPaths));
+    }
+
+    // comma separated relation paths, e.g. the value of the 'FETCH' param
+    public static FetchPlan of(Class<?> entity, String paths) {
+        final List<String> list = new ArrayList<>();
+        for (String path : paths.split(",")) {
+            if (!path.trim().isEmpty())
+                list.add(path.trim());
+        }
+        return of(entity, list);
+    }
+
+    private static FetchPlan create(Class<?> entity, List<String> paths) {
+        final String parentName = StringUtils.uncapitalize(entity.getSimpleName());
+        final PathResolver resolver = new PathResolver(parentName, Expressions.path(entity, parentName));
+        final List<List<PredicatePath>> collections = new ArrayList<>();
+        for (String path : paths) {
+            final List<PredicatePath> relations = ExpressionFactory.resolveRelationPath(entity, path)
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown relation '" + path + "' for entity " + entity.getSimpleName()));
+            // the to-one prefix of the path is fetch joined, the rest is loaded after the query
+            int toOne = 0;
+            while (toOne < relations.size() && relations.get(toOne).getRelationType() != PredicatePath.RelationType.Collection)
+                toOne++;
+            if (toOne > 0)
+                resolver.toPath(relations.subList(0, toOne));
+            if (toOne < relations.size()) {
+                for (int i = toOne; i < relations.size(); i++) {
+                    if (relations.get(i).getRelationType() == PredicatePath.RelationType.Collection && i > 0
+                            && relations.get(i - 1).getRelationType() == PredicatePath.RelationType.Embedded)
+                        throw new IllegalArgumentException("Collections of embeddables can't be fetched: " + path);
+                }
+                collections.add(relations);
+            }
+        }
+        return new FetchPlan(entity, paths, resolver.getJoins(), collections);
+    }
+
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    // aliases of the to-one joins to fetch, e.g. 'department_location'
+    Set<String> getJoinAliases() {
+        return joinAliases;
+    }
+
+    boolean hasJoins() {
+        return !joins.isEmpty();
+    }
+
+    // add the fetch joins which are not already in the query (see QueryPlan.applyTo), as left joins
+    <R> JPAQuery<R> applyTo(JPAQuery<R> query) {
+        if (joins.isEmpty())
+            return query;
+        final Set<String> aliases = QuerydslHelper.joinAliases(query);
+        for (QuerydslPredicateBuilder.JoinsData join : joins) {
+            if (aliases.add(PathResolver.aliasOf(join)))
+                query = QuerydslHelper.join(query, join, true).fetchJoin();
+        }
+        return query;
+    }
+
+    // load the collections of the entities, which must be managed by the EntityManager. Owners are loaded in
+    // batches of QueryOptions.inListChunkSize ids
+    void load(List<?> entities, EntityManager em, QueryOptions options) {
+        if (entities.isEmpty())
+            return;
+        for (List<PredicatePath> relations : collections) {
+            Collection<Object> owners = new ArrayList<>(entities);
+            Class<?> ownerType = entity;
+            boolean loaded = false;
+            for (PredicatePath relation : relations) {
+                if (owners.isEmpty())
+                    break;
+                if (relation.getRelationType() == PredicatePath.RelationType.Collection) {
+                    fetchCollection(em, ownerType, relation, owners, options.getInListChunkSize());
+                    loaded = true;
+                }
+                owners = valuesOf(ownerType, relation.getProperty(), owners);
+                // to-one relations after a collection are lazy proxies. They are loaded with one query too
+                if (loaded && relation.getRelationType() == PredicatePath.RelationType.Single)
+                    fetchEntities(em, relation.getType(), owners, options.getInListChunkSize());
+                ownerType = relation.getType();
+            }
+        }
+    }
+
+    // select owner from Owner owner left join fetch owner.collection where owner.id in (...)
+    private static void fetchCollection(EntityManager em, Class<?> ownerType, PredicatePath relation,
+                                        Collection<Object> owners, int chunkSize) {
+        final String ownerName = StringUtils.uncapitalize(ownerType.getSimpleName());
+        final EntityPath<Object> ownerPath = entityPath(ownerType, ownerName);
+        final PathResolver resolver = new PathResolver(ownerName, ownerPath);
+        resolver.toPath(Collections.singletonList(
+                PredicatePath.of(relation.getType(), relation.getProperty(), ownerName, relation.getRelationType())));
+        final QuerydslPredicateBuilder.JoinsData join = resolver.getJoins().iterator().next();
+        for (List<Object> ids : chunks(idsOf(ownerType, owners), chunkSize)) {
+            JPAQuery<Object> query = new JPAQuery<>(em).select(ownerPath).distinct().from(ownerPath);
+            QuerydslHelper.join(query, join, true).fetchJoin().where(idPath(ownerType, ownerName).in(ids)).fetch();
+        }
+    }
+
+    // select entity from Entity entity where entity.id in (...)
+    private static void fetchEntities(EntityManager em, Class<?> type, Collection<Object> entities, int chunkSize) {
+        final String name = StringUtils.uncapitalize(type.getSimpleName());
+        for (List<Object> ids : chunks(idsOf(type, entities), chunkSize))
+            new JPAQuery<>(em).select(entityPath(type, name)).from(entityPath(type, name))
+                    .where(idPath(type, name).in(ids)).fetch();
+    }
+
+    // values of a relation of the owners. Elements of collections are flattened, and the same entity is only once
+    @SuppressWarnings("unchecked")
+    private static Collection<Object> valuesOf(Class<?> ownerType, String property, Collection<Object> owners) {
+        final BeanProperty<Object, Object> prop = (BeanProperty<Object, Object>) BeanIntrospection
+                .getIntrospection(ownerType).getRequiredProperty(property, Object.class);
+        final Set<Object> values = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Object owner : owners) {
+            Object value = prop.get(owner);
+            if (value instanceof Iterable)
+                ((Iterable<Object>) value).forEach(values::add);
+            else if (value != null)
+                values.add(value);
+        }
+        return values;
+    }
+
+    private static List<Object> idsOf(Class<?> type, Collection<Object> entities) {
+        final Set<Object> ids = new LinkedHashSet<>();
+        for (Object entity : entities)
+            ids.add(EntityIds.getId(type, entity));
+        return new ArrayList<>(ids);
+    }
+
+    static <E> List<List<E>> chunks(List<E> ids, int chunkSize) {
+        final List<List<E>> chunks = new ArrayList<>();
+        for (int start = 0; start < ids.size(); start += chunkSize)
+            chunks.add(ids.subList(start, Math.min(ids.size(), start + chunkSize)));
+        return chunks;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static EntityPath<Object> entityPath(Class<?> type, String name) {
+        return new PathBuilder<>((Class<Object>) type, name);
+    }
+
+    private static SimplePath<Object> idPath(Class<?> type, String name) {
+        final BeanProperty<?, Object> idProperty = EntityIds.idProperty(type);
+        return Expressions.path(idProperty.getType(), entityPath(type, name), idProperty.getName());
+    }
+}
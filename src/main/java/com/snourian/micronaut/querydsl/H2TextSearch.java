@@ -0,0 +1,47 @@
+package com.snourian.micronaut.querydsl;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+// The fts(text, query) function of TextSearchDialect.DEFAULT for H2 databases, e.g. of local tests.
+// The words are split like H2's built-in full-text search (FullText) does: a text matches if it contains every word
+// of the query, ignoring case. It is evaluated per row, without an index
+public final class H2TextSearch {
+
+    private H2TextSearch() {
+    }
+
+    // creates the fts alias in the database of the connection, e.g. in a @PostConstruct of a test bean
+    public static void install(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE ALIAS IF NOT EXISTS FTS FOR \"" + H2TextSearch.class.getName() + ".matches\"");
+        }
+    }
+
+    public static boolean matches(String text, String query) {
+        if (text == null || query == null)
+            return false;
+        final Set<String> words = words(text);
+        final Set<String> required = words(query);
+        return !required.isEmpty() && words.containsAll(required);
+    }
+
+    private static Set<String> words(String text) {
+        final Set<String> words = new HashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            final boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                words.add(text.substring(start, i).toUpperCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+}
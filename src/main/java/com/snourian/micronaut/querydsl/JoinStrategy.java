@@ -0,0 +1,11 @@
+package com.snourian.micronaut.querydsl;
+
+// How predicates on collection relations (OneToMany, ManyToMany) are added to the query
+public enum JoinStrategy {
+    // inner join every collection in the path. Rows of the root entity are multiplied by the matching elements
+    JOIN,
+    // a correlated 'exists' subquery per collection of the root entity. All predicates on the same collection
+    // (e.g. 'employees.rank' and 'employees.score') are in the same subquery, so they apply to the same element.
+    // No duplicate rows and the count query counts the root entities
+    EXISTS
+}
@@ -0,0 +1,300 @@
+package com.snourian.micronaut.querydsl;
+
+import com.querydsl.core.types.*;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.snourian.micronaut.querydsl.expression.ExpressionFactory;
+import com.snourian.micronaut.querydsl.expression.PredicatePath;
+import com.snourian.micronaut.querydsl.expression.PropertyPathMetadata;
+import com.snourian.micronaut.querydsl.expression.ValueConverters;
+import io.micronaut.core.beans.BeanIntrospection;
+import io.micronaut.core.beans.BeanProperty;
+import io.micronaut.data.model.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Function;
+
+// Keyset (seek) pagination: instead of 'offset n', the page starts after the sort-key values of the last row of the
+// previous page. The primary key is always the last sort key, so the order of rows is total.
+// Rows are seeked with the expanded form of the tuple comparison (a, b, id) > (x, y, z):
+//   a > x or (a = x and b > y) or (a = x and b = y and id > z)
+// since JPQL has no row value constructors. The comparison follows the order of the keys: lower() for ignore-case
+// sorts, and the null handling of the QueryOptions, e.g. 'a > x or a is null' if nulls are last. With
+// NullHandling.Default, nulls are the largest values (last ascending, first descending, like PostgreSQL and Oracle)
+// and the order says so explicitly, so it is the same on every database.
+class KeysetPagination<T> {
+
+    private static final char FORWARD = 'n';
+    private static final char BACKWARD = 'p';
+    // the same, including the row of the cursor: the way back from an empty page
+    private static final char FORWARD_FROM = 'N';
+    private static final char BACKWARD_FROM = 'P';
+
+    private final List<SortKey> keys;
+
+    private KeysetPagination(List<SortKey> keys) {
+        this.keys = keys;
+    }
+
+    static <T> KeysetPagination<T> of(Class<T> entity, EntityPath<T> entityPath, Sort sort,
+                                      OrderSpecifier.NullHandling nullHandling) {
+        List<SortKey> keys = new ArrayList<>();
+        boolean ascending = true;
+        final String idName = EntityIds.idProperty(entity).getName();
+        boolean hasId = false;
+        for (Sort.Order order : sort.getOrderBy()) {
+            final boolean id = order.getProperty().equals(idName);
+            keys.add(SortKey.of(entity, entityPath, order.getProperty(), order.isAscending(),
+                    order.isIgnoreCase(), id ? null : nullHandling));
+            ascending = order.isAscending();
+            hasId |= id;
+        }
+        // the primary key is the tiebreaker, in the direction of the last sort key
+        if (!hasId)
+            keys.add(SortKey.of(entity, entityPath, idName, ascending, false, null));
+        return new KeysetPagination<>(keys);
+    }
+
+    // adds the seek predicate, the order and the limit of the page to the query. The query is complete afterwards,
+    // e.g. to be logged
+    JPAQuery<T> seek(JPAQuery<T> query, int size, String cursor) {
+        final List<String> values = decode(cursor);
+        final char direction = directionOf(values);
+        if (values != null)
+            query.where(seekPredicate(values.subList(1, values.size()), isForward(direction),
+                    direction == FORWARD_FROM || direction == BACKWARD_FROM));
+        for (SortKey key : keys)
+            query.orderBy(key.toOrderSpecifier(isForward(direction)));
+        // one extra row to see if there is another page in this direction
+        return query.limit(size + 1L);
+    }
+
+    // the page of the rows of the seek query
+    CursorPage<T> page(List<T> fetched, int size, String cursor) {
+        final List<String> values = decode(cursor);
+        final boolean forward = isForward(directionOf(values));
+        List<T> rows = new ArrayList<>(fetched);
+        final boolean hasMore = rows.size() > size;
+        if (hasMore)
+            rows = new ArrayList<>(rows.subList(0, size));
+        if (!forward)
+            Collections.reverse(rows);
+        if (rows.isEmpty()) {
+            if (values == null)
+                return new CursorPage<>(rows, size, null, null);
+            // past the last (or before the first) row: the way back starts at the row of the cursor
+            final List<String> from = values.subList(1, values.size());
+            return forward
+                    ? new CursorPage<>(rows, size, null, encode(BACKWARD_FROM, from))
+                    : new CursorPage<>(rows, size, encode(FORWARD_FROM, from), null);
+        }
+        final boolean first = values == null;
+        final boolean hasNext = !forward || hasMore;
+        final boolean hasPrevious = forward ? !first : hasMore;
+        return new CursorPage<>(rows, size,
+                hasNext ? encode(FORWARD, valuesOf(rows.get(rows.size() - 1))) : null,
+                hasPrevious ? encode(BACKWARD, valuesOf(rows.get(0))) : null);
+    }
+
+    // inclusive: the last key is compared with >= (<=), so the row of the cursor is in the page
+    private Predicate seekPredicate(List<String> values, boolean forward, boolean inclusive) {
+        if (values.size() != keys.size())
+            throw new IllegalArgumentException("Invalid cursor: it doesn't match the sort of the query");
+        final List<Predicate> anyOf = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            final Predicate after = keys.get(i).after(values.get(i), forward, inclusive && i == keys.size() - 1);
+            if (after == null)
+                continue;
+            final List<Predicate> allOf = new ArrayList<>(i + 1);
+            for (int j = 0; j < i; j++)
+                allOf.add(keys.get(j).equalTo(values.get(j)));
+            allOf.add(after);
+            anyOf.add(ExpressionUtils.allOf(allOf));
+        }
+        // never empty: the primary key is one of the keys, and it is never null
+        return ExpressionUtils.anyOf(anyOf);
+    }
+
+    // the values of the sort keys of a row, formatted by their ValueConverters so they convert back to themselves.
+    // null values stay null
+    private List<String> valuesOf(T row) {
+        final List<String> values = new ArrayList<>(keys.size());
+        for (SortKey key : keys) {
+            final Object value = key.read(row);
+            values.add(value != null ? key.format(value) : null);
+        }
+        return values;
+    }
+
+    // cursor = base64url(direction + length-prefixed String values of the sort keys). The length of null is -1
+    private static String encode(char direction, List<String> values) {
+        final StringBuilder sb = new StringBuilder().append(direction);
+        for (String value : values) {
+            if (value == null)
+                sb.append("-1:");
+            else
+                sb.append(value.length()).append(':').append(value);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // first element is the direction. null if there is no cursor (the first page)
+    private static List<String> decode(String cursor) {
+        if (cursor == null || cursor.isEmpty())
+            return null;
+        final String str;
+        try {
+            str = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+        if (str.isEmpty() || "npNP".indexOf(str.charAt(0)) < 0)
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        final List<String> values = new ArrayList<>();
+        values.add(str.substring(0, 1));
+        int idx = 1;
+        while (idx < str.length()) {
+            final int colon = str.indexOf(':', idx);
+            if (colon < 0)
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            final int length;
+            try {
+                length = Integer.parseInt(str.substring(idx, colon));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+            }
+            if (length == -1) {
+                values.add(null);
+                idx = colon + 1;
+                continue;
+            }
+            final int end = colon + 1 + length;
+            if (length < 0 || end > str.length())
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            values.add(str.substring(colon + 1, end));
+            idx = end;
+        }
+        return values;
+    }
+
+    private static char directionOf(List<String> values) {
+        return values == null ? FORWARD : values.get(0).charAt(0);
+    }
+
+    private static boolean isForward(char direction) {
+        return direction == FORWARD || direction == FORWARD_FROM;
+    }
+
+    private static class SortKey {
+        // the sorted expression: the property, or lower(property) for an ignore-case sort
+        private final Expression<?> expr;
+        private final boolean ascending;
+        private final boolean ignoreCase;
+        // false for the primary key and primitives: no null handling at all
+        private final boolean nullable;
+        // whether nulls are after the other values, in the direction of the key
+        private final boolean nullsLast;
+        private final Function<String, Object> converter;
+        private final Function<Object, String> formatter;
+        private final List<BeanProperty<Object, Object>> getters;
+
+        private SortKey(Expression<?> expr, boolean ascending, boolean ignoreCase, boolean nullable, boolean nullsLast,
+                        Function<String, Object> converter, Function<Object, String> formatter,
+                        List<BeanProperty<Object, Object>> getters) {
+            this.expr = expr;
+            this.ascending = ascending;
+            this.ignoreCase = ignoreCase;
+            this.nullable = nullable;
+            this.nullsLast = nullsLast;
+            this.converter = converter;
+            this.formatter = formatter;
+            this.getters = getters;
+        }
+
+        // only properties of the root entity and its embeddables can be sort keys. Sorting on a joined entity
+        // multiplies or hides the rows of the root entity. nullHandling is null for the primary key
+        @SuppressWarnings("unchecked")
+        static SortKey of(Class<?> entity, EntityPath<?> entityPath, String property, boolean ascending,
+                          boolean ignoreCase, OrderSpecifier.NullHandling nullHandling) {
+            PropertyPathMetadata metadata = ExpressionFactory.resolvePath(entity, property)
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown sort property '" + property + "' for entity " + entity.getSimpleName()));
+            if (metadata.getProperty().indexOf('.') >= 0)
+                throw new IllegalArgumentException("Unsupported keyset sort property: " + property);
+            final List<BeanProperty<Object, Object>> getters = new ArrayList<>();
+            BeanIntrospection<?> intro = BeanIntrospection.getIntrospection(entity);
+            Path<?> path = entityPath;
+            for (PredicatePath predicatePath : metadata.getPaths()) {
+                if (predicatePath.getRelationType() != PredicatePath.RelationType.Embedded)
+                    throw new IllegalArgumentException("Keyset pagination only supports sorting on properties of the " +
+                            "root entity and its embeddables: " + property);
+                getters.add((BeanProperty<Object, Object>) intro.getRequiredProperty(predicatePath.getProperty(), Object.class));
+                path = Expressions.path(predicatePath.getType(), PathMetadataFactory.forProperty(path, predicatePath.getProperty()));
+                intro = BeanIntrospection.getIntrospection(predicatePath.getType());
+            }
+            getters.add((BeanProperty<Object, Object>) intro.getRequiredProperty(metadata.getProperty(), Object.class));
+            path = Expressions.path(metadata.getPropertyType(), path, metadata.getProperty());
+            // the same as the ORDER BY of SortPath
+            final boolean lower = ignoreCase && metadata.getPropertyType() == String.class;
+            final Expression<?> expr = lower ? Expressions.stringOperation(Ops.LOWER, path) : path;
+            final boolean nullable = nullHandling != null && !metadata.getPropertyType().isPrimitive();
+            final boolean nullsLast = nullHandling == OrderSpecifier.NullHandling.NullsLast ||
+                    (nullHandling == OrderSpecifier.NullHandling.Default && ascending);
+            return new SortKey(expr, ascending, lower, nullable, nullsLast, metadata.getConverter(),
+                    ValueConverters.getInstance().formatterFor(metadata.getPropertyType()), getters);
+        }
+
+        Object read(Object row) {
+            Object value = row;
+            for (BeanProperty<Object, Object> getter : getters) {
+                if (value == null)
+                    return null;
+                value = getter.get(value);
+            }
+            return value;
+        }
+
+        String format(Object value) {
+            return formatter.apply(value);
+        }
+
+        Predicate equalTo(String value) {
+            return value == null
+                    ? Expressions.predicate(Ops.IS_NULL, expr)
+                    : Expressions.predicate(Ops.EQ, expr, toConstant(value));
+        }
+
+        // the rows after the value in the direction of the scan (and the rows equal to it if inclusive).
+        // null if there is none: the value is null and nulls are last
+        Predicate after(String value, boolean forward, boolean inclusive) {
+            // the scan goes backward by reversing the order, nulls included
+            final boolean up = ascending == forward;
+            final boolean last = nullsLast == forward;
+            if (value == null) {
+                final Predicate after = last ? null : Expressions.predicate(Ops.IS_NOT_NULL, expr);
+                if (!inclusive)
+                    return after;
+                final Predicate isNull = Expressions.predicate(Ops.IS_NULL, expr);
+                return after == null ? isNull : ExpressionUtils.anyOf(isNull, after);
+            }
+            final Ops op = up ? (inclusive ? Ops.GOE : Ops.GT) : (inclusive ? Ops.LOE : Ops.LT);
+            final Predicate after = Expressions.predicate(op, expr, toConstant(value));
+            return nullable && last ? ExpressionUtils.anyOf(after, Expressions.predicate(Ops.IS_NULL, expr)) : after;
+        }
+
+        // the value is lower cased by the database too, like the sorted expression
+        private Expression<?> toConstant(String value) {
+            final Expression<?> constant = Expressions.constant(converter.apply(value));
+            return ignoreCase ? Expressions.stringOperation(Ops.LOWER, constant) : constant;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        OrderSpecifier<?> toOrderSpecifier(boolean forward) {
+            final OrderSpecifier.NullHandling nulls = !nullable
+                    ? OrderSpecifier.NullHandling.Default
+                    : nullsLast == forward ? OrderSpecifier.NullHandling.NullsLast : OrderSpecifier.NullHandling.NullsFirst;
+            return new OrderSpecifier(ascending == forward ? Order.ASC : Order.DESC, expr, nulls);
+        }
+    }
+}
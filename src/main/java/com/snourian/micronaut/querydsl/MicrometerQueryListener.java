@@ -0,0 +1,78 @@
+package com.snourian.micronaut.querydsl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micronaut.context.annotation.Context;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import jakarta.annotation.PreDestroy;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Records the phases of every query, if Micrometer (e.g. micronaut-micrometer-core) is on the classpath:
+// - querydsl.query: total time
+// - querydsl.query.phase: time of each phase (parse, build, serialize, fetch, count)
+// - querydsl.query.rows: number of fetched rows
+// Tags are low-cardinality: entity, shape (fingerprint of the QueryShape) and joins (number of joins).
+// Only the first 'querydsl.metrics.max-shapes' (100 by default) fingerprints of an entity are tagged, the shapes
+// seen after them are tagged 'other', so clients sending arbitrary filters can't grow the registry
+@Context
+@Requires(classes = MeterRegistry.class)
+@Requires(beans = MeterRegistry.class)
+public class MicrometerQueryListener implements QueryListener {
+
+    public static final String MAX_SHAPES_PROPERTY = "querydsl.metrics.max-shapes";
+    public static final String OTHER_SHAPE = "other";
+
+    private final MeterRegistry registry;
+    private final int maxShapes;
+    private final Map<Class<?>, Set<String>> shapesByEntity = new ConcurrentHashMap<>();
+
+    public MicrometerQueryListener(MeterRegistry registry,
+                                   @Value("${" + MAX_SHAPES_PROPERTY + ":100}") int maxShapes) {
+        this.registry = registry;
+        this.maxShapes = maxShapes;
+        QueryListeners.getInstance().add(this);
+    }
+
+    @PreDestroy
+    public void close() {
+        QueryListeners.getInstance().remove(this);
+    }
+
+    @Override
+    public void onQuery(QueryEvent event) {
+        final Tags tags = Tags.of(
+                "entity", event.getEntity().getSimpleName(),
+                "shape", shapeTag(event),
+                "joins", String.valueOf(event.getJoinCount()));
+        registry.timer("querydsl.query", tags).record(event.getTotalNanos(), TimeUnit.NANOSECONDS);
+        for (QueryPhase phase : QueryPhase.values()) {
+            final long nanos = event.getNanos(phase);
+            if (nanos >= 0)
+                registry.timer("querydsl.query.phase", tags.and("phase", phase.name().toLowerCase(Locale.ROOT)))
+                        .record(nanos, TimeUnit.NANOSECONDS);
+        }
+        if (event.getRowCount() >= 0)
+            registry.summary("querydsl.query.rows", tags).record(event.getRowCount());
+    }
+
+    // the fingerprint if it is one of the tracked shapes of the entity (or there is still room for it), otherwise 'other'
+    private String shapeTag(QueryEvent event) {
+        final String fingerprint = event.getFingerprint();
+        final Set<String> shapes = shapesByEntity.computeIfAbsent(event.getEntity(),
+                entity -> ConcurrentHashMap.newKeySet());
+        if (shapes.contains(fingerprint))
+            return fingerprint;
+        synchronized (shapes) {
+            if (shapes.size() >= maxShapes)
+                return OTHER_SHAPE;
+            shapes.add(fingerprint);
+            return fingerprint;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.snourian.micronaut.querydsl;
+
+import com.querydsl.core.QueryException;
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.*;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.Wildcard;
+import com.querydsl.sql.*;
+import com.snourian.micronaut.querydsl.expression.*;
+import com.snourian.micronaut.querydsl.expression.operator.OpType;
+import com.snourian.micronaut.querydsl.expression.operator.PredicateOperator;
+import io.micronaut.core.reflect.ReflectionUtils;
+import io.micronaut.data.model.Page;
+import io.micronaut.data.model.Pageable;
+import io.micronaut.data.model.Sort;
+import io.micronaut.data.model.naming.NamingStrategies;
+import io.micronaut.data.model.naming.NamingStrategy;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+
+// A read-only search engine which runs the same QueryParameters as QuerydslPredicateExecutor directly as SQL
+// (querydsl-sql) on a DataSource, and maps the rows into @Introspected DTOs (see Projection), without JPQL
+// translation, entity hydration and the persistence context. Tables and columns are derived from the JPA mappings
+// (see SqlEntityMapping). It needs com.querydsl:querydsl-sql on the classpath.
+// Supported paths: basic and embedded properties of the entity, and to-one relations with a foreign key column
+// (inner joined for filters, left joined for selected and sorted properties). Collection relations are rejected.
+public class NativeQueryEngine {
+
+    private final DataSource dataSource;
+    private final NamingStrategy naming;
+    // detected from the metadata of the first connection if no SQLTemplates are given
+    private volatile Configuration configuration;
+
+    // names of under_score_lower_case, like the default physical naming strategy of micronaut-hibernate-jpa. With
+    // Hibernate's PhysicalNamingStrategyStandardImpl, which keeps the property names, use NamingStrategies.Raw
+    public NativeQueryEngine(DataSource dataSource) {
+        this(dataSource, null, new NamingStrategies.UnderScoreSeparatedLowerCase());
+    }
+
+    public NativeQueryEngine(DataSource dataSource, SQLTemplates templates, NamingStrategy naming) {
+        this.dataSource = Objects.requireNonNull(dataSource, "dataSource");
+        this.naming = Objects.requireNonNull(naming, "naming");
+        this.configuration = templates != null ? new Configuration(templates) : null;
+    }
+
+    public <P> List<P> findAll(Class<?> entity, QueryParameters params, Sort sort, Class<P> dtoType) {
+        return findAll(entity, params, sort, dtoType, QueryOptions.DEFAULT);
+    }
+
+    public <P> List<P> findAll(Class<?> entity, QueryParameters params, Sort sort, Class<P> dtoType,
+                               QueryOptions options) {
+        final ExpressionEntries entries = ExpressionFactory.createFromParams(entity, params.getParameters());
+        final QueryCost cost = options.getCostPolicy().evaluate(entity, entries, Pageable.unpaged(), options);
+        if (entries.isUnsatisfiable())
+            return new ArrayList<>();
+        final Projection<P> projection = Projection.of(entity, dtoType);
+        try (Connection connection = connection()) {
+            final SqlSelect select = new SqlSelect(entity, options);
+            final SQLQuery<?> query = select.query(connection, entries);
+            final List<SqlColumn> columns = select.columns(projection);
+            final SQLQuery<Tuple> rows = limitRows(query.select(expressions(columns)).orderBy(select.orderBy(sort)),
+                    cost);
+            return map(cost.checkRows(rows.fetch()), columns, projection);
+        } catch (SQLException e) {
+            throw new QueryException(e);
+        }
+    }
+
+    public <P> Page<P> findAll(Class<?> entity, QueryParameters params, Pageable pageable, Class<P> dtoType) {
+        return findAll(entity, params, pageable, dtoType, QueryOptions.DEFAULT);
+    }
+
+    public <P> Page<P> findAll(Class<?> entity, QueryParameters params, Pageable pageable, Class<P> dtoType,
+                               QueryOptions options) {
+        final ExpressionEntries entries = ExpressionFactory.createFromParams(entity, params.getParameters());
+        final QueryCost cost = options.getCostPolicy().evaluate(entity, entries, pageable, options);
+        final Pageable page = cost.getPageable();
+        if (entries.isUnsatisfiable())
+            return Page.of(new ArrayList<>(), page, 0);
+        final Projection<P> projection = Projection.of(entity, dtoType);
+        try (Connection connection = connection()) {
+            final SqlSelect select = new SqlSelect(entity, options);
+            final SQLQuery<?> query = select.query(connection, entries);
+            // the count query has the joins of the filters only: to-one joins don't change the number of rows
+            final SQLQuery<?> countQuery = query.clone(connection);
+            final List<SqlColumn> columns = select.columns(projection);
+            SQLQuery<Tuple> rows = query.select(expressions(columns)).orderBy(select.orderBy(page.getSort()));
+            rows = page.isPaged() ? rows.offset(page.getOffset()).limit(page.getSize()) : limitRows(rows, cost);
+            final List<P> content = map(cost.checkRows(rows.fetch()), columns, projection);
+            if (page.isUnpaged())
+                return Page.of(content, page, content.size());
+            if (cost.isDegraded())
+                return Page.of(content, page, QuerydslHelper.minTotalSize(content, page));
+            return Page.of(content, page, QuerydslHelper.totalSize(content, page,
+                    () -> countQuery.select(Wildcard.count).fetchOne()));
+        } catch (SQLException e) {
+            throw new QueryException(e);
+        }
+    }
+
+    private Connection connection() throws SQLException {
+        final Connection connection = dataSource.getConnection();
+        if (configuration == null) {
+            synchronized (this) {
+                if (configuration == null) {
+                    try {
+                        configuration = new Configuration(new SQLTemplatesRegistry().getTemplates(connection.getMetaData()));
+                    } catch (SQLException | RuntimeException e) {
+                        connection.close();
+                        throw e;
+                    }
+                }
+            }
+        }
+        return connection;
+    }
+
+    // see QuerydslPredicateExecutor.limitRows
+    private static SQLQuery<Tuple> limitRows(SQLQuery<Tuple> query, QueryCost cost) {
+        return cost.getMaxRows() < Integer.MAX_VALUE ? query.limit(cost.getMaxRows() + 1L) : query;
+    }
+
+    private static Expression<?>[] expressions(List<SqlColumn> columns) {
+        final Expression<?>[] expressions = new Expression<?>[columns.size()];
+        for (int i = 0; i < expressions.length; i++)
+            expressions[i] = columns.get(i).path;
+        return expressions;
+    }
+
+    private static <P> List<P> map(List<Tuple> tuples, List<SqlColumn> columns, Projection<P> projection) {
+        final List<P> result = new ArrayList<>(tuples.size());
+        for (Tuple tuple : tuples) {
+            final Object[] values = tuple.toArray();
+            for (int i = 0; i < values.length; i++)
+                values[i] = columns.get(i).fromColumn.apply(values[i]);
+            result.add(projection.map(values));
+        }
+        return result;
+    }
+
+    // a column of the query and the conversion of its values (see SqlEntityMapping.toColumn)
+    private static final class SqlColumn {
+        private final Path<?> path;
+        private final Function<Object, Object> toColumn;
+        private final Function<Object, Object> fromColumn;
+
+        private SqlColumn(Path<?> path, Function<Object, Object> toColumn, Function<Object, Object> fromColumn) {
+            this.path = path;
+            this.toColumn = toColumn;
+            this.fromColumn = fromColumn;
+        }
+    }
+
+    // the tables (root and joins), predicate and columns of one query. Joins are shared by their property path,
+    // like the aliases of PathResolver
+    private final class SqlSelect {
+        private final Class<?> entity;
+        private final SqlEntityMapping rootMapping;
+        private final RelationalPathBase<Object> root;
+        private final int inListChunkSize;
+        private final Duration timeout;
+        private final TextSearch textSearch;
+        private final Map<String, SqlJoin> joins = new LinkedHashMap<>();
+        private SQLQuery<?> query;
+
+        private SqlSelect(Class<?> entity, QueryOptions options) {
+            this.entity = entity;
+            this.rootMapping = SqlEntityMapping.of(entity, naming);
+            this.root = new RelationalPathBase<>(Object.class, "t0", rootMapping.getSchema(), rootMapping.getTable());
+            this.inListChunkSize = options.getInListChunkSize();
+            this.timeout = options.getTimeout();
+            this.textSearch = options.getTextSearch();
+        }
+
+        private SQLQuery<?> query(Connection connection, ExpressionEntries entries) {
+            final Predicate predicate = entries.isEmpty() ? null : nodePredicate(entries);
+            query = new SQLQuery<Void>(connection, configuration).from(root);
+            if (timeout != null)
+                query.setStatementOptions(StatementOptions.builder()
+                        .setQueryTimeout((int) Math.max(1, timeout.getSeconds())).build());
+            joins.values().forEach(join -> join.applyTo(query));
+            if (predicate != null)
+                query.where(predicate);
+            return query;
+        }
+
+        // the selected columns. Joins they need which are not in the query yet are added as left joins
+        private List<SqlColumn> columns(Projection<?> projection) {
+            final List<SqlColumn> columns = new ArrayList<>();
+            for (String field : projection.getFields())
+                columns.add(column(resolve(field, "selected property"), false));
+            return columns;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private OrderSpecifier<?>[] orderBy(Sort sort) {
+            final List<OrderSpecifier<?>> orders = new ArrayList<>();
+            for (Sort.Order order : sort.getOrderBy()) {
+                final PropertyPathMetadata metadata = resolve(order.getProperty(), "sort property");
+                Expression<?> path = column(metadata, false).path;
+                if (order.isIgnoreCase() && metadata.getPropertyType() == String.class)
+                    path = Expressions.stringOperation(Ops.LOWER, path);
+                orders.add(new OrderSpecifier(order.isAscending() ? Order.ASC : Order.DESC, path));
+            }
+            return orders.toArray(new OrderSpecifier<?>[0]);
+        }
+
+        private PropertyPathMetadata resolve(String property, String kind) {
+            return ExpressionFactory.resolvePath(entity, property)
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown " + kind + " '" + property +
+                            "' for entity " + entity.getSimpleName()));
+        }
+
+        private Predicate nodePredicate(ExpressionEntries node) {
+            if (node.isUnsatisfiable())
+                return Expressions.FALSE.isTrue();
+            final List<Predicate> predicates = new ArrayList<>();
+            for (PredicateEntry entry : node.getPredicates())
+                predicates.add(predicate(entry));
+            node.getGroups().forEach(group -> predicates.add(nodePredicate(group)));
+            return node.getType() == ExpressionType.ANYOF
+                    ? ExpressionUtils.anyOf(predicates)
+                    : ExpressionUtils.allOf(predicates);
+        }
+
+        // IN/NOT_IN lists are split into chunks like in QuerydslPredicateBuilder, but not padded: there is no
+        // JPQL to share, and the JDBC driver caches statements by SQL string anyway
+        @SuppressWarnings("unchecked")
+        private Predicate predicate(PredicateEntry entry) {
+            final SqlColumn column = column(entry.getPath(), entry.getProperty(), entry.getPropertyType(), true);
+            final Object[] values = entry.getValues();
+            if (TextSearch.isTextSearch(entry.getOp())) {
+                final String normalized = textSearch.normalizedOf(ownerOf(entry.getPath()),
+                        entry.getProperty());
+                final Path<?> normalizedPath = normalized != null
+                        ? column(entry.getPath(), normalized, String.class, true).path
+                        : null;
+                return textSearch.predicate(entry.getOp(), values, column.path,
+                        (Path<String>) normalizedPath, true);
+            }
+            if (entry.getOp().getOpType() == OpType.LIST) {
+                if (values.length == 0)
+                    throw new IllegalArgumentException("Empty list of values for '" + entry.getKey() + "'");
+                final List<Predicate> chunks = new ArrayList<>();
+                for (int start = 0; start < values.length; start += inListChunkSize) {
+                    final List<Object> chunk = new ArrayList<>();
+                    for (int i = start; i < Math.min(values.length, start + inListChunkSize); i++)
+                        chunk.add(column.toColumn.apply(values[i]));
+                    chunks.add(Expressions.predicate(entry.getOp().getOperator(), column.path,
+                            Expressions.constant(chunk)));
+                }
+                return entry.getOp() == PredicateOperator.NOT_IN
+                        ? ExpressionUtils.allOf(chunks)
+                        : ExpressionUtils.anyOf(chunks);
+            }
+            final Expression<?>[] exprs = new Expression<?>[values.length + 1];
+            exprs[0] = column.path;
+            for (int i = 0; i < values.length; i++)
+                exprs[i + 1] = Expressions.constant(column.toColumn.apply(values[i]));
+            return Expressions.predicate(entry.getOp().getOperator(), exprs);
+        }
+
+        // the entity or embeddable of the final property of the path
+        private Class<?> ownerOf(List<PredicatePath> paths) {
+            return paths.isEmpty() ? entity : paths.get(paths.size() - 1).getType();
+        }
+
+        private SqlColumn column(PropertyPathMetadata metadata, boolean inner) {
+            return column(metadata.getPaths(), metadata.getProperty(), metadata.getPropertyType(), inner);
+        }
+
+        // walks the path from the root table: embeddables stay in the table of their owner, to-one relations are
+        // joined: inner joins for the filters, left joins for the selected and sorted columns
+        private SqlColumn column(List<PredicatePath> paths, String property, Class<?> type, boolean inner) {
+            RelationalPathBase<Object> table = root;
+            SqlEntityMapping mapping = rootMapping;
+            Class<?> owner = entity;
+            for (PredicatePath path : paths) {
+                if (path.getRelationType() == PredicatePath.RelationType.Embedded) {
+                    owner = path.getType();
+                } else if (path.getRelationType() == PredicatePath.RelationType.Single) {
+                    final SqlJoin join = join(table, mapping, owner, path, inner);
+                    table = join.table;
+                    mapping = join.mapping;
+                    owner = path.getType();
+                } else {
+                    throw new IllegalArgumentException("Collection relation '" + path.getProperty() +
+                            "' is not supported by NativeQueryEngine");
+                }
+            }
+            final String columnName = mapping.column(owner, property);
+            // enums are read as their column value (ordinal or name) and converted by fromColumn
+            final Class<?> pathType = type.isEnum() ? Object.class : ReflectionUtils.getWrapperType(type);
+            return new SqlColumn(Expressions.path(pathType, table, columnName),
+                    mapping.toColumn(owner, property, type), mapping.fromColumn(owner, property, type));
+        }
+
+        private SqlJoin join(RelationalPathBase<Object> ownerTable, SqlEntityMapping ownerMapping, Class<?> owner,
+                             PredicatePath path, boolean inner) {
+            SqlJoin join = joins.get(path.getFullPath());
+            if (join == null) {
+                final SqlEntityMapping target = SqlEntityMapping.of(path.getType(), naming);
+                final RelationalPathBase<Object> table = new RelationalPathBase<>(Object.class,
+                        "t" + (joins.size() + 1), target.getSchema(), target.getTable());
+                final Predicate on = Expressions.predicate(Ops.EQ,
+                        Expressions.path(Object.class, ownerTable, ownerMapping.joinColumn(owner, path.getProperty(), target)),
+                        Expressions.path(Object.class, table, target.getIdColumn()));
+                join = new SqlJoin(table, target, on, inner);
+                joins.put(path.getFullPath(), join);
+                // joins of the selected and sorted columns are added after the filters
+                if (query != null)
+                    join.applyTo(query);
+            }
+            return join;
+        }
+    }
+
+    private static final class SqlJoin {
+        private final RelationalPathBase<Object> table;
+        private final SqlEntityMapping mapping;
+        private final Predicate on;
+        private final boolean inner;
+
+        private SqlJoin(RelationalPathBase<Object> table, SqlEntityMapping mapping, Predicate on, boolean inner) {
+            this.table = table;
+            this.mapping = mapping;
+            this.on = on;
+            this.inner = inner;
+        }
+
+        private void applyTo(SQLQuery<?> query) {
+            if (inner)
+                query.innerJoin(table).on(on);
+            else
+                query.leftJoin(table).on(on);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.snourian.micronaut.querydsl;
+
+import com.mysema.commons.lang.CloseableIterator;
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.*;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.NumberPath;
+import com.querydsl.jpa.impl.JPAQuery;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Splits the primary key range of the matching rows into partitions, scans them concurrently on their own
+// EntityManagers (and connections), and writes their rows with a RowWriter on the caller's thread.
+// Partitions hand their rows over through bounded queues, so the heap usage depends on the buffer size of the
+// ExportOptions, not on the number of rows. Ordered exports write the partitions one after the other (each sorted
+// by the primary key), the others write rows in the order they arrive.
+// Entities with non-integral ids are exported in one partition.
+// The export returns (or fails) only after every partition has stopped and closed its EntityManager.
+final class PartitionedExport {
+
+    // marks the end of the rows of a partition
+    private static final Object[] END = new Object[0];
+    private static final long POLL_MILLIS = 100;
+
+    private final JPAQuery<Tuple> query;
+    private final Path<?> idPath;
+    private final List<String> fields;
+    private final ExportOptions export;
+    private final QueryOptions options;
+    private final EntityManagerFactory factory;
+    private volatile Throwable failure;
+    private volatile boolean cancelled;
+    // counted down by every partition when it has stopped
+    private CountDownLatch scanners = new CountDownLatch(0);
+
+    // query is null if the predicates contradict each other: only the header is written
+    PartitionedExport(JPAQuery<Tuple> query, Path<?> idPath, List<String> fields, ExportOptions export,
+                      QueryOptions options, EntityManagerFactory factory) {
+        this.query = query;
+        this.idPath = idPath;
+        this.fields = fields;
+        this.export = export;
+        this.options = options;
+        this.factory = factory;
+    }
+
+    long writeTo(OutputStream out) {
+        try {
+            final RowWriter writer = RowWriter.of(export, fields, out);
+            final long rows = query != null ? writeRows(writer) : 0;
+            writer.finish();
+            return rows;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            cancelled = true;
+            awaitScanners();
+        }
+    }
+
+    // partitions see the cancellation within POLL_MILLIS, unless they are waiting for the database
+    private void awaitScanners() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                scanners.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private long writeRows(RowWriter writer) throws IOException {
+        final List<Predicate> ranges = ranges();
+        final List<BlockingQueue<Object[]>> queues = new ArrayList<>();
+        if (!export.isOrdered())
+            queues.add(new ArrayBlockingQueue<>(export.getBufferSize()));
+        scanners = new CountDownLatch(ranges.size());
+        int started = 0;
+        try {
+            for (Predicate range : ranges) {
+                final BlockingQueue<Object[]> queue;
+                if (export.isOrdered()) {
+                    queue = new ArrayBlockingQueue<>(export.getBufferSize());
+                    queues.add(queue);
+                } else {
+                    queue = queues.get(0);
+                }
+                options.getExecutor().execute(() -> scan(range, queue));
+                started++;
+            }
+        } finally {
+            // partitions which were not started (e.g. rejected by the executor) have nothing to wait for
+            for (int i = started; i < ranges.size(); i++)
+                scanners.countDown();
+        }
+        long rows = 0;
+        // an ordered export reads the queue of every partition until its end, the others read the shared queue
+        // until the end of every partition
+        int ends = export.isOrdered() ? 1 : ranges.size();
+        for (BlockingQueue<Object[]> queue : queues) {
+            for (int ended = 0; ended < ends; ) {
+                final Object[] row = next(queue);
+                if (row == END) {
+                    ended++;
+                } else {
+                    writer.write(row);
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+
+    // the first range has no lower bound and the last one no upper bound, so rows inserted during the export can't
+    // fall between the ranges
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<Predicate> ranges() {
+        final List<Predicate> ranges = new ArrayList<>();
+        final Class<?> idType = idPath.getType();
+        if (export.getPartitions() == 1 || !isIntegral(idType)) {
+            ranges.add(null);
+            return ranges;
+        }
+        final NumberPath id = Expressions.numberPath((Class) idType, idPath.getMetadata());
+        final Tuple bounds = onEntityManager(em -> query.clone(em).select(id.min(), id.max()).fetchOne());
+        final Number min = bounds != null ? bounds.get(0, Number.class) : null;
+        final Number max = bounds != null ? bounds.get(1, Number.class) : null;
+        final long[] points = min != null && max != null
+                ? splitPoints(min.longValue(), max.longValue(), export.getPartitions())
+                : new long[0];
+        if (points.length == 0) {
+            ranges.add(null);
+            return ranges;
+        }
+        Number lower = null;
+        for (long point : points) {
+            final Number upper = valueOf(point, idType);
+            ranges.add(lower == null ? id.lt(upper) : id.goe(lower).and(id.lt(upper)));
+            lower = upper;
+        }
+        ranges.add(id.goe(lower));
+        return ranges;
+    }
+
+    // the upper (exclusive) bounds of the first partitions - 1 ranges of [min, max], in ascending order. Empty if
+    // there are fewer ids than partitions (or max - min overflows): the rows are exported in one partition
+    static long[] splitPoints(long min, long max, int partitions) {
+        final long span = max - min;
+        if (partitions <= 1 || span < partitions)
+            return new long[0];
+        final long step = span / partitions;
+        final long[] points = new long[partitions - 1];
+        for (int i = 0; i < points.length; i++)
+            points[i] = min + (i + 1) * step;
+        return points;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void scan(Predicate range, BlockingQueue<Object[]> queue) {
+        try {
+            onEntityManager(em -> {
+                final JPAQuery<Tuple> partition = query.clone(em);
+                if (range != null)
+                    partition.where(range);
+                if (export.isOrdered())
+                    partition.orderBy(new OrderSpecifier(Order.ASC, idPath));
+                partition.setHint(QuerydslHelper.HINT_FETCH_SIZE, options.getFetchSize());
+                try (CloseableIterator<Tuple> rows = partition.iterate()) {
+                    while (rows.hasNext() && put(queue, rows.next().toArray())) {
+                        // until the end of the partition, or a row can't be handed over
+                    }
+                }
+                return null;
+            });
+        } catch (Throwable t) {
+            fail(t);
+        } finally {
+            put(queue, END);
+            scanners.countDown();
+        }
+    }
+
+    private void fail(Throwable t) {
+        if (failure == null)
+            failure = t;
+    }
+
+    private <R> R onEntityManager(Function<EntityManager, R> work) {
+        final EntityManager em = factory.createEntityManager();
+        try {
+            return work.apply(em);
+        } finally {
+            em.close();
+        }
+    }
+
+    // blocks while the queue is full. false if the row can't be handed over: the writer is done, or the partition
+    // is interrupted, which fails the export instead of dropping the row
+    private boolean put(BlockingQueue<Object[]> queue, Object[] row) {
+        try {
+            while (!cancelled) {
+                if (queue.offer(row, POLL_MILLIS, TimeUnit.MILLISECONDS))
+                    return true;
+                // the writer is slower than the partitions
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(new RuntimeException("Export interrupted", e));
+            return false;
+        }
+    }
+
+    // the failure of any partition ends the export, without waiting for its queue being read. A failed partition
+    // ends its rows too, so the failure is checked again at the end of every partition
+    private Object[] next(BlockingQueue<Object[]> queue) {
+        try {
+            while (true) {
+                final Object[] row = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (row != null && row != END)
+                    return row;
+                final Throwable t = failure;
+                if (t != null)
+                    throw t instanceof RuntimeException ? (RuntimeException) t : new RuntimeException("Export failed", t);
+                if (row == END)
+                    return row;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Export interrupted", e);
+        }
+    }
+
+    private static boolean isIntegral(Class<?> type) {
+        return type == Long.class || type == long.class || type == Integer.class || type == int.class ||
+                type == Short.class || type == short.class;
+    }
+
+    private static Number valueOf(long value, Class<?> type) {
+        if (type == Integer.class || type == int.class)
+            return (int) value;
+        if (type == Short.class || type == short.class)
+            return (short) value;
+        return value;
+    }
+}
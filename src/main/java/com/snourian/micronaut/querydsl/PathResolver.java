@@ -0,0 +1,83 @@
+package com.snourian.micronaut.querydsl;
+
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.PathMetadataFactory;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.PathBuilder;
+import com.snourian.micronaut.querydsl.expression.PredicatePath;
+import com.snourian.micronaut.querydsl.expression.PropertyPathMetadata;
+
+import java.util.*;
+
+// Builds QueryDSL paths of resolved property paths and the joins they need.
+// Aliases are derived from the property path (e.g. department_employees), so the same relation always gets
+// the same alias and the joins of filters, projections and sorts can be shared in one query.
+class PathResolver {
+
+    // name of the root entity. PredicatePath full paths start with it
+    private final String parentName;
+    // alias of the root entity in this query (differs from parentName in subqueries)
+    private final String rootName;
+    // a cache for parent paths in order to avoid creating them multiple times
+    private final Map<String, Path<?>> pathCache = new HashMap<>();
+    // storing join expressions, in the order they must be added to the query
+    private final Map<String, QuerydslPredicateBuilder.JoinsData> joins = new LinkedHashMap<>();
+
+    PathResolver(String parentName, Path<?> root) {
+        this.parentName = parentName;
+        this.rootName = root.getMetadata().getName();
+        pathCache.put(rootName, root);
+    }
+
+    // the final (simple) property of a resolved key, e.g. department_employees.rank
+    Path<?> toPath(PropertyPathMetadata metadata) {
+        return Expressions.path(metadata.getPropertyType(), toPath(metadata.getPaths()), metadata.getProperty());
+    }
+
+    // building the path and its joins
+    // example: department[Root Entity].employee[Next Entity].score[Simple Property]
+    Path<?> toPath(List<PredicatePath> paths) {
+        Path<?> lastPath = pathCache.get(rootName);
+        for (PredicatePath path : paths) {
+            // If the path data exists, retrieve it from the cache. If not, create a path and PathMetadata
+            final String alias = alias(path.getFullPath());
+            Path<?> prev = pathCache.get(alias(path.getPath()));
+            Path<?> next;
+            if (path.getRelationType() == PredicatePath.RelationType.Collection) {
+                next = pathCache.computeIfAbsent(alias, key -> Expressions.path(path.getType(), key));
+                joins.computeIfAbsent(alias, fp -> QuerydslPredicateBuilder.JoinsData.of(
+                        Expressions.collectionPath(path.getType(),
+                                Expressions.path(path.getType(), path.getProperty()).getClass(),
+                                PathMetadataFactory.forProperty(prev, path.getProperty())),
+                        next, path.getRelationType()));
+            } else if (path.getRelationType() == PredicatePath.RelationType.Single) {
+                next = pathCache.computeIfAbsent(alias, key -> Expressions.path(path.getType(), key));
+                joins.computeIfAbsent(alias, fp -> QuerydslPredicateBuilder.JoinsData.of(
+                        new PathBuilder<Object>(path.getType(),
+                                PathMetadataFactory.forProperty(prev, path.getProperty())),
+                        next, path.getRelationType()));
+            } else
+                next = pathCache.computeIfAbsent(alias, key ->
+                        Expressions.path(path.getType(), PathMetadataFactory.forProperty(prev, path.getProperty())));
+            lastPath = next;
+            // TODO: 11/3/2021 Support Map [Expressions.mapPath()] and ElementCollection relations
+        }
+        return lastPath;
+    }
+
+    Collection<QuerydslPredicateBuilder.JoinsData> getJoins() {
+        return joins.values();
+    }
+
+    // full paths of PredicatePath start with the name of the root entity (e.g. department_employees)
+    private String alias(String fullPath) {
+        if (rootName.equals(parentName))
+            return fullPath;
+        return rootName + fullPath.substring(parentName.length());
+    }
+
+    // the alias name of a join, to find out if a query already has it
+    static String aliasOf(QuerydslPredicateBuilder.JoinsData join) {
+        return join.getAlias().getMetadata().getName();
+    }
+}
@@ -0,0 +1,13 @@
+package com.snourian.micronaut.querydsl;
+
+import java.lang.annotation.*;
+
+// The property path of the entity (e.g. 'location.city') that a DTO property is selected from.
+// Without this annotation, the name of the DTO property is used as the path.
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD, ElementType.PARAMETER})
+public @interface ProjectedFrom {
+
+    String value();
+}
@@ -0,0 +1,138 @@
+package com.snourian.micronaut.querydsl;
+
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.util.StringUtils;
+import com.snourian.micronaut.querydsl.expression.ExpressionFactory;
+import com.snourian.micronaut.querydsl.expression.PredicatePath;
+import com.snourian.micronaut.querydsl.expression.PropertyPathMetadata;
+import io.micronaut.core.beans.BeanIntrospection;
+import io.micronaut.core.beans.BeanProperty;
+import io.micronaut.core.type.Argument;
+import io.micronaut.core.util.clhm.ConcurrentLinkedHashMap;
+
+import java.util.*;
+import java.util.function.Function;
+
+// The selected paths of a projection query and how a result row is built from them.
+// DTOs are instantiated through their compile-time BeanIntrospection (constructor or setters), without reflection.
+// Projections are immutable and cached per (entity, DTO type) and (entity, fields).
+public class Projection<P> {
+
+    private static final Map<List<Object>, Projection<?>> cache =
+            new ConcurrentLinkedHashMap.Builder<List<Object>, Projection<?>>()
+                    .maximumWeightedCapacity(PropertyPathCache.DEFAULT_MAX_SIZE)
+                    .build();
+
+    private final List<String> fields;
+    private final Expression<?>[] expressions;
+    private final Collection<QuerydslPredicateBuilder.JoinsData> joins;
+    private final Function<Object[], P> factory;
+    private final Class<?> rowType;
+
+    private Projection(List<String> fields, Expression<?>[] expressions,
+                       Collection<QuerydslPredicateBuilder.JoinsData> joins, Function<Object[], P> factory,
+                       Class<?> rowType) {
+        this.rowType = rowType;
+        this.fields = Collections.unmodifiableList(fields);
+        this.expressions = expressions;
+        this.joins = Collections.unmodifiableList(new ArrayList<>(joins));
+        this.factory = factory;
+    }
+
+    // properties of an @Introspected DTO. Constructor arguments are used if there are any, otherwise the setters
+    @SuppressWarnings("unchecked")
+    public static <P> Projection<P> of(Class<?> entity, Class<P> dtoType) {
+        return (Projection<P>) cache.computeIfAbsent(Arrays.asList(entity, dtoType), key -> create(entity, dtoType));
+    }
+
+    // comma separated property paths of the entity, e.g. 'name,location.city'. Rows are maps of path -> value
+    @SuppressWarnings("unchecked")
+    public static Projection<Map<String, Object>> of(Class<?> entity, String fields) {
+        return (Projection<Map<String, Object>>) cache.computeIfAbsent(Arrays.asList(entity, fields), key -> {
+            final List<String> paths = new ArrayList<>();
+            for (String field : fields.split(",")) {
+                if (!field.trim().isEmpty())
+                    paths.add(field.trim());
+            }
+            if (paths.isEmpty())
+                throw new IllegalArgumentException("No fields to select: " + fields);
+            return create(entity, paths, Map.class, values -> {
+                final Map<String, Object> row = new LinkedHashMap<>();
+                for (int i = 0; i < values.length; i++)
+                    row.put(paths.get(i), values[i]);
+                return row;
+            });
+        });
+    }
+
+    private static <P> Projection<P> create(Class<?> entity, Class<P> dtoType) {
+        final BeanIntrospection<P> intro = BeanIntrospection.getIntrospection(dtoType);
+        final Argument<?>[] args = intro.getConstructorArguments();
+        final List<String> paths = new ArrayList<>();
+        if (args.length > 0) {
+            for (Argument<?> arg : args)
+                paths.add(arg.getAnnotationMetadata().stringValue(ProjectedFrom.class).orElse(arg.getName()));
+            return create(entity, paths, dtoType, intro::instantiate);
+        }
+        final List<BeanProperty<P, Object>> setters = new ArrayList<>();
+        for (BeanProperty<P, Object> prop : intro.getBeanProperties()) {
+            if (prop.isReadOnly())
+                continue;
+            setters.add(prop);
+            paths.add(prop.stringValue(ProjectedFrom.class).orElse(prop.getName()));
+        }
+        return create(entity, paths, dtoType, values -> {
+            final P dto = intro.instantiate();
+            for (int i = 0; i < values.length; i++)
+                setters.get(i).set(dto, values[i]);
+            return dto;
+        });
+    }
+
+    // paths are resolved the same way as the predicates, so joins of the projection get the same aliases
+    private static <P> Projection<P> create(Class<?> entity, List<String> paths, Class<?> rowType,
+                                            Function<Object[], P> factory) {
+        final String parentName = StringUtils.uncapitalize(entity.getSimpleName());
+        final PathResolver resolver = new PathResolver(parentName, Expressions.path(entity, parentName));
+        final Expression<?>[] expressions = new Expression<?>[paths.size()];
+        for (int i = 0; i < paths.size(); i++) {
+            final String path = paths.get(i);
+            PropertyPathMetadata metadata = ExpressionFactory.resolvePath(entity, path)
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown property '" + path + "' for entity " + entity.getSimpleName()));
+            expressions[i] = resolver.toPath(metadata);
+        }
+        return new Projection<>(paths, expressions, resolver.getJoins(), factory, rowType);
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    // the DTO type, or Map for projections of fields
+    Class<?> getRowType() {
+        return rowType;
+    }
+
+    Expression<?>[] getExpressions() {
+        return expressions.clone();
+    }
+
+    // joins needed by the selected paths. Joins which are already in the query (from filters) are reused
+    Collection<QuerydslPredicateBuilder.JoinsData> getJoins() {
+        return joins;
+    }
+
+    // true if a selected path goes through a collection, e.g. 'employees.name': there is one row per element
+    boolean isCollection() {
+        for (QuerydslPredicateBuilder.JoinsData join : joins) {
+            if (join.getRelationType() == PredicatePath.RelationType.Collection)
+                return true;
+        }
+        return false;
+    }
+
+    P map(Object[] row) {
+        return factory.apply(row);
+    }
+}
@@ -0,0 +1,48 @@
+package com.snourian.micronaut.querydsl;
+
+import io.micronaut.data.model.Pageable;
+
+import java.util.List;
+
+// The result of QueryCostPolicy.evaluate() for an admitted query
+public class QueryCost {
+
+    private final double score;
+    private final Pageable pageable;
+    private final boolean degraded;
+    private final int maxRows;
+
+    QueryCost(double score, Pageable pageable, boolean degraded, int maxRows) {
+        this.score = score;
+        this.pageable = pageable;
+        this.degraded = degraded;
+        this.maxRows = maxRows;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    // the requested pageable. Its size is at most the maximum page size of the policy
+    public Pageable getPageable() {
+        return pageable;
+    }
+
+    // an expensive query which runs without its count query
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    // the maximum number of rows of an unpaged (List) result: the maxRows of the policy. Integer.MAX_VALUE = no limit
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    // rejects a result of more than maxRows rows. Unpaged queries fetch up to maxRows + 1 rows to detect it
+    <R> List<R> checkRows(List<R> rows) {
+        if (rows.size() > maxRows)
+            throw new QueryRejectedException("The query matches more than " + maxRows
+                    + " rows, use a paged query or a stream instead", score);
+        return rows;
+    }
+}
@@ -0,0 +1,294 @@
+package com.snourian.micronaut.querydsl;
+
+import com.snourian.micronaut.querydsl.expression.ExpressionEntries;
+import com.snourian.micronaut.querydsl.expression.PredicateEntry;
+import com.snourian.micronaut.querydsl.expression.PredicatePath;
+import com.snourian.micronaut.querydsl.expression.operator.OpType;
+import com.snourian.micronaut.querydsl.expression.operator.PredicateOperator;
+import io.micronaut.data.model.Pageable;
+
+import java.util.*;
+
+// Admission control of dynamic queries, applied after the params are parsed and before the query is built.
+// Hard limits (number of 'in' values, joins, depth of collection relations, offset, denied operators of a property)
+// reject the query with a QueryRejectedException. Otherwise the query is scored:
+//   sum of operator weights + 'in' values * inValueWeight + joins * (collection)JoinWeight
+//   + page size * pageSizeWeight + offset * offsetWeight
+// and rejected above maxCost, or degraded (no count query) above degradeCost. Pages larger than maxPageSize are
+// rejected (a smaller page would move the offset). Unpaged List results are only limited by maxRows, if it is set.
+// Streams and exports are not limited: their heap usage doesn't depend on the number of rows.
+// Limits can be overridden per entity, and the 'in' limit and denied operators can be set per property key.
+public class QueryCostPolicy {
+
+    private static final Map<PredicateOperator, Double> DEFAULT_WEIGHTS;
+
+    static {
+        final Map<PredicateOperator, Double> weights = new EnumMap<>(PredicateOperator.class);
+        for (PredicateOperator op : PredicateOperator.values())
+            weights.put(op, 1.0);
+        // these can't use a (regular) index, or need a function on the column
+        weights.put(PredicateOperator.STARTS_WITH, 2.0);
+        weights.put(PredicateOperator.STARTS_WITH_IC, 3.0);
+        // PREFIX_IC without a normalized property is weighted as STARTS_WITH_IC (see weight())
+        weights.put(PredicateOperator.PREFIX_IC, 2.0);
+        weights.put(PredicateOperator.FTS, 3.0);
+        weights.put(PredicateOperator.EQ_IGNORE_CASE, 3.0);
+        weights.put(PredicateOperator.LIKE, 4.0);
+        weights.put(PredicateOperator.LIKE_ESCAPE, 4.0);
+        weights.put(PredicateOperator.LIKE_IC, 5.0);
+        weights.put(PredicateOperator.LIKE_ESCAPE_IC, 5.0);
+        weights.put(PredicateOperator.ENDS_WITH, 5.0);
+        weights.put(PredicateOperator.STRING_CONTAINS, 5.0);
+        weights.put(PredicateOperator.ENDS_WITH_IC, 6.0);
+        weights.put(PredicateOperator.STRING_CONTAINS_IC, 6.0);
+        weights.put(PredicateOperator.MATCHES, 10.0);
+        weights.put(PredicateOperator.MATCHES_IC, 10.0);
+        DEFAULT_WEIGHTS = Collections.unmodifiableMap(weights);
+    }
+
+    // no limits at all. The default of QueryOptions
+    public static final QueryCostPolicy UNLIMITED = builder().build();
+
+    private final double maxCost;
+    private final double degradeCost;
+    private final int maxPageSize;
+    private final int maxRows;
+    private final long maxOffset;
+    private final int maxInValues;
+    private final int maxJoins;
+    private final int maxCollectionDepth;
+    private final Map<PredicateOperator, Double> operatorWeights;
+    private final double inValueWeight;
+    private final double joinWeight;
+    private final double collectionJoinWeight;
+    private final double pageSizeWeight;
+    private final double offsetWeight;
+    private final Map<String, Integer> propertyMaxInValues;
+    private final Map<String, Set<PredicateOperator>> deniedOperators;
+    private final Map<Class<?>, QueryCostPolicy> entityPolicies;
+
+    private QueryCostPolicy(Builder builder) {
+        this.maxCost = builder.maxCost;
+        this.degradeCost = builder.degradeCost;
+        this.maxPageSize = builder.maxPageSize;
+        this.maxRows = builder.maxRows;
+        this.maxOffset = builder.maxOffset;
+        this.maxInValues = builder.maxInValues;
+        this.maxJoins = builder.maxJoins;
+        this.maxCollectionDepth = builder.maxCollectionDepth;
+        this.operatorWeights = Collections.unmodifiableMap(new EnumMap<>(builder.operatorWeights));
+        this.inValueWeight = builder.inValueWeight;
+        this.joinWeight = builder.joinWeight;
+        this.collectionJoinWeight = builder.collectionJoinWeight;
+        this.pageSizeWeight = builder.pageSizeWeight;
+        this.offsetWeight = builder.offsetWeight;
+        this.propertyMaxInValues = Collections.unmodifiableMap(new HashMap<>(builder.propertyMaxInValues));
+        this.deniedOperators = Collections.unmodifiableMap(new HashMap<>(builder.deniedOperators));
+        this.entityPolicies = Collections.unmodifiableMap(new HashMap<>(builder.entityPolicies));
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    // entries are null for queries of a Predicate, which only have their page checked
+    public QueryCost evaluate(Class<?> entity, ExpressionEntries entries, Pageable pageable) {
+        return evaluate(entity, entries, pageable, QueryOptions.DEFAULT);
+    }
+
+    // the options of the query tell which properties are normalized for PREFIX_IC
+    public QueryCost evaluate(Class<?> entity, ExpressionEntries entries, Pageable pageable, QueryOptions options) {
+        final QueryCostPolicy entityPolicy = entityPolicies.get(entity);
+        if (entityPolicy != null)
+            return entityPolicy.evaluate(entity, entries, pageable, options);
+        if (this == UNLIMITED)
+            return new QueryCost(0, pageable, false, Integer.MAX_VALUE);
+        double score = 0;
+        if (entries != null)
+            score += score(entity, entries, options.getTextSearch());
+        if (!pageable.isUnpaged()) {
+            if (pageable.getOffset() > maxOffset)
+                throw new QueryRejectedException("Offset " + pageable.getOffset() + " is greater than " + maxOffset
+                        + ", use keyset pagination instead", 0);
+            if (pageable.getSize() > maxPageSize)
+                throw new QueryRejectedException("Page size " + pageable.getSize() + " is greater than "
+                        + maxPageSize, 0);
+            score += pageable.getSize() * pageSizeWeight + pageable.getOffset() * offsetWeight;
+        }
+        if (score > maxCost)
+            throw new QueryRejectedException("Query of " + entity.getSimpleName() + " is too expensive: cost "
+                    + score + " is greater than " + maxCost, score);
+        return new QueryCost(score, pageable, score > degradeCost, maxRows);
+    }
+
+    private double score(Class<?> entity, ExpressionEntries entries, TextSearch textSearch) {
+        double score = 0;
+        // joins are shared between the predicates of the same path
+        final Set<String> joins = new HashSet<>();
+        final Set<String> collectionJoins = new HashSet<>();
+        for (PredicateEntry entry : entries.flatten()) {
+            final String key = entry.getKey();
+            final Set<PredicateOperator> denied = deniedOperators.get(key);
+            if (denied != null && denied.contains(entry.getOp()))
+                throw new QueryRejectedException("Operator " + entry.getOp() + " is not allowed on '" + key + "'", 0);
+            score += weight(entity, entry, textSearch);
+            if (entry.getOp().getOpType() == OpType.LIST) {
+                final int values = entry.getValues().length;
+                final int max = propertyMaxInValues.getOrDefault(key, maxInValues);
+                if (values > max)
+                    throw new QueryRejectedException("Too many values for '" + key + "': " + values + " > " + max, 0);
+                score += values * inValueWeight;
+            }
+            int depth = 0;
+            for (PredicatePath path : entry.getPath()) {
+                if (path.getRelationType() == PredicatePath.RelationType.Collection) {
+                    depth++;
+                    collectionJoins.add(path.getFullPath());
+                } else if (path.getRelationType() == PredicatePath.RelationType.Single)
+                    joins.add(path.getFullPath());
+            }
+            if (depth > maxCollectionDepth)
+                throw new QueryRejectedException("'" + key + "' goes through " + depth
+                        + " collection relations, at most " + maxCollectionDepth + " are allowed", 0);
+        }
+        final int joinCount = joins.size() + collectionJoins.size();
+        if (joinCount > maxJoins)
+            throw new QueryRejectedException("Too many joins: " + joinCount + " > " + maxJoins, 0);
+        return score + joins.size() * joinWeight + collectionJoins.size() * collectionJoinWeight;
+    }
+
+    // PREFIX_IC is only cheaper than STARTS_WITH_IC on a normalized property
+    private double weight(Class<?> entity, PredicateEntry entry, TextSearch textSearch) {
+        PredicateOperator op = entry.getOp();
+        if (op == PredicateOperator.PREFIX_IC) {
+            final List<PredicatePath> path = entry.getPath();
+            final Class<?> owner = path.isEmpty() ? entity : path.get(path.size() - 1).getType();
+            if (textSearch.normalizedOf(owner, entry.getProperty()) == null)
+                op = PredicateOperator.STARTS_WITH_IC;
+        }
+        return operatorWeights.getOrDefault(op, 1.0);
+    }
+
+    public static class Builder {
+        private double maxCost = Double.POSITIVE_INFINITY;
+        private double degradeCost = Double.POSITIVE_INFINITY;
+        private int maxPageSize = Integer.MAX_VALUE;
+        private int maxRows = Integer.MAX_VALUE;
+        private long maxOffset = Long.MAX_VALUE;
+        private int maxInValues = Integer.MAX_VALUE;
+        private int maxJoins = Integer.MAX_VALUE;
+        private int maxCollectionDepth = Integer.MAX_VALUE;
+        private final Map<PredicateOperator, Double> operatorWeights = new EnumMap<>(DEFAULT_WEIGHTS);
+        private double inValueWeight = 0.01;
+        private double joinWeight = 1;
+        private double collectionJoinWeight = 3;
+        private double pageSizeWeight = 0.01;
+        private double offsetWeight = 0.001;
+        private final Map<String, Integer> propertyMaxInValues = new HashMap<>();
+        private final Map<String, Set<PredicateOperator>> deniedOperators = new HashMap<>();
+        private final Map<Class<?>, QueryCostPolicy> entityPolicies = new HashMap<>();
+
+        private Builder() {
+        }
+
+        // queries above this cost are rejected
+        public Builder maxCost(double maxCost) {
+            this.maxCost = maxCost;
+            return this;
+        }
+
+        // paged queries above this cost are run without their count query
+        public Builder degradeCost(double degradeCost) {
+            this.degradeCost = degradeCost;
+            return this;
+        }
+
+        public Builder maxPageSize(int maxPageSize) {
+            if (maxPageSize <= 0)
+                throw new IllegalArgumentException("maxPageSize must be positive: " + maxPageSize);
+            this.maxPageSize = maxPageSize;
+            return this;
+        }
+
+        // unpaged List results of more rows are rejected. Not limited by default
+        public Builder maxRows(int maxRows) {
+            if (maxRows <= 0)
+                throw new IllegalArgumentException("maxRows must be positive: " + maxRows);
+            this.maxRows = maxRows;
+            return this;
+        }
+
+        public Builder maxOffset(long maxOffset) {
+            this.maxOffset = maxOffset;
+            return this;
+        }
+
+        public Builder maxInValues(int maxInValues) {
+            this.maxInValues = maxInValues;
+            return this;
+        }
+
+        // e.g. maxInValues("employees.id", 1000)
+        public Builder maxInValues(String property, int maxInValues) {
+            this.propertyMaxInValues.put(property, maxInValues);
+            return this;
+        }
+
+        // e.g. denyOperators("description", PredicateOperator.MATCHES, PredicateOperator.STRING_CONTAINS_IC)
+        public Builder denyOperators(String property, PredicateOperator... operators) {
+            this.deniedOperators.computeIfAbsent(property, key -> EnumSet.noneOf(PredicateOperator.class))
+                    .addAll(Arrays.asList(operators));
+            return this;
+        }
+
+        public Builder maxJoins(int maxJoins) {
+            this.maxJoins = maxJoins;
+            return this;
+        }
+
+        public Builder maxCollectionDepth(int maxCollectionDepth) {
+            this.maxCollectionDepth = maxCollectionDepth;
+            return this;
+        }
+
+        public Builder operatorWeight(PredicateOperator operator, double weight) {
+            this.operatorWeights.put(operator, weight);
+            return this;
+        }
+
+        public Builder inValueWeight(double inValueWeight) {
+            this.inValueWeight = inValueWeight;
+            return this;
+        }
+
+        public Builder joinWeight(double joinWeight) {
+            this.joinWeight = joinWeight;
+            return this;
+        }
+
+        public Builder collectionJoinWeight(double collectionJoinWeight) {
+            this.collectionJoinWeight = collectionJoinWeight;
+            return this;
+        }
+
+        public Builder pageSizeWeight(double pageSizeWeight) {
+            this.pageSizeWeight = pageSizeWeight;
+            return this;
+        }
+
+        public Builder offsetWeight(double offsetWeight) {
+            this.offsetWeight = offsetWeight;
+            return this;
+        }
+
+        // the policy of queries on the given entity, instead of this one
+        public Builder entity(Class<?> entity, QueryCostPolicy policy) {
+            this.entityPolicies.put(entity, Objects.requireNonNull(policy, "policy"));
+            return this;
+        }
+
+        public QueryCostPolicy build() {
+            return new QueryCostPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.snourian.micronaut.querydsl;
+
+import java.util.Arrays;
+
+// The timings of a query executed by QuerydslPredicateExecutor, sent to the QueryListeners after the query.
+// It only describes the shape of the query (keys, operators, number of joins and parameters), never the values
+public class QueryEvent {
+
+    private final Class<?> entity;
+    private final long[] nanos = new long[QueryPhase.values().length];
+    private final long start = System.nanoTime();
+    private long totalNanos = -1;
+    private QueryShape shape;
+    private QueryPlan plan;
+    private int joinCount;
+    private int paramCount;
+    private long rowCount = -1;
+
+    QueryEvent(Class<?> entity) {
+        this.entity = entity;
+        Arrays.fill(nanos, -1);
+    }
+
+    public Class<?> getEntity() {
+        return entity;
+    }
+
+    // null for queries of a Predicate (instead of QueryParameters)
+    public QueryShape getShape() {
+        return shape;
+    }
+
+    // a short and stable id of the shape, to be used as a tag of the metrics
+    public String getFingerprint() {
+        return shape == null ? "predicate" : shape.getFingerprint();
+    }
+
+    public int getJoinCount() {
+        return joinCount;
+    }
+
+    public int getParamCount() {
+        return paramCount;
+    }
+
+    // number of fetched rows, or -1 if they are not known (streams)
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    // -1 if the phase has not been executed, e.g. the count query of a short page
+    public long getNanos(QueryPhase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    // the wall-clock time of the call, up to the listeners. It is not the sum of the phases: they may overlap,
+    // e.g. the parallel count runs during the fetch
+    public long getTotalNanos() {
+        return totalNanos >= 0 ? totalNanos : System.nanoTime() - start;
+    }
+
+    // null for queries of a Predicate
+    QueryPlan getPlan() {
+        return plan;
+    }
+
+    void record(QueryPhase phase, long phaseNanos) {
+        nanos[phase.ordinal()] = phaseNanos;
+    }
+
+    void setPlan(QueryPlan plan) {
+        this.plan = plan;
+        this.shape = plan.getShape();
+        this.paramCount = plan.getParamCount();
+    }
+
+    void setJoinCount(int joinCount) {
+        this.joinCount = joinCount;
+    }
+
+    void setRowCount(long rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    void stop() {
+        this.totalNanos = System.nanoTime() - start;
+    }
+}
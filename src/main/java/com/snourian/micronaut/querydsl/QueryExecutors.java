@@ -0,0 +1,85 @@
+package com.snourian.micronaut.querydsl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// The shared thread pool which runs queries off the caller's thread (e.g. the count query of a paged findAll).
+// Bounded by the number of processors, since every running task holds a database connection.
+public class QueryExecutors {
+
+    public static final int DEFAULT_ASYNC_QUEUE_SIZE = 1000;
+
+    private static volatile ExecutorService shared;
+    private static volatile ExecutorService async;
+
+    private QueryExecutors() {
+    }
+
+    public static ExecutorService shared() {
+        ExecutorService executor = shared;
+        if (executor == null) {
+            synchronized (QueryExecutors.class) {
+                executor = shared;
+                if (executor == null) {
+                    executor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()),
+                            daemonThreadFactory("querydsl-query-"));
+                    shared = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    // The executor of the async methods (findAllAsync, ...): a virtual thread per task if the JDK supports them
+    // (Java 21+), since the tasks mostly wait for the database. Otherwise, a pool of two threads per processor
+    // with a bounded queue, which rejects tasks when it is full instead of piling them up
+    public static ExecutorService async() {
+        ExecutorService executor = async;
+        if (executor == null) {
+            synchronized (QueryExecutors.class) {
+                executor = async;
+                if (executor == null) {
+                    executor = virtualThreadExecutor();
+                    if (executor == null)
+                        executor = boundedExecutor(Math.max(2, 2 * Runtime.getRuntime().availableProcessors()),
+                                DEFAULT_ASYNC_QUEUE_SIZE, "querydsl-async-");
+                    async = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    // a fixed pool with a bounded queue. Tasks are rejected (RejectedExecutionException) if the queue is full
+    public static ExecutorService boundedExecutor(int threads, int queueSize, String threadPrefix) {
+        if (threads <= 0)
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        if (queueSize <= 0)
+            throw new IllegalArgumentException("queueSize must be positive: " + queueSize);
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), daemonThreadFactory(threadPrefix));
+    }
+
+    // the library targets Java 11, so virtual threads are only looked up by reflection
+    static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    static ThreadFactory daemonThreadFactory(String prefix) {
+        final AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
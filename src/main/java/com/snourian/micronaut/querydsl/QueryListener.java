@@ -0,0 +1,9 @@
+package com.snourian.micronaut.querydsl;
+
+// Receives the QueryEvent of every query executed by QuerydslPredicateExecutor, on the thread of the query.
+// Register listeners in QueryListeners (see MicrometerQueryListener and SlowQueryLogger)
+@FunctionalInterface
+public interface QueryListener {
+
+    void onQuery(QueryEvent event);
+}
@@ -0,0 +1,43 @@
+package com.snourian.micronaut.querydsl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// The registered QueryListeners. Queries are not timed at all while there is no listener
+public class QueryListeners {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryListeners.class);
+    private static final QueryListeners INSTANCE = new QueryListeners();
+
+    private final List<QueryListener> listeners = new CopyOnWriteArrayList<>();
+
+    public static QueryListeners getInstance() {
+        return INSTANCE;
+    }
+
+    public void add(QueryListener listener) {
+        listeners.add(listener);
+    }
+
+    public void remove(QueryListener listener) {
+        listeners.remove(listener);
+    }
+
+    public boolean isEmpty() {
+        return listeners.isEmpty();
+    }
+
+    // a failing listener must not fail the query
+    void fire(QueryEvent event) {
+        for (QueryListener listener : listeners) {
+            try {
+                listener.onQuery(event);
+            } catch (RuntimeException e) {
+                logger.warn("Query listener {} failed", listener, e);
+            }
+        }
+    }
+}
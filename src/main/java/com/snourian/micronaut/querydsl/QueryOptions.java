@@ -0,0 +1,317 @@
+package com.snourian.micronaut.querydsl;
+
+import com.querydsl.core.types.OrderSpecifier;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executor;
+
+// Per-call options of QuerydslPredicateExecutor. Repository-wide defaults can be set by overriding
+// QuerydslPredicateExecutor.getQueryOptions()
+public class QueryOptions {
+
+    public static final QueryOptions DEFAULT = builder().build();
+    public static final int DEFAULT_FETCH_SIZE = 500;
+    public static final int DEFAULT_IN_LIST_CHUNK_SIZE = 1000;
+
+    private final Map<String, Object> hints;
+    private final boolean parallelCount;
+    private final Executor executor;
+    private final int fetchSize;
+    private final int detachEvery;
+    private final JoinStrategy joinStrategy;
+    private final QueryCostPolicy costPolicy;
+    private final QueryResultCache resultCache;
+    private final CountStrategy countStrategy;
+    private final boolean inListPadding;
+    private final int inListChunkSize;
+    private final OrderSpecifier.NullHandling nullHandling;
+    private final List<String> fetch;
+    private final ReadRouting readRouting;
+    private final Executor asyncExecutor;
+    private final Duration timeout;
+    private final TextSearch textSearch;
+
+    private QueryOptions(Builder builder) {
+        this.hints = Collections.unmodifiableMap(new LinkedHashMap<>(builder.hints));
+        this.parallelCount = builder.parallelCount;
+        this.executor = builder.executor;
+        this.fetchSize = builder.fetchSize;
+        this.detachEvery = builder.detachEvery;
+        this.joinStrategy = builder.joinStrategy;
+        this.costPolicy = builder.costPolicy;
+        this.resultCache = builder.resultCache;
+        this.countStrategy = builder.countStrategy;
+        this.inListPadding = builder.inListPadding;
+        this.inListChunkSize = builder.inListChunkSize;
+        this.nullHandling = builder.nullHandling;
+        this.fetch = Collections.unmodifiableList(new ArrayList<>(builder.fetch));
+        this.readRouting = builder.readRouting;
+        this.asyncExecutor = builder.asyncExecutor;
+        this.timeout = builder.timeout;
+        this.textSearch = builder.normalized.isEmpty() && builder.textSearchDialect == TextSearchDialect.DEFAULT
+                ? TextSearch.DEFAULT
+                : new TextSearch(builder.textSearchDialect, builder.normalized);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Builder toBuilder() {
+        Builder builder = new Builder();
+        builder.hints.putAll(hints);
+        builder.parallelCount = parallelCount;
+        builder.executor = executor;
+        builder.fetchSize = fetchSize;
+        builder.detachEvery = detachEvery;
+        builder.joinStrategy = joinStrategy;
+        builder.costPolicy = costPolicy;
+        builder.resultCache = resultCache;
+        builder.countStrategy = countStrategy;
+        builder.inListPadding = inListPadding;
+        builder.inListChunkSize = inListChunkSize;
+        builder.nullHandling = nullHandling;
+        builder.fetch.addAll(fetch);
+        builder.readRouting = readRouting;
+        builder.asyncExecutor = asyncExecutor;
+        builder.timeout = timeout;
+        builder.textSearchDialect = textSearch.getDialect();
+        builder.normalized.putAll(textSearch.getNormalized());
+        return builder;
+    }
+
+    // JPA query hints, e.g. 'org.hibernate.readOnly'
+    public Map<String, Object> getHints() {
+        return hints;
+    }
+
+    // run the count query of a paged findAll on its own EntityManager (and connection), in parallel with the page fetch.
+    // It is outside the transaction of the caller, so it doesn't see its uncommitted changes, and the page and the
+    // total size may be read from different snapshots
+    public boolean isParallelCount() {
+        return parallelCount;
+    }
+
+    // the executor of the parallel queries. QueryExecutors.shared() is used if null
+    public Executor getExecutor() {
+        return executor != null ? executor : QueryExecutors.shared();
+    }
+
+    // JDBC fetch size of streamed queries
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    // the persistence context of a stream is cleared every 'detachEvery' rows. 0 = never
+    public int getDetachEvery() {
+        return detachEvery;
+    }
+
+    // how predicates on collection relations are added to the query
+    public JoinStrategy getJoinStrategy() {
+        return joinStrategy;
+    }
+
+    // admission control of queries built from QueryParameters
+    public QueryCostPolicy getCostPolicy() {
+        return costPolicy;
+    }
+
+    // results of findAll/findOne (and projections) are cached if not null. Requires EntityChangeTracker to be
+    // registered as an entity listener
+    public QueryResultCache getResultCache() {
+        return resultCache;
+    }
+
+    // how the total size of paged queries is counted
+    public CountStrategy getCountStrategy() {
+        return countStrategy;
+    }
+
+    // pad IN/NOT_IN lists to power-of-two sizes by repeating their last value, so lists of different lengths share
+    // the same query plan, JPQL and SQL strings
+    public boolean isInListPadding() {
+        return inListPadding;
+    }
+
+    // IN/NOT_IN lists above this size are split into OR-ed (AND-ed for NOT_IN) lists of at most this size
+    public int getInListChunkSize() {
+        return inListChunkSize;
+    }
+
+    // where null values of the sort properties are ordered, e.g. NullsLast. Default = the database default
+    public OrderSpecifier.NullHandling getNullHandling() {
+        return nullHandling;
+    }
+
+    // relations to load with the entities (see FetchPlan), in addition to the 'FETCH' param
+    public List<String> getFetch() {
+        return fetch;
+    }
+
+    // whether the queries may run on the read EntityManager of the executor. Default = always the primary one
+    public ReadRouting getReadRouting() {
+        return readRouting;
+    }
+
+    // the executor of the async methods (findAllAsync, ...). QueryExecutors.async() is used if null
+    public Executor getAsyncExecutor() {
+        return asyncExecutor != null ? asyncExecutor : QueryExecutors.async();
+    }
+
+    // the query timeout hint of every query, and the timeout of the futures of the async methods. null = no timeout
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    // how the FTS operator is rendered
+    public TextSearchDialect getTextSearchDialect() {
+        return textSearch.getDialect();
+    }
+
+    // the normalized property of a property (see Builder.normalize), or null
+    public String getNormalizedProperty(Class<?> owner, String property) {
+        return textSearch.normalizedOf(owner, property);
+    }
+
+    TextSearch getTextSearch() {
+        return textSearch;
+    }
+
+    public static class Builder {
+        private final Map<String, Object> hints = new LinkedHashMap<>();
+        private boolean parallelCount;
+        private Executor executor;
+        private int fetchSize = DEFAULT_FETCH_SIZE;
+        private int detachEvery = DEFAULT_FETCH_SIZE;
+        private JoinStrategy joinStrategy = JoinStrategy.JOIN;
+        private QueryCostPolicy costPolicy = QueryCostPolicy.UNLIMITED;
+        private QueryResultCache resultCache;
+        private CountStrategy countStrategy = CountStrategy.EXACT;
+        private boolean inListPadding = true;
+        private int inListChunkSize = DEFAULT_IN_LIST_CHUNK_SIZE;
+        private OrderSpecifier.NullHandling nullHandling = OrderSpecifier.NullHandling.Default;
+        private final List<String> fetch = new ArrayList<>();
+        private ReadRouting readRouting = ReadRouting.PRIMARY;
+        private Executor asyncExecutor;
+        private Duration timeout;
+        private TextSearchDialect textSearchDialect = TextSearchDialect.DEFAULT;
+        private final Map<List<Object>, String> normalized = new HashMap<>();
+
+        private Builder() {
+        }
+
+        public Builder hints(Map<String, Object> hints) {
+            this.hints.putAll(hints);
+            return this;
+        }
+
+        public Builder hint(String name, Object value) {
+            this.hints.put(name, value);
+            return this;
+        }
+
+        public Builder parallelCount(boolean parallelCount) {
+            this.parallelCount = parallelCount;
+            return this;
+        }
+
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public Builder fetchSize(int fetchSize) {
+            if (fetchSize <= 0)
+                throw new IllegalArgumentException("fetchSize must be positive: " + fetchSize);
+            this.fetchSize = fetchSize;
+            return this;
+        }
+
+        public Builder detachEvery(int detachEvery) {
+            if (detachEvery < 0)
+                throw new IllegalArgumentException("detachEvery must not be negative: " + detachEvery);
+            this.detachEvery = detachEvery;
+            return this;
+        }
+
+        public Builder joinStrategy(JoinStrategy joinStrategy) {
+            this.joinStrategy = Objects.requireNonNull(joinStrategy, "joinStrategy");
+            return this;
+        }
+
+        public Builder costPolicy(QueryCostPolicy costPolicy) {
+            this.costPolicy = Objects.requireNonNull(costPolicy, "costPolicy");
+            return this;
+        }
+
+        public Builder resultCache(QueryResultCache resultCache) {
+            this.resultCache = resultCache;
+            return this;
+        }
+
+        public Builder countStrategy(CountStrategy countStrategy) {
+            this.countStrategy = Objects.requireNonNull(countStrategy, "countStrategy");
+            return this;
+        }
+
+        public Builder inListPadding(boolean inListPadding) {
+            this.inListPadding = inListPadding;
+            return this;
+        }
+
+        public Builder inListChunkSize(int inListChunkSize) {
+            if (inListChunkSize <= 0)
+                throw new IllegalArgumentException("inListChunkSize must be positive: " + inListChunkSize);
+            this.inListChunkSize = inListChunkSize;
+            return this;
+        }
+
+        public Builder nullHandling(OrderSpecifier.NullHandling nullHandling) {
+            this.nullHandling = Objects.requireNonNull(nullHandling, "nullHandling");
+            return this;
+        }
+
+        public Builder fetch(String... paths) {
+            this.fetch.addAll(Arrays.asList(paths));
+            return this;
+        }
+
+        public Builder readRouting(ReadRouting readRouting) {
+            this.readRouting = Objects.requireNonNull(readRouting, "readRouting");
+            return this;
+        }
+
+        public Builder asyncExecutor(Executor asyncExecutor) {
+            this.asyncExecutor = asyncExecutor;
+            return this;
+        }
+
+        public Builder timeout(Duration timeout) {
+            if (timeout != null && (timeout.isNegative() || timeout.isZero()))
+                throw new IllegalArgumentException("timeout must be positive: " + timeout);
+            this.timeout = timeout;
+            return this;
+        }
+
+        public Builder textSearchDialect(TextSearchDialect textSearchDialect) {
+            this.textSearchDialect = Objects.requireNonNull(textSearchDialect, "textSearchDialect");
+            return this;
+        }
+
+        // e.g. normalize(Employee.class, "name", "nameNormalized"): PREFIX_IC on 'name' becomes a prefix 'like' on
+        // 'nameNormalized', which holds the lower case value of 'name'. The owner is the entity or embeddable of
+        // the property
+        public Builder normalize(Class<?> owner, String property, String normalizedProperty) {
+            this.normalized.put(Arrays.asList(Objects.requireNonNull(owner, "owner"),
+                    Objects.requireNonNull(property, "property")),
+                    Objects.requireNonNull(normalizedProperty, "normalizedProperty"));
+            return this;
+        }
+
+        public QueryOptions build() {
+            return new QueryOptions(this);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.snourian.micronaut.querydsl;
+
+public enum QueryPhase {
+    // QueryParameters -> ExpressionEntries
+    PARSE,
+    // plan lookup (or build), binding the values and creating the JPAQuery
+    BUILD,
+    // serializing the JPQL of the final query
+    SERIALIZE,
+    // running the query and reading its rows
+    FETCH,
+    // the count query of a page
+    COUNT
+}
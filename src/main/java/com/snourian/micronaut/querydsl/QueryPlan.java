@@ -0,0 +1,99 @@
+package com.snourian.micronaut.querydsl;
+
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.Param;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.snourian.micronaut.querydsl.expression.ExpressionEntries;
+import com.snourian.micronaut.querydsl.expression.PredicateEntry;
+import com.snourian.micronaut.querydsl.expression.PredicatePath;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+// A reusable query template for a QueryShape: the predicate (with parameters in place of the values) and its joins.
+// Plans are immutable and shared between threads. A request only binds its own values to a fresh JPAQuery.
+public class QueryPlan {
+
+    private final QueryShape shape;
+    private final Predicate predicate;
+    private final List<QuerydslPredicateBuilder.JoinsData> joins;
+    private final List<Param<Object>> params;
+    // index of the predicate entries (see ExpressionEntries.flatten()), in the order of the parameters,
+    // and the number of parameters of each entry
+    private final int[] bindOrder;
+    private final int[] paramCounts;
+    private final List<QueryTerm> terms;
+
+    private QueryPlan(QueryShape shape, Predicate predicate, List<QuerydslPredicateBuilder.JoinsData> joins,
+                      List<Param<Object>> params, int[] bindOrder, int[] paramCounts, List<QueryTerm> terms) {
+        this.shape = shape;
+        this.predicate = predicate;
+        this.joins = Collections.unmodifiableList(joins);
+        this.params = Collections.unmodifiableList(params);
+        this.bindOrder = bindOrder;
+        this.paramCounts = paramCounts;
+        this.terms = terms;
+    }
+
+    static <T> QueryPlan build(QueryShape shape, Class<T> entity, ExpressionEntries entries, QueryOptions options) {
+        QuerydslPredicateBuilder<T> builder = new QuerydslPredicateBuilder<>(entity, options);
+        Predicate predicate = builder.toPredicate(entries);
+        return new QueryPlan(shape, predicate, new ArrayList<>(builder.getJoins()), new ArrayList<>(builder.getParams()),
+                builder.getBindOrder().stream().mapToInt(Integer::intValue).toArray(),
+                builder.getParamCounts().stream().mapToInt(Integer::intValue).toArray(),
+                QueryTerm.of(entity, entries));
+    }
+
+    // add the joins and the where clause to the query and bind the values of the entries to the parameters
+    <R> JPAQuery<R> applyTo(JPAQuery<R> query, ExpressionEntries entries) {
+        return applyTo(query, entries, Collections.emptySet());
+    }
+
+    // to-one joins with one of the fetch aliases (see FetchPlan) are fetch joins
+    <R> JPAQuery<R> applyTo(JPAQuery<R> query, ExpressionEntries entries, Set<String> fetchAliases) {
+        for (QuerydslPredicateBuilder.JoinsData join : joins) {
+            query = QuerydslHelper.join(query, join, false);
+            if (join.getRelationType() == PredicatePath.RelationType.Single
+                    && fetchAliases.contains(PathResolver.aliasOf(join)))
+                query = query.fetchJoin();
+        }
+        query = query.where(predicate);
+        bind(query, entries);
+        return query;
+    }
+
+    // values are bound in the same order that QuerydslPredicateBuilder has created the parameters.
+    // Padded IN/NOT_IN lists repeat their last value up to the number of parameters of the entry
+    private void bind(JPAQuery<?> query, ExpressionEntries entries) {
+        final List<PredicateEntry> predicates = entries.flatten();
+        int idx = 0;
+        for (int i = 0; i < bindOrder.length; i++) {
+            final Object[] values = predicates.get(bindOrder[i]).getValues();
+            for (int j = 0; j < paramCounts[i]; j++)
+                query.set(params.get(idx++), values[Math.min(j, values.length - 1)]);
+        }
+    }
+
+    public QueryShape getShape() {
+        return shape;
+    }
+
+    public Predicate getPredicate() {
+        return predicate;
+    }
+
+    public List<QuerydslPredicateBuilder.JoinsData> getJoins() {
+        return joins;
+    }
+
+    public int getParamCount() {
+        return params.size();
+    }
+
+    // the predicates of the plan without their values
+    List<QueryTerm> getTerms() {
+        return terms;
+    }
+}
@@ -0,0 +1,65 @@
+package com.snourian.micronaut.querydsl;
+
+import com.snourian.micronaut.querydsl.expression.ExpressionEntries;
+import io.micronaut.core.util.clhm.ConcurrentLinkedHashMap;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// A bounded (LRU) cache of QueryPlans keyed by QueryShape. On a hit, the predicate and joins are not rebuilt and
+// the generated JPQL string stays the same between requests, so Hibernate's own query plan cache can be hit too.
+// Plans of shapes which are not cacheable (see QueryShape) are built for each request and are not counted.
+public class QueryPlanCache {
+
+    public static final int DEFAULT_MAX_SIZE = 512;
+
+    private static final QueryPlanCache INSTANCE = new QueryPlanCache(DEFAULT_MAX_SIZE);
+
+    private final ConcurrentLinkedHashMap<QueryShape, QueryPlan> plans;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public QueryPlanCache(long maxSize) {
+        this.plans = new ConcurrentLinkedHashMap.Builder<QueryShape, QueryPlan>()
+                .maximumWeightedCapacity(maxSize)
+                .build();
+    }
+
+    public static QueryPlanCache getInstance() {
+        return INSTANCE;
+    }
+
+    public <T> QueryPlan getPlan(Class<T> entity, ExpressionEntries entries, QueryOptions options) {
+        final QueryShape shape = QueryShape.of(entity, entries, options);
+        if (!shape.isCacheable())
+            return QueryPlan.build(shape, entity, entries, options);
+        QueryPlan plan = plans.get(shape);
+        if (plan != null) {
+            hits.increment();
+            return plan;
+        }
+        misses.increment();
+        plan = QueryPlan.build(shape, entity, entries, options);
+        QueryPlan existing = plans.putIfAbsent(shape, plan);
+        return existing != null ? existing : plan;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return plans.size();
+    }
+
+    public void setMaxSize(long maxSize) {
+        plans.setCapacity(maxSize);
+    }
+
+    public void clear() {
+        plans.clear();
+    }
+}
@@ -0,0 +1,88 @@
+package com.snourian.micronaut.querydsl;
+
+import io.micronaut.core.annotation.Introspected;
+
+import java.util.Collections;
+import java.util.List;
+
+// A query shape tracked by QueryProfiler. Latencies are in milliseconds
+@Introspected
+public class QueryProfile {
+
+    private final String fingerprint;
+    private final String entity;
+    private final String shape;
+    private final long count;
+    private final long error;
+    private final double p50;
+    private final double p99;
+    private final double averageRows;
+    private final long maxRows;
+    private final List<String> joinedPaths;
+    private final List<String> suggestedIndexes;
+
+    public QueryProfile(String fingerprint, String entity, String shape, long count, long error, double p50, double p99,
+                        double averageRows, long maxRows, List<String> joinedPaths, List<String> suggestedIndexes) {
+        this.fingerprint = fingerprint;
+        this.entity = entity;
+        this.shape = shape;
+        this.count = count;
+        this.error = error;
+        this.p50 = p50;
+        this.p99 = p99;
+        this.averageRows = averageRows;
+        this.maxRows = maxRows;
+        this.joinedPaths = Collections.unmodifiableList(joinedPaths);
+        this.suggestedIndexes = Collections.unmodifiableList(suggestedIndexes);
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public String getEntity() {
+        return entity;
+    }
+
+    // the description of the QueryShape (without values)
+    public String getShape() {
+        return shape;
+    }
+
+    // an upper bound of the number of queries, see getError()
+    public long getCount() {
+        return count;
+    }
+
+    // the maximum overestimation of the count
+    public long getError() {
+        return error;
+    }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    // -1 if the rows are not known (streams)
+    public double getAverageRows() {
+        return averageRows;
+    }
+
+    public long getMaxRows() {
+        return maxRows;
+    }
+
+    // joined relations of the predicates, e.g. 'employees.projects'
+    public List<String> getJoinedPaths() {
+        return joinedPaths;
+    }
+
+    // composite indexes as Entity(property, ...), e.g. 'Employee(rank, score)'
+    public List<String> getSuggestedIndexes() {
+        return suggestedIndexes;
+    }
+}
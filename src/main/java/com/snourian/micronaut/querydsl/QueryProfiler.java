@@ -0,0 +1,265 @@
+package com.snourian.micronaut.querydsl;
+
+import com.snourian.micronaut.querydsl.expression.operator.PredicateOperator;
+import io.micronaut.context.annotation.Context;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.util.StringUtils;
+import jakarta.annotation.PreDestroy;
+
+import java.util.*;
+
+// An in-process profiler of the query shapes, enabled by 'querydsl.profiler.enabled' and exposed by the 'querydsl'
+// management endpoint (see QueryProfilerEndpoint).
+// The top shapes are tracked with the Space-Saving heavy-hitter algorithm: at most 'querydsl.profiler.capacity'
+// shapes are kept, whatever the number of distinct shapes. A new shape replaces the least frequent one and inherits
+// its count, so counts are upper bounds and 'error' is their maximum overestimation. Counts are kept in a
+// Stream-Summary: a list of buckets of equal counts, in ascending order, so a count is incremented and the least
+// frequent shape is found in constant time. Only the counts are updated under the lock of the profiler; rows and
+// latencies are recorded under the lock of their shape. Latencies are the last LATENCY_SAMPLES queries of each
+// shape, so the memory of the profiler is constant
+@Context
+@Requires(property = QueryProfiler.ENABLED_PROPERTY, value = StringUtils.TRUE)
+public class QueryProfiler implements QueryListener {
+
+    public static final String ENABLED_PROPERTY = "querydsl.profiler.enabled";
+    public static final String CAPACITY_PROPERTY = "querydsl.profiler.capacity";
+    public static final int DEFAULT_CAPACITY = 100;
+    public static final int LATENCY_SAMPLES = 256;
+
+    private static final Set<PredicateOperator> EQUALITY_OPS =
+            EnumSet.of(PredicateOperator.EQ, PredicateOperator.IN, PredicateOperator.IS_NULL);
+    private static final Set<PredicateOperator> RANGE_OPS = EnumSet.of(PredicateOperator.GT, PredicateOperator.GOE,
+            PredicateOperator.LT, PredicateOperator.LOE, PredicateOperator.BETWEEN, PredicateOperator.STARTS_WITH);
+
+    private final int capacity;
+    private final Map<String, ShapeStats> shapes;
+    // the bucket of the smallest count
+    private Bucket first;
+
+    public QueryProfiler(@Value("${" + CAPACITY_PROPERTY + ":" + DEFAULT_CAPACITY + "}") int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException(CAPACITY_PROPERTY + " must be positive: " + capacity);
+        this.capacity = capacity;
+        this.shapes = new HashMap<>(capacity * 2);
+        QueryListeners.getInstance().add(this);
+    }
+
+    @PreDestroy
+    public void close() {
+        QueryListeners.getInstance().remove(this);
+    }
+
+    @Override
+    public void onQuery(QueryEvent event) {
+        final String key = event.getShape() == null
+                ? event.getEntity().getName() + "|predicate"
+                : event.getShape().getDescription();
+        final ShapeStats stats;
+        synchronized (this) {
+            stats = count(key, event);
+        }
+        // a shape which has been replaced in the meantime only loses this sample
+        stats.record(event);
+    }
+
+    // the tracked shapes, the most frequent first
+    public List<QueryProfile> getProfiles() {
+        final List<ShapeStats> tracked = new ArrayList<>();
+        final List<Long> counts = new ArrayList<>();
+        synchronized (this) {
+            for (Bucket bucket = first; bucket != null; bucket = bucket.next) {
+                for (ShapeStats stats = bucket.head; stats != null; stats = stats.nextInBucket) {
+                    tracked.add(stats);
+                    counts.add(bucket.count);
+                }
+            }
+        }
+        final List<QueryProfile> profiles = new ArrayList<>(tracked.size());
+        for (int i = tracked.size() - 1; i >= 0; i--)
+            profiles.add(tracked.get(i).toProfile(counts.get(i)));
+        return profiles;
+    }
+
+    public synchronized void reset() {
+        shapes.clear();
+        first = null;
+    }
+
+    // the stats of the shape, after incrementing its count. A new shape replaces a shape of the smallest count
+    // (in the first bucket) if the profiler is full
+    private ShapeStats count(String key, QueryEvent event) {
+        ShapeStats stats = shapes.get(key);
+        if (stats == null) {
+            if (shapes.size() >= capacity) {
+                // the new shape takes the place of the replaced one in its bucket, and inherits its count
+                final Bucket min = first;
+                final ShapeStats replaced = min.head;
+                shapes.remove(replaced.key);
+                stats = new ShapeStats(key, event, min.count);
+                stats.bucket = min;
+                stats.nextInBucket = replaced.nextInBucket;
+                if (stats.nextInBucket != null)
+                    stats.nextInBucket.prevInBucket = stats;
+                min.head = stats;
+            } else {
+                stats = new ShapeStats(key, event, 0);
+            }
+            shapes.put(key, stats);
+        }
+        increment(stats);
+        return stats;
+    }
+
+    // moves the shape to the bucket of its count + 1, which is its next bucket or a new one
+    private void increment(ShapeStats stats) {
+        final Bucket bucket = stats.bucket;
+        final long count = bucket == null ? 1 : bucket.count + 1;
+        Bucket next = bucket == null ? first : bucket.next;
+        if (next == null || next.count != count) {
+            final Bucket created = new Bucket(count);
+            created.prev = bucket;
+            created.next = next;
+            if (next != null)
+                next.prev = created;
+            if (bucket == null)
+                first = created;
+            else
+                bucket.next = created;
+            next = created;
+        }
+        if (bucket != null)
+            remove(bucket, stats);
+        add(next, stats);
+    }
+
+    private static void add(Bucket bucket, ShapeStats stats) {
+        stats.bucket = bucket;
+        stats.prevInBucket = null;
+        stats.nextInBucket = bucket.head;
+        if (bucket.head != null)
+            bucket.head.prevInBucket = stats;
+        bucket.head = stats;
+    }
+
+    // removes the shape from its bucket, and the bucket from the list if it is empty
+    private void remove(Bucket bucket, ShapeStats stats) {
+        if (stats.prevInBucket != null)
+            stats.prevInBucket.nextInBucket = stats.nextInBucket;
+        else
+            bucket.head = stats.nextInBucket;
+        if (stats.nextInBucket != null)
+            stats.nextInBucket.prevInBucket = stats.prevInBucket;
+        stats.bucket = null;
+        stats.prevInBucket = null;
+        stats.nextInBucket = null;
+        if (bucket.head != null)
+            return;
+        if (bucket.prev != null)
+            bucket.prev.next = bucket.next;
+        else
+            first = bucket.next;
+        if (bucket.next != null)
+            bucket.next.prev = bucket.prev;
+    }
+
+    // one composite index per table: the columns of the equality predicates first, then the column of one range
+    // predicate. Predicates under 'anyOf' can't use a composite index and are ignored
+    static List<String> suggestIndexes(List<QueryTerm> terms) {
+        final Map<Class<?>, List<String>> columns = new LinkedHashMap<>();
+        final Map<Class<?>, String> ranges = new HashMap<>();
+        for (QueryTerm term : terms) {
+            if (!term.isConjunctive())
+                continue;
+            if (EQUALITY_OPS.contains(term.getOp())) {
+                final List<String> owner = columns.computeIfAbsent(term.getOwner(), key -> new ArrayList<>());
+                if (!owner.contains(term.getProperty()))
+                    owner.add(term.getProperty());
+            } else if (RANGE_OPS.contains(term.getOp())) {
+                columns.computeIfAbsent(term.getOwner(), key -> new ArrayList<>());
+                ranges.putIfAbsent(term.getOwner(), term.getProperty());
+            }
+        }
+        final List<String> indexes = new ArrayList<>();
+        columns.forEach((owner, ownerColumns) -> {
+            final String range = ranges.get(owner);
+            if (range != null && !ownerColumns.contains(range))
+                ownerColumns.add(range);
+            if (!ownerColumns.isEmpty())
+                indexes.add(owner.getSimpleName() + "(" + String.join(", ", ownerColumns) + ")");
+        });
+        return indexes;
+    }
+
+    // shapes of the same count, in a list ordered by count
+    private static final class Bucket {
+        private final long count;
+        private Bucket prev;
+        private Bucket next;
+        private ShapeStats head;
+
+        private Bucket(long count) {
+            this.count = count;
+        }
+    }
+
+    private static final class ShapeStats {
+        private final String key;
+        private final Class<?> entity;
+        private final String fingerprint;
+        private final List<QueryTerm> terms;
+        private final long error;
+        // guarded by the profiler
+        private Bucket bucket;
+        private ShapeStats prevInBucket;
+        private ShapeStats nextInBucket;
+        // guarded by this
+        private long rows;
+        private long rowSamples;
+        private long maxRows;
+        // ring buffer of the last latencies
+        private final long[] latencies = new long[LATENCY_SAMPLES];
+        private int samples;
+        private int next;
+
+        private ShapeStats(String key, QueryEvent event, long inherited) {
+            this.key = key;
+            this.entity = event.getEntity();
+            this.fingerprint = event.getFingerprint();
+            this.terms = event.getPlan() != null ? event.getPlan().getTerms() : Collections.emptyList();
+            this.error = inherited;
+        }
+
+        private synchronized void record(QueryEvent event) {
+            if (event.getRowCount() >= 0) {
+                rows += event.getRowCount();
+                rowSamples++;
+                maxRows = Math.max(maxRows, event.getRowCount());
+            }
+            latencies[next] = event.getTotalNanos();
+            next = (next + 1) % latencies.length;
+            samples = Math.min(samples + 1, latencies.length);
+        }
+
+        private synchronized QueryProfile toProfile(long count) {
+            final long[] sorted = Arrays.copyOf(latencies, samples);
+            Arrays.sort(sorted);
+            final Set<String> joinedPaths = new LinkedHashSet<>();
+            for (QueryTerm term : terms) {
+                if (term.getJoinPath() != null)
+                    joinedPaths.add(term.getJoinPath());
+            }
+            return new QueryProfile(fingerprint, entity.getSimpleName(), key, count, error,
+                    percentile(sorted, 0.5), percentile(sorted, 0.99),
+                    rowSamples == 0 ? -1 : (double) rows / rowSamples, maxRows,
+                    new ArrayList<>(joinedPaths), suggestIndexes(terms));
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0)
+                return 0;
+            final int idx = Math.max(0, (int) Math.ceil(p * sorted.length) - 1);
+            return sorted[idx] / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.snourian.micronaut.querydsl;
+
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.management.endpoint.annotation.Delete;
+import io.micronaut.management.endpoint.annotation.Endpoint;
+import io.micronaut.management.endpoint.annotation.Read;
+
+import java.util.List;
+
+// GET /querydsl: the query shapes of QueryProfiler, the most frequent first. DELETE /querydsl resets them.
+// Requires micronaut-management, and the endpoint is sensitive by default (endpoints.querydsl.sensitive)
+@Endpoint(id = QueryProfilerEndpoint.ID, defaultSensitive = true)
+@Requires(classes = Endpoint.class)
+@Requires(beans = QueryProfiler.class)
+public class QueryProfilerEndpoint {
+
+    public static final String ID = "querydsl";
+
+    private final QueryProfiler profiler;
+
+    public QueryProfilerEndpoint(QueryProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    @Read
+    public List<QueryProfile> profiles() {
+        return profiler.getProfiles();
+    }
+
+    @Delete
+    public void reset() {
+        profiler.reset();
+    }
+}
@@ -0,0 +1,17 @@
+package com.snourian.micronaut.querydsl;
+
+// Thrown by QueryCostPolicy before a query reaches the database, e.g. to be mapped to a 400 response
+public class QueryRejectedException extends RuntimeException {
+
+    private final double cost;
+
+    public QueryRejectedException(String message, double cost) {
+        super(message);
+        this.cost = cost;
+    }
+
+    // the estimated cost of the query, or 0 if it was rejected by a hard limit before being scored
+    public double getCost() {
+        return cost;
+    }
+}
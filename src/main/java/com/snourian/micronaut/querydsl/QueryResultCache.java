@@ -0,0 +1,175 @@
+package com.snourian.micronaut.querydsl;
+
+import com.snourian.micronaut.querydsl.expression.ExpressionEntries;
+import com.snourian.micronaut.querydsl.expression.PredicateEntry;
+import com.snourian.micronaut.querydsl.expression.PredicatePath;
+import io.micronaut.core.util.clhm.ConcurrentLinkedHashMap;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// An opt-in (QueryOptions.resultCache) cache of the results of dynamic queries, keyed by the QueryShape, the bound
+// values and the page/sort of the query. Entities are stored as their ids and loaded again by primary key on a hit,
+// so managed entities are never shared between persistence contexts. Projections are stored as rows, and the same
+// row instances are returned to every hit.
+// Entries are bounded by size (LRU) and time-to-live, and are invalidated when an entity type the query touches
+// (the root entity and every joined entity) is changed, see EntityChangeTracker. Results of more than maxRows rows
+// are not cached: a hit would load all of their entities again
+public class QueryResultCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+    public static final int DEFAULT_MAX_ROWS = 1000;
+
+    private final ConcurrentLinkedHashMap<Key, Entry> entries;
+    private final long ttlNanos;
+    private final int maxRows;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public QueryResultCache(long maxSize, Duration ttl) {
+        this(maxSize, ttl, DEFAULT_MAX_ROWS);
+    }
+
+    public QueryResultCache(long maxSize, Duration ttl, int maxRows) {
+        if (ttl.isNegative() || ttl.isZero())
+            throw new IllegalArgumentException("ttl must be positive: " + ttl);
+        if (maxRows < 0)
+            throw new IllegalArgumentException("maxRows must not be negative: " + maxRows);
+        this.ttlNanos = ttl.toNanos();
+        this.maxRows = maxRows;
+        this.entries = new ConcurrentLinkedHashMap.Builder<Key, Entry>()
+                .maximumWeightedCapacity(maxSize)
+                .build();
+    }
+
+    // null on a miss, or if the entry is expired or one of its entity types has changed
+    Entry get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (entry.isValid(System.nanoTime())) {
+                hits.increment();
+                return entry;
+            }
+            entries.remove(key, entry);
+        }
+        misses.increment();
+        return null;
+    }
+
+    // the generations of the key are taken before the query, so changes made while it runs invalidate the entry
+    void put(Key key, List<?> rows, long totalSize) {
+        if (rows.size() > maxRows)
+            return;
+        entries.put(key, new Entry(key, Collections.unmodifiableList(new ArrayList<>(rows)), totalSize,
+                System.nanoTime() + ttlNanos));
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void setMaxSize(long maxSize) {
+        entries.setCapacity(maxSize);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    static final class Key {
+        private final String shape;
+        private final List<Object> values;
+        private final List<Object> variant;
+        private final int hash;
+        // entity types of the query and their generations when the key was created. Not part of equals
+        private final Class<?>[] types;
+        private final long[] generations;
+
+        private Key(String shape, List<Object> values, List<Object> variant, Set<Class<?>> types) {
+            this.shape = shape;
+            this.values = values;
+            this.variant = variant;
+            this.hash = Objects.hash(shape, values, variant);
+            this.types = types.toArray(new Class<?>[0]);
+            this.generations = new long[this.types.length];
+            for (int i = 0; i < this.types.length; i++)
+                generations[i] = EntityChangeTracker.generation(this.types[i]);
+        }
+
+        // variant: what is fetched with the query, e.g. the page and sort, or the projection
+        static Key of(Class<?> entity, ExpressionEntries entries, QueryOptions options,
+                      Collection<QuerydslPredicateBuilder.JoinsData> joins, List<Object> variant) {
+            final Set<Class<?>> types = new LinkedHashSet<>();
+            types.add(entity);
+            final List<Object> values = new ArrayList<>();
+            for (PredicateEntry entry : entries.flatten()) {
+                values.add(Arrays.asList(entry.getValues()));
+                for (PredicatePath path : entry.getPath())
+                    types.add(path.getType());
+            }
+            for (QuerydslPredicateBuilder.JoinsData join : joins)
+                types.add(join.getAlias().getType());
+            return new Key(QueryShape.of(entity, entries, options).getKey(), values, variant, types);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return hash == other.hash && shape.equals(other.shape) && values.equals(other.values)
+                    && variant.equals(other.variant);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    static final class Entry {
+        private final Class<?>[] types;
+        private final long[] generations;
+        private final List<?> rows;
+        private final long totalSize;
+        private final long expiresAt;
+
+        private Entry(Key key, List<?> rows, long totalSize, long expiresAt) {
+            this.types = key.types;
+            this.generations = key.generations;
+            this.rows = rows;
+            this.totalSize = totalSize;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isValid(long now) {
+            if (now - expiresAt >= 0)
+                return false;
+            for (int i = 0; i < types.length; i++) {
+                if (EntityChangeTracker.generation(types[i]) != generations[i])
+                    return false;
+            }
+            return true;
+        }
+
+        // ids of the entities, or the projected rows
+        List<?> getRows() {
+            return rows;
+        }
+
+        long getTotalSize() {
+            return totalSize;
+        }
+    }
+}
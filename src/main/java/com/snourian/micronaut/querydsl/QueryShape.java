@@ -0,0 +1,103 @@
+package com.snourian.micronaut.querydsl;
+
+import com.snourian.micronaut.querydsl.expression.ExpressionEntries;
+import com.snourian.micronaut.querydsl.expression.PredicateEntry;
+import com.snourian.micronaut.querydsl.expression.operator.OpType;
+
+// The normalized shape of a dynamic query: root entity, join strategy, the expression tree, and for each predicate its
+// key, operator and number of values. Two requests with the same shape only differ in their values, e.g.
+// 'employees.score=gt(70)' and 'employees.score=gt(80)'.
+// Values are never part of the shape, so its number of distinct keys doesn't depend on the requests. Shapes with
+// operators which can't be bound as parameters (e.g. LIKE) are not cacheable: their predicates are built per request.
+public class QueryShape {
+
+    private final String key;
+    private final String fingerprint;
+    private final boolean cacheable;
+
+    private QueryShape(String key, boolean cacheable) {
+        this.key = key;
+        this.fingerprint = fingerprintOf(key);
+        this.cacheable = cacheable;
+    }
+
+    public static QueryShape of(Class<?> entity, ExpressionEntries entries, QueryOptions options) {
+        final StringBuilder sb = new StringBuilder(entity.getName())
+                .append('|')
+                .append(options.getJoinStrategy());
+        append(sb, entries, options);
+        boolean cacheable = true;
+        for (PredicateEntry entry : entries.flatten())
+            cacheable &= QuerydslPredicateBuilder.isBindable(entry.getOp());
+        return new QueryShape(sb.toString(), cacheable);
+    }
+
+    // nested groups are enclosed in brackets: ALLOF[|a:EQ(1)|ANYOF[|b:EQ(1)|c:EQ(1)]]
+    private static void append(StringBuilder sb, ExpressionEntries node, QueryOptions options) {
+        sb.append('|').append(node.getType()).append('[');
+        for (PredicateEntry entry : node.getPredicates()) {
+            sb.append('|').append(entry.getKey())
+                    .append(':').append(entry.getOp())
+                    .append('(').append(valueCount(entry, options)).append(')');
+        }
+        node.getGroups().forEach(group -> append(sb, group, options));
+        sb.append(']');
+    }
+
+    // IN/NOT_IN lists of the same bucket (see QuerydslPredicateBuilder.paddedListSize) have the same shape
+    private static int valueCount(PredicateEntry entry, QueryOptions options) {
+        if (entry.getOp().getOpType() != OpType.LIST)
+            return entry.getValues().length;
+        return QuerydslPredicateBuilder.paddedListSize(entry.getValues().length, options.isInListPadding(),
+                options.getInListChunkSize());
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    // the shape is safe to be logged: it has no values
+    public String getDescription() {
+        return key;
+    }
+
+    // false if a predicate has an operator which can't be bound as a parameter: its plan is not cached
+    boolean isCacheable() {
+        return cacheable;
+    }
+
+    // 64-bit FNV-1a hash of the key, as 16 hex characters. Short enough for a metric tag or a log line, and bounded
+    // by the number of shapes
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    private static String fingerprintOf(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        final String hex = Long.toHexString(hash);
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof QueryShape))
+            return false;
+        return key.equals(((QueryShape) o).key);
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return key;
+    }
+}
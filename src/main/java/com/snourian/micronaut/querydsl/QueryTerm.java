@@ -0,0 +1,86 @@
+package com.snourian.micronaut.querydsl;
+
+import com.snourian.micronaut.querydsl.expression.ExpressionEntries;
+import com.snourian.micronaut.querydsl.expression.ExpressionType;
+import com.snourian.micronaut.querydsl.expression.PredicateEntry;
+import com.snourian.micronaut.querydsl.expression.PredicatePath;
+import com.snourian.micronaut.querydsl.expression.operator.PredicateOperator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// A predicate of a QueryPlan without its values: the entity (table) of the property, the property and the operator.
+// Used by QueryProfiler to report joined paths and to suggest indexes
+final class QueryTerm {
+
+    private final Class<?> owner;
+    // property of the owner, e.g. 'score' or 'address.city' (embedded)
+    private final String property;
+    // dotted path of the joined entity, e.g. 'employees.projects'. null for properties of the root entity
+    private final String joinPath;
+    private final PredicateOperator op;
+    // true if the predicate is AND-ed with the rest of the query (no 'anyOf' on the way)
+    private final boolean conjunctive;
+
+    private QueryTerm(Class<?> owner, String property, String joinPath, PredicateOperator op, boolean conjunctive) {
+        this.owner = owner;
+        this.property = property;
+        this.joinPath = joinPath;
+        this.op = op;
+        this.conjunctive = conjunctive;
+    }
+
+    static List<QueryTerm> of(Class<?> entity, ExpressionEntries entries) {
+        final List<QueryTerm> terms = new ArrayList<>();
+        collect(entity, entries, true, terms);
+        return Collections.unmodifiableList(terms);
+    }
+
+    private static void collect(Class<?> entity, ExpressionEntries node, boolean conjunctive, List<QueryTerm> terms) {
+        // a single predicate is AND-ed with its parent, whatever the type of its node
+        final boolean and = conjunctive && (node.getType() != ExpressionType.ANYOF
+                || node.getPredicates().size() + node.getGroups().size() == 1);
+        for (PredicateEntry entry : node.getPredicates()) {
+            Class<?> owner = entity;
+            String joinPath = null;
+            final StringBuilder dotted = new StringBuilder();
+            int propertyStart = 0;
+            for (PredicatePath path : entry.getPath()) {
+                if (dotted.length() > 0)
+                    dotted.append('.');
+                dotted.append(path.getProperty());
+                if (path.getRelationType() != PredicatePath.RelationType.Embedded) {
+                    owner = path.getType();
+                    joinPath = dotted.toString();
+                    propertyStart = dotted.length() + 1;
+                }
+            }
+            final String property = dotted.length() > propertyStart
+                    ? dotted.substring(propertyStart) + '.' + entry.getProperty()
+                    : entry.getProperty();
+            terms.add(new QueryTerm(owner, property, joinPath, entry.getOp(), and));
+        }
+        node.getGroups().forEach(group -> collect(entity, group, and, terms));
+    }
+
+    Class<?> getOwner() {
+        return owner;
+    }
+
+    String getProperty() {
+        return property;
+    }
+
+    String getJoinPath() {
+        return joinPath;
+    }
+
+    PredicateOperator getOp() {
+        return op;
+    }
+
+    boolean isConjunctive() {
+        return conjunctive;
+    }
+}
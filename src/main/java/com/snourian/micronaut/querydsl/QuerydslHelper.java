@@ -1,40 +1,117 @@
 package com.snourian.micronaut.querydsl;
 
-import com.querydsl.core.types.EntityPath;
-import com.querydsl.core.types.Order;
-import com.querydsl.core.types.OrderSpecifier;
-import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.JoinExpression;
+import com.querydsl.core.types.*;
 import com.querydsl.jpa.impl.JPAQuery;
+import com.snourian.micronaut.querydsl.expression.PredicatePath;
 import io.micronaut.data.model.Pageable;
 import io.micronaut.data.model.Sort;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.LongSupplier;
+
 // A Helper class to convert Micronaut Pageable and Sort to JPAQuery of QueryDSL
 // Ideas taken from Spring Data JPA support for QueryDSL:
 // https://github.com/spring-projects/spring-data-jpa/blob/main/src/main/java/org/springframework/data/jpa/repository/support/Querydsl.java
 public class QuerydslHelper {
 
+    // JDBC fetch size hint of Hibernate (org.hibernate.annotations.QueryHints.FETCH_SIZE)
+    static final String HINT_FETCH_SIZE = "org.hibernate.fetchSize";
+    static final String HINT_QUERY_TIMEOUT = "javax.persistence.query.timeout";
+
     private QuerydslHelper() {
     }
 
-    static <T> JPAQuery<T> applyPagination(JPAQuery<T> query, Pageable pageable, EntityPath<T> path) {
+    static <T> JPAQuery<T> applyPagination(JPAQuery<T> query, Pageable pageable, Class<?> entity,
+                                           OrderSpecifier.NullHandling nullHandling) {
         if (pageable.isUnpaged())
             return query;
         query.offset(pageable.getOffset());
         query.limit(pageable.getSize());
-        return applySorting(query, pageable.getSort(), path);
+        return applySorting(query, pageable.getSort(), entity, nullHandling);
     }
 
-    static <T> JPAQuery<T> applySorting(JPAQuery<T> query, Sort sort, EntityPath<T> path) {
+    // sort properties can be nested paths (e.g. 'location.city'). Their joins which are not already in the query
+    // (from filters) are added as left joins, so rows without the relation are not filtered
+    static <T> JPAQuery<T> applySorting(JPAQuery<T> query, Sort sort, Class<?> entity,
+                                        OrderSpecifier.NullHandling nullHandling) {
         if (!sort.isSorted())
             return query;
-        sort.getOrderBy()
-                .forEach(order -> query.orderBy(toOrderSpecifier(order, path)));
+        Set<String> aliases = null;
+        for (Sort.Order order : sort.getOrderBy()) {
+            final SortPath sortPath = SortPath.of(entity, order, nullHandling);
+            for (QuerydslPredicateBuilder.JoinsData join : sortPath.getJoins()) {
+                if (aliases == null)
+                    aliases = joinAliases(query);
+                if (aliases.add(PathResolver.aliasOf(join)))
+                    query = join(query, join, true);
+            }
+            query.orderBy(sortPath.getOrderSpecifier());
+        }
         return query;
     }
 
-    static <T> OrderSpecifier<?> toOrderSpecifier(Sort.Order sortOrder, EntityPath<T> path) {
-        final Order order = sortOrder.isAscending() ? Order.ASC : Order.DESC;
-        return new OrderSpecifier(order, Expressions.path(path.getType(), path, sortOrder.getProperty()),
-                OrderSpecifier.NullHandling.Default);
+    // The total size of a page without running the count query, if it can be computed from the page itself
+    // (the first page, or the last one, is not full). Otherwise, the count query will be executed
+    static <T> long totalSize(List<T> content, Pageable pageable, LongSupplier count) {
+        final long offset = pageable.getOffset();
+        final int size = pageable.getSize();
+        if (offset == 0 && size > content.size())
+            return content.size();
+        if (!content.isEmpty() && size > content.size())
+            return offset + content.size();
+        return count.getAsLong();
+    }
+
+    // A lower bound of the total size, without a count query: the rows up to this page, and one more if the page
+    // is full, so there is always a next page to try
+    static <T> long minTotalSize(List<T> content, Pageable pageable) {
+        final long total = pageable.getOffset() + content.size();
+        return content.size() < pageable.getSize() ? total : total + 1;
+    }
+
+    // add a join of QuerydslPredicateBuilder to the query
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static <T> JPAQuery<T> join(JPAQuery<T> query, QuerydslPredicateBuilder.JoinsData join, boolean leftJoin) {
+        if (join.getRelationType() == PredicatePath.RelationType.Collection) {
+            if (leftJoin)
+                return query.leftJoin((CollectionExpression) join.getExpr(), join.getAlias());
+            return query.join((CollectionExpression) join.getExpr(), join.getAlias());
+        } else if (join.getRelationType() == PredicatePath.RelationType.Single) {
+            if (leftJoin)
+                return query.leftJoin((EntityPath) join.getExpr(), join.getAlias());
+            return query.join((EntityPath) join.getExpr(), join.getAlias());
+        }
+        // Implement Map relation join
+        return query;
+    }
+
+    // aliases of the joins which are already in the query, e.g. 'department_employees'
+    static Set<String> joinAliases(JPAQuery<?> query) {
+        final Set<String> aliases = new HashSet<>();
+        for (JoinExpression join : query.getMetadata().getJoins()) {
+            // join target is 'path as alias'
+            if (join.getTarget() instanceof Operation && ((Operation<?>) join.getTarget()).getOperator() == Ops.ALIAS) {
+                Expression<?> alias = ((Operation<?>) join.getTarget()).getArg(1);
+                if (alias instanceof Path)
+                    aliases.add(((Path<?>) alias).getMetadata().getName());
+            }
+        }
+        return aliases;
+    }
+
+    // wait for the result of an async query and rethrow its original exception
+    static <R> R join(CompletableFuture<R> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        }
     }
 }
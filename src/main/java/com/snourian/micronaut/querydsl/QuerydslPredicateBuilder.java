@@ -1,96 +1,246 @@
 package com.snourian.micronaut.querydsl;
 
-import com.querydsl.core.types.Expression;
-import com.querydsl.core.types.Path;
-import com.querydsl.core.types.PathMetadataFactory;
-import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.*;
 import com.querydsl.core.types.dsl.*;
 import com.querydsl.core.util.StringUtils;
+import com.querydsl.jpa.JPAExpressions;
+import com.querydsl.jpa.JPQLQuery;
 import com.snourian.micronaut.querydsl.expression.ExpressionEntries;
 import com.snourian.micronaut.querydsl.expression.ExpressionFactory;
 import com.snourian.micronaut.querydsl.expression.ExpressionType;
+import com.snourian.micronaut.querydsl.expression.PredicateEntry;
 import com.snourian.micronaut.querydsl.expression.PredicatePath;
 import com.snourian.micronaut.querydsl.expression.operator.OpType;
+import com.snourian.micronaut.querydsl.expression.operator.PredicateOperator;
 
 import java.util.*;
-import java.util.stream.Stream;
 
 public class QuerydslPredicateBuilder<T> {
 
-    // storing join expressions. Will be used in QuerydslPredicateExecutor.createQuery()
-    private final Map<String, JoinsData> joins = new LinkedHashMap<>();
-    // a cache for parent paths in order to avoid creating them multiple times
-    private final Map<String, Path<?>> pathCache = new HashMap<>();
-    // storing predicates to be used in query after 'where' clause
-    private final List<BooleanOperation> predicates = new ArrayList<>();
+    private static final Set<PredicateOperator> BINDABLE_OPS = EnumSet.of(PredicateOperator.EQ, PredicateOperator.NE,
+            PredicateOperator.GT, PredicateOperator.GOE, PredicateOperator.LT, PredicateOperator.LOE,
+            PredicateOperator.BETWEEN, PredicateOperator.IN, PredicateOperator.NOT_IN);
+
+    // parameters created instead of constants when building a QueryPlan. Values are bound in the same order
+    private final List<Param<Object>> paramExprs = new ArrayList<>();
+    // index of the predicate entries, in the order their parameters are created, and their number of parameters
+    private final List<Integer> bindOrder = new ArrayList<>();
+    private final List<Integer> paramCounts = new ArrayList<>();
     private final Class<? extends T> entityType;
     private final QueryParameters params;
+    private final boolean parameterized;
+    private final JoinStrategy joinStrategy;
+    private final boolean inListPadding;
+    private final int inListChunkSize;
+    private final TextSearch textSearch;
+    private Map<PredicateEntry, Integer> entryIndexes;
+    private String parentName;
+    private Path<T> parentPath;
+    // paths and joins of the main query. Will be used in QuerydslPredicateExecutor.createQuery()
+    private PathResolver resolver;
 
     public QuerydslPredicateBuilder(Class<? extends T> entityType, QueryParameters params) {
+        this(entityType, params, JoinStrategy.JOIN);
+    }
+
+    public QuerydslPredicateBuilder(Class<? extends T> entityType, QueryParameters params, JoinStrategy joinStrategy) {
         this.entityType = entityType;
         this.params = params;
+        this.parameterized = false;
+        this.joinStrategy = joinStrategy;
+        this.inListPadding = QueryOptions.DEFAULT.isInListPadding();
+        this.inListChunkSize = QueryOptions.DEFAULT.getInListChunkSize();
+        this.textSearch = QueryOptions.DEFAULT.getTextSearch();
+    }
+
+    // used by QueryPlan: bindable values are replaced by anonymous parameters, so the predicate can be reused
+    QuerydslPredicateBuilder(Class<? extends T> entityType, QueryOptions options) {
+        this.entityType = entityType;
+        this.params = null;
+        this.parameterized = true;
+        this.joinStrategy = options.getJoinStrategy();
+        this.inListPadding = options.isInListPadding();
+        this.inListChunkSize = options.getInListChunkSize();
+        this.textSearch = options.getTextSearch();
     }
 
     public Predicate toPredicate() {
         // extract property values, types, predicate operation and their path from the root entity from http params
-        ExpressionEntries exprMetadata = ExpressionFactory.createFromParams(entityType, params.getParameters());
-        final String parentName = StringUtils.uncapitalize(entityType.getSimpleName());
-        final SimplePath<T> parentPath = Expressions.path(entityType, parentName);
-        pathCache.put(parentName, parentPath);
-        exprMetadata.getPredicates()
-                .forEach(predicatePath -> {
-                    Expression<?>[] exprs;
-                    // First step -> creating constants for building our query
-                    // for some operations we need to put our constants in Expression.list(). e.g. 'IN'
-                    if (predicatePath.getOp().getOpType() == OpType.LIST) {
-                        exprs = new Expression<?>[2];
-                        exprs[1] = Expressions.list(
-                                Stream.of(predicatePath.getValues())
-                                        .map(Expressions::constant)
-                                        .distinct()
-                                        .toArray(Expression<?>[]::new));
-                    } else {
-                        exprs = new Expression<?>[predicatePath.getValues().length + 1];
-                        for (int i = 0; i < predicatePath.getValues().length; i++)
-                            exprs[i + 1] = Expressions.constant(predicatePath.getValues()[i]);
-                    }
-                    Path<?> lastPath = parentPath;
-                    // building the predicate according to the path
-                    // example: department[Root Entity].employee[Next Entity].score[Simple Property]
-                    for (PredicatePath path : predicatePath.getPath()) {
-                        // If the path data exists, retrieve it from the cache. If not, create a path and PathMetadata
-                        final String alias = path.getFullPath();
-                        Path<?> prev = pathCache.get(path.getPath());
-                        Path<?> next;
-                        if (path.getRelationType() == PredicatePath.RelationType.Collection) {
-                            next = pathCache.computeIfAbsent(alias, key -> Expressions.path(path.getType(), key));
-                            joins.computeIfAbsent(alias,
-                                    fp -> JoinsData.of(Expressions.collectionPath(path.getType(), Expressions.path(path.getType(), path.getProperty()).getClass(), PathMetadataFactory.forProperty(prev, path.getProperty())), next, path.getRelationType()));
-                        } else if (path.getRelationType() == PredicatePath.RelationType.Single) {
-                            next = pathCache.computeIfAbsent(alias, key -> Expressions.path(path.getType(), key));
-                            joins.computeIfAbsent(alias,
-                                    fp -> JoinsData.of(new PathBuilder<Object>(path.getType(), PathMetadataFactory.forProperty(prev, path.getProperty())), next, path.getRelationType()));
-                        } else
-                            next = pathCache.computeIfAbsent(alias, key -> Expressions.path(path.getType(), PathMetadataFactory.forProperty(prev, path.getProperty())));
-                        lastPath = next;
-                        // TODO: 11/3/2021 Support Map [Expressions.mapPath()] and ElementCollection relations
-                    }
-                    // the final element in path (and the final element is a simple property, like String)
-                    // this is the property that we want to create predicate for it. (e.g. score = 50)
-                    exprs[0] = Expressions.path(predicatePath.getPropertyType(), lastPath, predicatePath.getProperty());
-                    // creating the final predicate with the specified operator [e.g. score eq(50)]
-                    predicates.add(Expressions.predicate(predicatePath.getOp().getOperator(), exprs));
-                });
-        BooleanExpression[] booleanExprs = predicates.toArray(new BooleanOperation[0]);
-        // allOf: AND all the predicates | anyOf: OR all the predicates
-        if (exprMetadata.getType() == ExpressionType.ANYOF)
-            return Expressions.anyOf(booleanExprs);
+        return toPredicate(ExpressionFactory.createFromParams(entityType, params.getParameters()));
+    }
+
+    Predicate toPredicate(ExpressionEntries exprMetadata) {
+        parentName = StringUtils.uncapitalize(entityType.getSimpleName());
+        parentPath = Expressions.path(entityType, parentName);
+        resolver = new PathResolver(parentName, parentPath);
+        entryIndexes = new IdentityHashMap<>();
+        for (PredicateEntry entry : exprMetadata.flatten())
+            entryIndexes.put(entry, entryIndexes.size());
+        // contradicting predicates (see ExpressionNormalizer). QuerydslPredicateExecutor doesn't run such queries at all
+        if (exprMetadata.isUnsatisfiable())
+            return Expressions.FALSE.isTrue();
+        return nodePredicate(exprMetadata);
+    }
+
+    // predicates of a node of the expression tree, combined with the predicates of its nested groups
+    private Predicate nodePredicate(ExpressionEntries node) {
+        final List<Predicate> predicates = new ArrayList<>();
+        if (joinStrategy == JoinStrategy.EXISTS) {
+            // predicates on the same collection of the root entity are grouped in one subquery
+            final Map<String, List<PredicateEntry>> collectionGroups = new LinkedHashMap<>();
+            for (PredicateEntry entry : node.getPredicates()) {
+                final String collection = collectionOf(entry);
+                if (collection == null)
+                    predicates.add(createPredicate(entry, resolver));
+                else
+                    collectionGroups.computeIfAbsent(collection, key -> new ArrayList<>()).add(entry);
+            }
+            collectionGroups.forEach((collection, entries) ->
+                    predicates.add(existsPredicate(collection, entries, node.getType())));
+        } else {
+            node.getPredicates()
+                    .forEach(predicatePath -> predicates.add(createPredicate(predicatePath, resolver)));
+        }
+        node.getGroups().forEach(group -> predicates.add(nodePredicate(group)));
+        return combine(node.getType(), predicates);
+    }
+
+    private Predicate createPredicate(PredicateEntry predicatePath, PathResolver pathResolver) {
+        final boolean bound = parameterized && isBindable(predicatePath.getOp());
+        if (bound)
+            bindOrder.add(entryIndexes.get(predicatePath));
+        final int paramCount = paramExprs.size();
+        Path<?> lastPath = pathResolver.toPath(predicatePath.getPath());
+        // the final element in path (and the final element is a simple property, like String)
+        // this is the property that we want to create predicate for it. (e.g. score = 50)
+        Path<?> property = Expressions.path(predicatePath.getPropertyType(), lastPath, predicatePath.getProperty());
+        Predicate predicate;
+        // for some operations we need to put our constants in Expression.list(). e.g. 'IN'
+        if (predicatePath.getOp().getOpType() == OpType.LIST) {
+            predicate = listPredicate(predicatePath, property);
+        } else if (TextSearch.isTextSearch(predicatePath.getOp())) {
+            predicate = textPredicate(predicatePath, lastPath, property);
+        } else {
+            Expression<?>[] exprs = new Expression<?>[predicatePath.getValues().length + 1];
+            exprs[0] = property;
+            for (int i = 0; i < predicatePath.getValues().length; i++)
+                exprs[i + 1] = toValueExpression(predicatePath, predicatePath.getValues()[i]);
+            // creating the final predicate with the specified operator [e.g. score eq(50)]
+            predicate = Expressions.predicate(predicatePath.getOp().getOperator(), exprs);
+        }
+        if (bound)
+            paramCounts.add(paramExprs.size() - paramCount);
+        return predicate;
+    }
+
+    // FTS and PREFIX_IC, see TextSearch. The normalized property is in the same entity/embeddable as the property
+    private Predicate textPredicate(PredicateEntry entry, Path<?> parent, Path<?> property) {
+        final List<PredicatePath> path = entry.getPath();
+        final Class<?> owner = path.isEmpty() ? entityType : path.get(path.size() - 1).getType();
+        final String normalized = textSearch.normalizedOf(owner, entry.getProperty());
+        return textSearch.predicate(entry.getOp(), entry.getValues(), property,
+                normalized != null ? Expressions.stringPath(parent, normalized) : null, false);
+    }
+
+    // IN/NOT_IN lists are padded to a bucket size (see paddedListSize) by repeating their last value, so lists of
+    // different lengths share the same JPQL and SQL strings. Lists above the chunk size are split into chunks:
+    // 'x in (chunk1) or x in (chunk2)' and 'x not in (chunk1) and x not in (chunk2)'
+    private Predicate listPredicate(PredicateEntry entry, Path<?> property) {
+        // values are already distinct (see ExpressionFactory)
+        final Object[] values = entry.getValues();
+        if (values.length == 0) // no chunks: the predicate would be dropped and match every row
+            throw new IllegalArgumentException("Empty list of values for '" + entry.getKey() + "'");
+        final int size = paddedListSize(values.length, inListPadding, inListChunkSize);
+        final List<Predicate> chunks = new ArrayList<>();
+        for (int start = 0; start < size; start += inListChunkSize) {
+            final Expression<?>[] chunk = new Expression<?>[Math.min(size - start, inListChunkSize)];
+            for (int i = 0; i < chunk.length; i++)
+                chunk[i] = toValueExpression(entry, values[Math.min(start + i, values.length - 1)]);
+            chunks.add(Expressions.predicate(entry.getOp().getOperator(), property, Expressions.list(chunk)));
+        }
+        if (chunks.size() == 1)
+            return chunks.get(0);
+        return entry.getOp() == PredicateOperator.NOT_IN ? ExpressionUtils.allOf(chunks) : ExpressionUtils.anyOf(chunks);
+    }
+
+    // number of values of an IN/NOT_IN list after padding: the next power of two up to the chunk size, or a
+    // multiple of the chunk size above it. e.g. 3 -> 4, 5 -> 8, 1500 -> 2000 (chunk size = 1000)
+    static int paddedListSize(int size, boolean padding, int chunkSize) {
+        if (!padding || size <= 1)
+            return size;
+        if (size > chunkSize)
+            return (size + chunkSize - 1) / chunkSize * chunkSize;
+        return Math.min(Integer.highestOneBit(size - 1) << 1, chunkSize);
+    }
+
+    // exists (select 1 from Department department_employees_sq
+    //         inner join department_employees_sq.employees as department_employees_sq_employees
+    //         where department_employees_sq = department and [predicates of the group])
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Predicate existsPredicate(String collection, List<PredicateEntry> entries, ExpressionType type) {
+        final String rootName = collection + "_sq";
+        final PathBuilder<T> root = new PathBuilder<>(entityType, rootName);
+        final PathResolver subQueryResolver = new PathResolver(parentName, root);
+        final List<Predicate> predicates = new ArrayList<>(entries.size());
+        entries.forEach(entry -> predicates.add(createPredicate(entry, subQueryResolver)));
+        JPQLQuery<Integer> subQuery = JPAExpressions.selectOne().from(root);
+        for (JoinsData join : subQueryResolver.getJoins()) {
+            if (join.getRelationType() == PredicatePath.RelationType.Collection)
+                subQuery.innerJoin((CollectionExpression) join.getExpr(), join.getAlias());
+            else if (join.getRelationType() == PredicatePath.RelationType.Single)
+                subQuery.innerJoin((EntityPath) join.getExpr(), join.getAlias());
+        }
+        return subQuery.where(Expressions.predicate(Ops.EQ, root, parentPath), combine(type, predicates)).exists();
+    }
+
+    // the path of the first collection in the path of the predicate (e.g. 'department_employees'), or null
+    private static String collectionOf(PredicateEntry entry) {
+        for (PredicatePath path : entry.getPath()) {
+            if (path.getRelationType() == PredicatePath.RelationType.Collection)
+                return path.getFullPath();
+        }
+        return null;
+    }
+
+    // allOf: AND all the predicates | anyOf: OR all the predicates
+    private static Predicate combine(ExpressionType type, List<Predicate> predicates) {
+        if (type == ExpressionType.ANYOF)
+            return ExpressionUtils.anyOf(predicates);
         else
-            return Expressions.allOf(booleanExprs);
+            return ExpressionUtils.allOf(predicates);
+    }
+
+    // a constant, or a parameter if the predicate is going to be cached in a QueryPlan
+    private Expression<?> toValueExpression(PredicateEntry entry, Object value) {
+        if (!parameterized || !isBindable(entry.getOp()))
+            return Expressions.constant(value);
+        Param<Object> param = new Param<>(entry.getPropertyType());
+        paramExprs.add(param);
+        return param;
+    }
+
+    // Operators that are rendered as '{0} op {1}' in JPQL. Other operators (like, starts_with, ...) transform
+    // their constants while serializing (escaping, adding '%', ...) so their values can't be replaced by parameters.
+    static boolean isBindable(PredicateOperator op) {
+        return BINDABLE_OPS.contains(op);
     }
 
     public Collection<JoinsData> getJoins() {
-        return joins.values();
+        if (resolver == null)
+            return Collections.emptyList();
+        return resolver.getJoins();
+    }
+
+    List<Param<Object>> getParams() {
+        return paramExprs;
+    }
+
+    List<Integer> getBindOrder() {
+        return bindOrder;
+    }
+
+    List<Integer> getParamCounts() {
+        return paramCounts;
     }
 
     public static class JoinsData {
@@ -104,7 +254,7 @@ public class QuerydslPredicateBuilder<T> {
             this.relationType = relationType;
         }
 
-        private static JoinsData of(Expression<?> expr, Path<?> alias, PredicatePath.RelationType relationType) {
+        static JoinsData of(Expression<?> expr, Path<?> alias, PredicatePath.RelationType relationType) {
             return new JoinsData(expr, alias, relationType);
         }
 
@@ -1,23 +1,33 @@
 package com.snourian.micronaut.querydsl;
 
-import com.querydsl.core.types.CollectionExpression;
+import com.mysema.commons.lang.CloseableIterator;
+import com.querydsl.core.Tuple;
 import com.querydsl.core.types.EntityPath;
 import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.Expressions;
 import com.querydsl.core.types.dsl.PathBuilder;
 import com.querydsl.core.util.StringUtils;
 import com.querydsl.jpa.impl.JPAQuery;
-import com.snourian.micronaut.querydsl.expression.PredicatePath;
+import com.snourian.micronaut.querydsl.expression.ExpressionEntries;
+import com.snourian.micronaut.querydsl.expression.ExpressionFactory;
+import io.micronaut.core.beans.BeanProperty;
 import io.micronaut.data.model.Page;
 import io.micronaut.data.model.Pageable;
 import io.micronaut.data.model.Sort;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.persistence.EntityManager;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import javax.persistence.EntityManagerFactory;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public interface QuerydslPredicateExecutor<T> {
 
@@ -32,15 +42,35 @@ public interface QuerydslPredicateExecutor<T> {
     }
 
     default Optional<T> findOne(Predicate predicate, Map<String, Object> hints) {
-        JPAQuery<T> query = createQuery(predicate, hints);
-        logQuery(query);
-        return Optional.ofNullable(query.fetchOne());
+        QueryOptions options = withHints(hints);
+        EntityManager em = entityManager(options);
+        QueryEvent event = startEvent();
+        FetchPlan fetchPlan = fetchPlanOf(null, options);
+        JPAQuery<T> query = createQuery(em, predicate, options, fetchPlan);
+        Optional<T> result = finish(event, Optional.ofNullable(fetch(query, event, query::fetchOne)));
+        result.ifPresent(entity -> load(em, fetchPlan, Collections.singletonList(entity), options));
+        return result;
     }
 
     default Optional<T> findOne(QueryParameters params, Map<String, Object> hints) {
-        JPAQuery<T> query = createQuery(params, hints);
-        logQuery(query);
-        return Optional.ofNullable(query.fetchOne());
+        QueryOptions options = withHints(hints);
+        EntityManager em = entityManager(options);
+        QueryEvent event = startEvent();
+        ExpressionEntries entries = parse(params, event);
+        options.getCostPolicy().evaluate(getEntityClass(), entries, Pageable.unpaged(), options);
+        FetchPlan fetchPlan = fetchPlanOf(params, options);
+        QueryResultCache.Key key = resultKey(entries, options, Collections.emptyList(), "one");
+        QueryResultCache.Entry cached = cached(options, key);
+        if (cached != null)
+            return findAllByIds(em, cached.getRows(), options, fetchPlan).stream().findFirst();
+        JPAQuery<T> query = createQuery(em, entries, options, event, fetchPlan);
+        if (query == null)
+            return Optional.empty();
+        Optional<T> result = finish(event, Optional.ofNullable(fetch(query, event, query::fetchOne)));
+        List<T> rows = result.isPresent() ? Collections.singletonList(result.get()) : Collections.emptyList();
+        load(em, fetchPlan, rows, options);
+        cache(options, key, idsOf(rows), rows.size());
+        return result;
     }
 
     default List<T> findAll(QueryParameters params) {
@@ -52,15 +82,11 @@ public interface QuerydslPredicateExecutor<T> {
     }
 
     default List<T> findAll(Predicate predicate, Map<String, Object> hints) {
-        JPAQuery<T> query = createQuery(predicate, hints);
-        logQuery(query);
-        return query.fetch();
+        return findAll(predicate, Sort.unsorted(), hints);
     }
 
     default List<T> findAll(QueryParameters params, Map<String, Object> hints) {
-        JPAQuery<T> query = createQuery(params, hints);
-        logQuery(query);
-        return query.fetch();
+        return findAll(params, Sort.unsorted(), hints);
     }
 
     default List<T> findAll(QueryParameters params, Sort sort) {
@@ -72,82 +98,686 @@ public interface QuerydslPredicateExecutor<T> {
     }
 
     default List<T> findAll(QueryParameters params, Sort sort, Map<String, Object> hints) {
-        JPAQuery<T> query = QuerydslHelper.applySorting(createQuery(params, hints), sort, getEntityPath());
-        logQuery(query);
-        return query.fetch();
+        QueryOptions options = withHints(hints);
+        EntityManager em = entityManager(options);
+        QueryEvent event = startEvent();
+        ExpressionEntries entries = parse(params, event);
+        QueryCost cost = options.getCostPolicy().evaluate(getEntityClass(), entries, Pageable.unpaged(), options);
+        FetchPlan fetchPlan = fetchPlanOf(params, options);
+        QueryResultCache.Key key = resultKey(entries, options, Collections.emptyList(), "list", sortKey(sort));
+        QueryResultCache.Entry cached = cached(options, key);
+        if (cached != null)
+            return findAllByIds(em, cached.getRows(), options, fetchPlan);
+        JPAQuery<T> query = createQuery(em, entries, options, event, fetchPlan);
+        if (query == null)
+            return new ArrayList<>();
+        JPAQuery<T> sortedQuery = limitRows(QuerydslHelper.applySorting(query, sort, getEntityClass(),
+                options.getNullHandling()), cost);
+        List<T> result = finish(event, cost.checkRows(fetch(sortedQuery, event, sortedQuery::fetch)));
+        load(em, fetchPlan, result, options);
+        cache(options, key, idsOf(result), result.size());
+        return result;
     }
 
     default List<T> findAll(Predicate predicate, Sort sort, Map<String, Object> hints) {
-        JPAQuery<T> query = QuerydslHelper.applySorting(createQuery(predicate, hints), sort, getEntityPath());
-        logQuery(query);
-        return query.fetch();
+        QueryOptions options = withHints(hints);
+        EntityManager em = entityManager(options);
+        QueryCost cost = options.getCostPolicy().evaluate(getEntityClass(), null, Pageable.unpaged());
+        QueryEvent event = startEvent();
+        FetchPlan fetchPlan = fetchPlanOf(null, options);
+        JPAQuery<T> query = limitRows(QuerydslHelper.applySorting(createQuery(em, predicate, options, fetchPlan),
+                sort, getEntityClass(), options.getNullHandling()), cost);
+        List<T> result = finish(event, cost.checkRows(fetch(query, event, query::fetch)));
+        load(em, fetchPlan, result, options);
+        return result;
     }
 
     default Page<T> findAll(QueryParameters params, Pageable pageable) {
-        return findAll(params, pageable, Collections.emptyMap());
+        return findAll(params, pageable, getQueryOptions());
     }
 
     default Page<T> findAll(Predicate predicate, Pageable pageable) {
-        return findAll(predicate, pageable, Collections.emptyMap());
+        return findAll(predicate, pageable, getQueryOptions());
     }
 
     default Page<T> findAll(QueryParameters params, Pageable pageable, Map<String, Object> hints) {
-        JPAQuery<T> query = createQuery(params, hints);
-        JPAQuery<T> paginatedQuery = QuerydslHelper.applyPagination(createQuery(params, hints), pageable, getEntityPath());
-        logQuery(paginatedQuery);
-        return Page.of(paginatedQuery.fetch(), pageable, query.fetchCount());
+        return findAll(params, pageable, withHints(hints));
     }
 
     default Page<T> findAll(Predicate predicate, Pageable pageable, Map<String, Object> hints) {
-        JPAQuery<T> query = createQuery(predicate, hints);
-        JPAQuery<T> paginatedQuery = QuerydslHelper.applyPagination(createQuery(predicate, hints), pageable, getEntityPath());
-        logQuery(paginatedQuery);
-        return Page.of(paginatedQuery.fetch(), pageable, query.fetchCount());
-    }
-
-    private JPAQuery<T> createQuery(QueryParameters params, Map<String, Object> hints) {
-        JPAQuery<T> query = initJPAQuery(hints);
-        QuerydslPredicateBuilder<T> builder = new QuerydslPredicateBuilder<>(getEntityPath().getType(), params);
-        Predicate predicate = builder.toPredicate();
-        for (QuerydslPredicateBuilder.JoinsData joins : builder.getJoins()) {
-            if (joins.getRelationType() == PredicatePath.RelationType.Collection)
-                query = query.join((CollectionExpression) joins.getExpr(), joins.getAlias());
-            else if (joins.getRelationType() == PredicatePath.RelationType.Single)
-                query = query.join((EntityPath) joins.getExpr(), joins.getAlias());
-            // Implement Map relation join
+        return findAll(predicate, pageable, withHints(hints));
+    }
+
+    default Page<T> findAll(QueryParameters params, Pageable pageable, QueryOptions options) {
+        // the predicate and joins are built once. Both the page and the count query are derived from this query
+        EntityManager em = entityManager(options);
+        QueryEvent event = startEvent();
+        ExpressionEntries entries = parse(params, event);
+        QueryCost cost = options.getCostPolicy().evaluate(getEntityClass(), entries, pageable, options);
+        FetchPlan fetchPlan = fetchPlanOf(params, options);
+        QueryResultCache.Key key = resultKey(entries, options, Collections.emptyList(), "page",
+                pageKey(cost.getPageable()));
+        QueryResultCache.Entry cached = cached(options, key);
+        if (cached != null)
+            return page(findAllByIds(em, cached.getRows(), options, fetchPlan), cost.getPageable(),
+                    cached.getTotalSize(), options);
+        JPAQuery<T> countQuery = createQuery(em, entries, options, event, null);
+        if (countQuery == null)
+            return Page.of(new ArrayList<>(), cost.getPageable(), 0);
+        // fetch joins can't be in the count query
+        JPAQuery<T> query = fetchPlan != null && fetchPlan.hasJoins()
+                ? createQuery(em, entries, options, null, fetchPlan)
+                : countQuery;
+        Page<T> page = fetchPage(em, query, countQuery, entries, cost, options, event);
+        load(em, fetchPlan, page.getContent(), options);
+        cache(options, key, idsOf(page.getContent()), page.getTotalSize());
+        return page;
+    }
+
+    default Page<T> findAll(Predicate predicate, Pageable pageable, QueryOptions options) {
+        EntityManager em = entityManager(options);
+        QueryCost cost = options.getCostPolicy().evaluate(getEntityClass(), null, pageable);
+        FetchPlan fetchPlan = fetchPlanOf(null, options);
+        JPAQuery<T> countQuery = createQuery(em, predicate, options);
+        JPAQuery<T> query = fetchPlan != null && fetchPlan.hasJoins()
+                ? createQuery(em, predicate, options, fetchPlan)
+                : countQuery;
+        Page<T> page = fetchPage(em, query, countQuery, null, cost, options, startEvent());
+        load(em, fetchPlan, page.getContent(), options);
+        return page;
+    }
+
+    // Streams the result with a forward-only cursor, without loading it into a List. The stream must be closed
+    // (e.g. try-with-resources). It runs on an EntityManager of its own (of the same database), whose persistence
+    // context is cleared every QueryOptions.detachEvery rows, so the heap usage doesn't depend on the number of
+    // matching rows, and the entities of the caller are never detached. It doesn't see the uncommitted changes of
+    // the caller. Rows are read in chunks of QueryOptions.fetchSize.
+    // To-one relations of the fetch plan are fetch joined, but its collections are not loaded
+    default Stream<T> streamAll(QueryParameters params, Sort sort) {
+        return streamAll(params, sort, getQueryOptions());
+    }
+
+    default Stream<T> streamAll(Predicate predicate, Sort sort) {
+        return streamAll(predicate, sort, getQueryOptions());
+    }
+
+    default Stream<T> streamAll(QueryParameters params, Sort sort, QueryOptions options) {
+        if (AsyncQuery.current() == null)
+            return AsyncQuery.stream(entityManagerFactory(options), () -> streamAll(params, sort, options));
+        EntityManager em = entityManager(options);
+        QueryEvent event = startEvent();
+        ExpressionEntries entries = parse(params, event);
+        options.getCostPolicy().evaluate(getEntityClass(), entries, Pageable.unpaged(), options);
+        JPAQuery<T> query = createQuery(em, entries, options, event, fetchPlanOf(params, options));
+        if (query == null)
+            return Stream.empty();
+        return stream(em, QuerydslHelper.applySorting(query, sort, getEntityClass(), options.getNullHandling()),
+                options, event);
+    }
+
+    default Stream<T> streamAll(Predicate predicate, Sort sort, QueryOptions options) {
+        if (AsyncQuery.current() == null)
+            return AsyncQuery.stream(entityManagerFactory(options), () -> streamAll(predicate, sort, options));
+        EntityManager em = entityManager(options);
+        JPAQuery<T> query = createQuery(em, predicate, options, fetchPlanOf(null, options));
+        return stream(em, QuerydslHelper.applySorting(query, sort, getEntityClass(), options.getNullHandling()),
+                options, startEvent());
+    }
+
+    // Same as streamAll, as a cold Publisher. Rows are read from the database as they are requested by the subscriber
+    default Publisher<T> publishAll(QueryParameters params, Sort sort) {
+        return new StreamPublisher<>(() -> streamAll(params, sort));
+    }
+
+    default Publisher<T> publishAll(Predicate predicate, Sort sort) {
+        return new StreamPublisher<>(() -> streamAll(predicate, sort));
+    }
+
+    default long count(QueryParameters params) {
+        QueryOptions options = getQueryOptions();
+        EntityManager em = entityManager(options);
+        QueryEvent event = startEvent();
+        ExpressionEntries entries = parse(params, event);
+        options.getCostPolicy().evaluate(getEntityClass(), entries, Pageable.unpaged(), options);
+        JPAQuery<T> query = createQuery(em, entries, options, event);
+        if (query == null)
+            return 0;
+        return finish(event, count(event, () -> countRows(query, options.getCountStrategy())), 1);
+    }
+
+    default long count(Predicate predicate) {
+        QueryOptions options = getQueryOptions();
+        EntityManager em = entityManager(options);
+        QueryEvent event = startEvent();
+        JPAQuery<T> query = createQuery(em, predicate, options);
+        return finish(event, count(event, () -> countRows(query, options.getCountStrategy())), 1);
+    }
+
+    // Async variants, which don't block the caller (e.g. a Netty event loop thread). Queries run on
+    // QueryOptions.asyncExecutor with an EntityManager of their own, opened from getEntityManagerFactory().
+    // Cancelling the future, or QueryOptions.timeout, cancels the running statement
+    default CompletableFuture<Optional<T>> findOneAsync(QueryParameters params) {
+        return async(() -> findOne(params));
+    }
+
+    default CompletableFuture<Optional<T>> findOneAsync(Predicate predicate) {
+        return async(() -> findOne(predicate));
+    }
+
+    default CompletableFuture<List<T>> findAllAsync(QueryParameters params, Sort sort) {
+        return async(() -> findAll(params, sort));
+    }
+
+    default CompletableFuture<List<T>> findAllAsync(Predicate predicate, Sort sort) {
+        return async(() -> findAll(predicate, sort));
+    }
+
+    default CompletableFuture<Page<T>> findAllAsync(QueryParameters params, Pageable pageable) {
+        return async(() -> findAll(params, pageable));
+    }
+
+    default CompletableFuture<Page<T>> findAllAsync(Predicate predicate, Pageable pageable) {
+        return async(() -> findAll(predicate, pageable));
+    }
+
+    default CompletableFuture<Long> countAsync(QueryParameters params) {
+        return async(() -> count(params));
+    }
+
+    default CompletableFuture<Long> countAsync(Predicate predicate) {
+        return async(() -> count(predicate));
+    }
+
+    // Same as publishAll, but rows are read on QueryOptions.asyncExecutor, as they are requested by the subscriber
+    default Publisher<T> publishAllAsync(QueryParameters params, Sort sort) {
+        QueryOptions options = getQueryOptions();
+        EntityManagerFactory factory = entityManagerFactory(options);
+        return new StreamPublisher<>(() -> AsyncQuery.stream(factory, () -> streamAll(params, sort, options)),
+                options.getAsyncExecutor());
+    }
+
+    default Publisher<T> publishAllAsync(Predicate predicate, Sort sort) {
+        QueryOptions options = getQueryOptions();
+        EntityManagerFactory factory = entityManagerFactory(options);
+        return new StreamPublisher<>(() -> AsyncQuery.stream(factory, () -> streamAll(predicate, sort, options)),
+                options.getAsyncExecutor());
+    }
+
+    // the factory is resolved on the caller's thread, so the ReadRouting of the caller applies
+    private <R> CompletableFuture<R> async(Supplier<R> query) {
+        QueryOptions options = getQueryOptions();
+        return AsyncQuery.supply(entityManagerFactory(options), options, query);
+    }
+
+    // the fetch phase of a stream is the time to open the cursor, and its rows are not counted. The EntityManager
+    // is the one of the stream (see streamAll)
+    private Stream<T> stream(EntityManager em, JPAQuery<T> query, QueryOptions options, QueryEvent event) {
+        query.setHint(QuerydslHelper.HINT_FETCH_SIZE, options.getFetchSize());
+        CloseableIterator<T> rows = finish(event, fetch(query, event, query::iterate));
+        Iterator<T> iterator = new ClearingIterator<>(rows, em, options.getDetachEvery());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                .onClose(rows::close);
+    }
+
+    // Keyset (seek) pagination. The sort and size of the pageable are used (offset is ignored) and the page starts
+    // after the cursor, so the cost of a deep page is the same as the first page on indexed sort columns.
+    // Pass a null cursor to get the first page, and then the next/previous cursors of the returned CursorPage
+    default CursorPage<T> findAllByCursor(QueryParameters params, Pageable pageable, String cursor) {
+        if (pageable.isUnpaged())
+            throw new IllegalArgumentException("Keyset pagination requires a page size");
+        QueryOptions options = getQueryOptions();
+        EntityManager em = entityManager(options);
+        QueryEvent event = startEvent();
+        ExpressionEntries entries = parse(params, event);
+        // the offset of the pageable is not used
+        QueryCost cost = options.getCostPolicy().evaluate(getEntityClass(), entries,
+                Pageable.from(0, pageable.getSize(), pageable.getSort()), options);
+        FetchPlan fetchPlan = fetchPlanOf(params, options);
+        JPAQuery<T> query = createQuery(em, entries, options, event, fetchPlan);
+        if (query == null)
+            return new CursorPage<>(new ArrayList<>(), cost.getPageable().getSize(), null, null);
+        CursorPage<T> page = fetchByCursor(query, cost.getPageable(), cursor, options, event);
+        load(em, fetchPlan, page.getContent(), options);
+        return page;
+    }
+
+    default CursorPage<T> findAllByCursor(Predicate predicate, Pageable pageable, String cursor) {
+        if (pageable.isUnpaged())
+            throw new IllegalArgumentException("Keyset pagination requires a page size");
+        QueryOptions options = getQueryOptions();
+        EntityManager em = entityManager(options);
+        QueryCost cost = options.getCostPolicy().evaluate(getEntityClass(), null,
+                Pageable.from(0, pageable.getSize(), pageable.getSort()), options);
+        FetchPlan fetchPlan = fetchPlanOf(null, options);
+        CursorPage<T> page = fetchByCursor(createQuery(em, predicate, options, fetchPlan),
+                cost.getPageable(), cursor, options, startEvent());
+        load(em, fetchPlan, page.getContent(), options);
+        return page;
+    }
+
+    private CursorPage<T> fetchByCursor(JPAQuery<T> query, Pageable pageable, String cursor, QueryOptions options,
+                                        QueryEvent event) {
+        KeysetPagination<T> keyset = KeysetPagination.of(getEntityClass(), getEntityPath(), pageable.getSort(),
+                options.getNullHandling());
+        JPAQuery<T> seekQuery = keyset.seek(query, pageable.getSize(), cursor);
+        CursorPage<T> page = keyset.page(fetch(seekQuery, event, seekQuery::fetch), pageable.getSize(), cursor);
+        return finish(event, page, page.getContent().size());
+    }
+
+    // Projections: only the properties of the DTO are selected, instead of the whole (managed) entity.
+    // The DTO must be @Introspected. Its properties (or constructor arguments) are the property paths of the entity,
+    // or the value of their @ProjectedFrom annotation, e.g. @ProjectedFrom("location.city") String city
+    default <P> List<P> findAll(QueryParameters params, Class<P> dtoType) {
+        return findAll(params, Sort.unsorted(), dtoType);
+    }
+
+    default <P> List<P> findAll(QueryParameters params, Sort sort, Class<P> dtoType) {
+        return fetchProjection(params, sort, Projection.of(getEntityClass(), dtoType), getQueryOptions());
+    }
+
+    default <P> Page<P> findAll(QueryParameters params, Pageable pageable, Class<P> dtoType) {
+        return fetchProjection(params, pageable, Projection.of(getEntityClass(), dtoType), getQueryOptions());
+    }
+
+    // Projection of the property paths in the 'FIELDS' param, e.g. FIELDS=name,location.city
+    // Every row is a map of property path -> value
+    default List<Map<String, Object>> findAllFields(QueryParameters params, Sort sort) {
+        return fetchProjection(params, sort, fieldsOf(params), getQueryOptions());
+    }
+
+    default Page<Map<String, Object>> findAllFields(QueryParameters params, Pageable pageable) {
+        return fetchProjection(params, pageable, fieldsOf(params), getQueryOptions());
+    }
+
+    // Writes the property paths of the 'FIELDS' param of the matching rows to the stream (see ExportFormat), and
+    // returns the number of rows. The primary key range is split into ExportOptions.partitions ranges, which are
+    // scanned concurrently on QueryOptions.executor, each on its own EntityManager. The stream is not closed
+    default long export(QueryParameters params, ExportOptions export, OutputStream out) {
+        QueryOptions options = getQueryOptions();
+        EntityManager em = entityManager(options);
+        Projection<Map<String, Object>> projection = fieldsOf(params);
+        QueryEvent event = startEvent();
+        ExpressionEntries entries = parse(params, event);
+        options.getCostPolicy().evaluate(getEntityClass(), entries, Pageable.unpaged(), options);
+        JPAQuery<T> query = createQuery(em, entries, options, event);
+        BeanProperty<T, Object> idProperty = EntityIds.idProperty(getEntityClass());
+        long rows = new PartitionedExport(query != null ? createProjectionQuery(query, projection) : null,
+                Expressions.path(idProperty.getType(), getEntityPath(), idProperty.getName()),
+                projection.getFields(), export, options, entityManagerFactory(em)).writeTo(out);
+        return finish(event, rows, rows);
+    }
+
+    private Projection<Map<String, Object>> fieldsOf(QueryParameters params) {
+        String fields = params.getParameters().get(ExpressionFactory.FieldsKey);
+        if (fields == null || fields.isEmpty())
+            throw new IllegalArgumentException("The '" + ExpressionFactory.FieldsKey + "' param is required");
+        return Projection.of(getEntityClass(), fields);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <P> List<P> fetchProjection(QueryParameters params, Sort sort, Projection<P> projection, QueryOptions options) {
+        EntityManager em = entityManager(options);
+        QueryEvent event = startEvent();
+        ExpressionEntries entries = parse(params, event);
+        QueryCost cost = options.getCostPolicy().evaluate(getEntityClass(), entries, Pageable.unpaged(), options);
+        QueryResultCache.Key key = resultKey(entries, options, projection.getJoins(), "list", sortKey(sort),
+                projection.getRowType(), projection.getFields());
+        QueryResultCache.Entry cached = cached(options, key);
+        if (cached != null)
+            return new ArrayList<>((List<P>) cached.getRows());
+        JPAQuery<T> entityQuery = createQuery(em, entries, options, event);
+        if (entityQuery == null)
+            return new ArrayList<>();
+        JPAQuery<Tuple> query = limitRows(QuerydslHelper.applySorting(createProjectionQuery(entityQuery, projection),
+                sort, getEntityClass(), options.getNullHandling()), cost);
+        List<P> result = finish(event, cost.checkRows(fetch(query, event, query::fetch))).stream()
+                .map(tuple -> projection.map(tuple.toArray()))
+                .collect(Collectors.toList());
+        cache(options, key, result, result.size());
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <P> Page<P> fetchProjection(QueryParameters params, Pageable pageable, Projection<P> projection, QueryOptions options) {
+        // rows are counted with the entity query, without the joins of the projection. Paths through a collection
+        // would multiply the rows of the page but not the count, so they are only supported by lists and exports
+        if (projection.isCollection())
+            throw new IllegalArgumentException("Paged projections can't select paths through a collection: " +
+                    projection.getFields());
+        EntityManager em = entityManager(options);
+        QueryEvent event = startEvent();
+        ExpressionEntries entries = parse(params, event);
+        QueryCost cost = options.getCostPolicy().evaluate(getEntityClass(), entries, pageable, options);
+        QueryResultCache.Key key = resultKey(entries, options, projection.getJoins(), "page",
+                pageKey(cost.getPageable()), projection.getRowType(), projection.getFields());
+        QueryResultCache.Entry cached = cached(options, key);
+        if (cached != null)
+            return page(new ArrayList<>((List<P>) cached.getRows()), cost.getPageable(), cached.getTotalSize(), options);
+        JPAQuery<T> countQuery = createQuery(em, entries, options, event);
+        if (countQuery == null)
+            return Page.of(new ArrayList<>(), cost.getPageable(), 0);
+        Page<P> page = fetchPage(em, createProjectionQuery(countQuery, projection), countQuery, entries, cost,
+                options, event)
+                .map(tuple -> projection.map(tuple.toArray()));
+        cache(options, key, page.getContent(), page.getTotalSize());
+        return page;
+    }
+
+    // the same query, selecting the paths of the projection. Joins of the projection which are not already in the
+    // query (from filters) are added as left joins, so rows without the relation are not filtered
+    private JPAQuery<Tuple> createProjectionQuery(JPAQuery<T> entityQuery, Projection<?> projection) {
+        Set<String> aliases = QuerydslHelper.joinAliases(entityQuery);
+        JPAQuery<Tuple> query = entityQuery.clone().select(projection.getExpressions());
+        for (QuerydslPredicateBuilder.JoinsData join : projection.getJoins()) {
+            if (!aliases.contains(PathResolver.aliasOf(join)))
+                query = QuerydslHelper.join(query, join, true);
+        }
+        return query;
+    }
+
+    // the count query is the query without order by, offset and limit. Degraded queries (see QueryCostPolicy) are
+    // not counted: their total size is a lower bound. Otherwise, rows are counted with the CountStrategy of the
+    // options. Entries are null for queries of a Predicate, which can't be cached
+    private <R> Page<R> fetchPage(EntityManager em, JPAQuery<R> query, JPAQuery<?> countQuery,
+                                  ExpressionEntries entries, QueryCost cost, QueryOptions options, QueryEvent event) {
+        Pageable pageable = cost.getPageable();
+        if (pageable.isUnpaged()) {
+            JPAQuery<R> limitedQuery = limitRows(query, cost);
+            List<R> content = cost.checkRows(fetch(limitedQuery, event, limitedQuery::fetch));
+            return finish(event, Page.of(content, pageable, content.size()));
+        }
+        JPAQuery<R> paginatedQuery = QuerydslHelper.applyPagination(query.clone(), pageable, getEntityClass(),
+                options.getNullHandling());
+        if (cost.isDegraded()) {
+            List<R> content = fetch(paginatedQuery, event, paginatedQuery::fetch);
+            return finish(event, Page.of(content, pageable, QuerydslHelper.minTotalSize(content, pageable)));
+        }
+        CountStrategy strategy = options.getCountStrategy();
+        QueryResultCache.Key countKey = strategy.getCache() != null && entries != null
+                ? QueryResultCache.Key.of(getEntityClass(), entries, options, Collections.emptyList(),
+                Collections.singletonList("count"))
+                : null;
+        QueryResultCache.Entry cachedCount = countKey != null ? strategy.getCache().get(countKey) : null;
+        List<R> content;
+        long totalSize;
+        if (cachedCount != null) {
+            content = fetch(paginatedQuery, event, paginatedQuery::fetch);
+            totalSize = cachedCount.getTotalSize();
+        } else if (options.isParallelCount()) {
+            // the count runs on its own EntityManager, outside the transaction of the caller: under concurrent
+            // writes, the total size may not match the page. It is only awaited if the page can't tell the total
+            // size, otherwise it is cancelled (and doesn't run at all if the executor hasn't started it yet).
+            // Its time is recorded on this thread after the join, so a count which is not awaited (and may still
+            // be running) is never reported to the listeners
+            long[] countNanos = {-1};
+            CompletableFuture<Long> count = CompletableFuture.supplyAsync(() -> {
+                long start = System.nanoTime();
+                long rows = fetchCount(em, countQuery, strategy);
+                countNanos[0] = System.nanoTime() - start;
+                return rows;
+            }, options.getExecutor());
+            try {
+                content = fetch(paginatedQuery, event, paginatedQuery::fetch);
+                totalSize = QuerydslHelper.totalSize(content, pageable, () -> {
+                    long rows = QuerydslHelper.join(count);
+                    if (event != null)
+                        event.record(QueryPhase.COUNT, countNanos[0]);
+                    return rows;
+                });
+            } finally {
+                count.cancel(false);
+            }
+        } else {
+            content = fetch(paginatedQuery, event, paginatedQuery::fetch);
+            totalSize = QuerydslHelper.totalSize(content, pageable,
+                    () -> count(event, () -> countRows(countQuery, strategy)));
+        }
+        if (countKey != null && cachedCount == null)
+            strategy.getCache().put(countKey, Collections.emptyList(), totalSize);
+        return finish(event, page(content, pageable, totalSize, options));
+    }
+
+    // unpaged results are limited to the maxRows of the QueryCostPolicy, if it has one. One more row is fetched, so a
+    // larger result is rejected (see QueryCost.checkRows) instead of being truncated
+    private <R> JPAQuery<R> limitRows(JPAQuery<R> query, QueryCost cost) {
+        return cost.getMaxRows() < Integer.MAX_VALUE ? query.limit(cost.getMaxRows() + 1L) : query;
+    }
+
+    // a count above the cap is a lower bound of the total size, which is at least the rows up to this page.
+    // Counts up to the cap are exact
+    private <R> Page<R> page(List<R> content, Pageable pageable, long totalSize, QueryOptions options) {
+        CountStrategy strategy = options.getCountStrategy();
+        if (!strategy.isCapped() || pageable.isUnpaged())
+            return Page.of(content, pageable, totalSize);
+        return new CappedPage<>(content, pageable, totalSize > strategy.getCap()
+                ? Math.max(totalSize, QuerydslHelper.minTotalSize(content, pageable))
+                : totalSize, strategy.getCap());
+    }
+
+    // count on a separate EntityManager (of the same database as the call), so it runs on its own connection
+    private long fetchCount(EntityManager em, JPAQuery<?> query, CountStrategy strategy) {
+        EntityManager countEm = entityManagerFactory(em).createEntityManager();
+        try {
+            return countRows(query.clone(countEm), strategy);
+        } finally {
+            countEm.close();
+        }
+    }
+
+    // a capped count selects the ids of up to cap + 1 rows, instead of counting all of them
+    private long countRows(JPAQuery<?> query, CountStrategy strategy) {
+        if (!strategy.isCapped())
+            return query.fetchCount();
+        BeanProperty<T, Object> idProperty = EntityIds.idProperty(getEntityClass());
+        return query.clone()
+                .select(Expressions.path(idProperty.getType(), getEntityPath(), idProperty.getName()))
+                .offset(0)
+                .limit(strategy.getCap() + 1)
+                .fetch()
+                .size();
+    }
+
+    private ExpressionEntries parse(QueryParameters params, QueryEvent event) {
+        long start = System.nanoTime();
+        ExpressionEntries entries = ExpressionFactory.createFromParams(getEntityClass(), params.getParameters());
+        if (event != null)
+            event.record(QueryPhase.PARSE, System.nanoTime() - start);
+        return entries;
+    }
+
+    private JPAQuery<T> createQuery(EntityManager em, ExpressionEntries entries, QueryOptions options,
+                                    QueryEvent event) {
+        return createQuery(em, entries, options, event, null);
+    }
+
+    // null if the predicates contradict each other (see ExpressionNormalizer): the result is empty, without a query.
+    // To-one joins of the fetch plan (if not null) are fetch joined
+    private JPAQuery<T> createQuery(EntityManager em, ExpressionEntries entries, QueryOptions options,
+                                    QueryEvent event, FetchPlan fetchPlan) {
+        if (entries.isUnsatisfiable()) {
+            finish(event, null, 0);
+            return null;
+        }
+        long start = System.nanoTime();
+        // the predicate and joins are only built once per query shape. Values of this request are bound to the plan
+        QueryPlan plan = getQueryPlanCache().getPlan(getEntityClass(), entries, options);
+        customize(plan.getPredicate());
+        JPAQuery<T> query = fetchPlan == null
+                ? plan.applyTo(initJPAQuery(em, options), entries)
+                : fetchPlan.applyTo(plan.applyTo(initJPAQuery(em, options), entries, fetchPlan.getJoinAliases()));
+        if (event != null) {
+            event.record(QueryPhase.BUILD, System.nanoTime() - start);
+            event.setPlan(plan);
         }
-        customize(predicate);
-        query = query.where(predicate);
         return query;
     }
 
-    private JPAQuery<T> createQuery(Predicate predicate, Map<String, Object> hints) {
-        JPAQuery<T> query = initJPAQuery(hints);
+    // key of the query in the result cache of the options. null if there is no cache or nothing to query
+    private QueryResultCache.Key resultKey(ExpressionEntries entries, QueryOptions options,
+                                           Collection<QuerydslPredicateBuilder.JoinsData> joins, Object... variant) {
+        if (options.getResultCache() == null || entries.isUnsatisfiable())
+            return null;
+        return QueryResultCache.Key.of(getEntityClass(), entries, options, joins, Arrays.asList(variant));
+    }
+
+    // cache hits don't run any query, so they are not reported to the QueryListeners
+    private QueryResultCache.Entry cached(QueryOptions options, QueryResultCache.Key key) {
+        return key != null ? options.getResultCache().get(key) : null;
+    }
+
+    private void cache(QueryOptions options, QueryResultCache.Key key, List<?> rows, long totalSize) {
+        if (key != null)
+            options.getResultCache().put(key, rows, totalSize);
+    }
+
+    private List<Object> sortKey(Sort sort) {
+        List<Object> key = new ArrayList<>();
+        for (Sort.Order order : sort.getOrderBy())
+            key.add(order.getProperty() + ':' + order.getDirection() + (order.isIgnoreCase() ? ":ic" : ""));
+        return key;
+    }
+
+    private List<Object> pageKey(Pageable pageable) {
+        if (pageable.isUnpaged())
+            return Collections.singletonList(sortKey(pageable.getSort()));
+        return Arrays.asList(pageable.getOffset(), pageable.getSize(), sortKey(pageable.getSort()));
+    }
+
+    private List<Object> idsOf(List<T> entities) {
+        List<Object> ids = new ArrayList<>(entities.size());
+        for (T entity : entities)
+            ids.add(EntityIds.getId(getEntityClass(), entity));
+        return ids;
+    }
+
+    // entities of a cached result, with queries by primary key of QueryOptions.inListChunkSize ids, in the order of
+    // the ids. Entities deleted in the meantime are skipped
+    private List<T> findAllByIds(EntityManager em, List<?> ids, QueryOptions options, FetchPlan fetchPlan) {
+        if (ids.isEmpty())
+            return new ArrayList<>();
+        BeanProperty<T, Object> idProperty = EntityIds.idProperty(getEntityClass());
+        List<T> entities = new ArrayList<>(ids.size());
+        for (List<?> chunk : FetchPlan.chunks(ids, options.getInListChunkSize())) {
+            JPAQuery<T> query = initJPAQuery(em, options)
+                    .where(Expressions.path(idProperty.getType(), getEntityPath(), idProperty.getName()).in(chunk));
+            entities.addAll((fetchPlan != null ? fetchPlan.applyTo(query) : query).fetch());
+        }
+        load(em, fetchPlan, entities, options);
+        Map<Object, T> byId = new HashMap<>();
+        for (T entity : entities)
+            byId.put(EntityIds.getId(getEntityClass(), entity), entity);
+        List<T> result = new ArrayList<>(ids.size());
+        for (Object id : ids) {
+            T entity = byId.get(id);
+            if (entity != null)
+                result.add(entity);
+        }
+        return result;
+    }
+
+    private JPAQuery<T> createQuery(EntityManager em, Predicate predicate, QueryOptions options, FetchPlan fetchPlan) {
+        JPAQuery<T> query = createQuery(em, predicate, options);
+        return fetchPlan != null ? fetchPlan.applyTo(query) : query;
+    }
+
+    // relations of the 'FETCH' param (params may be null) and QueryOptions.fetch. null if there is none
+    private FetchPlan fetchPlanOf(QueryParameters params, QueryOptions options) {
+        String fetch = params != null ? params.getParameters().get(ExpressionFactory.FetchKey) : null;
+        if ((fetch == null || fetch.isEmpty()) && options.getFetch().isEmpty())
+            return null;
+        List<String> paths = new ArrayList<>(options.getFetch());
+        if (fetch != null) {
+            for (String path : fetch.split(","))
+                paths.add(path.trim());
+        }
+        paths.removeIf(String::isEmpty);
+        return paths.isEmpty() ? null : FetchPlan.of(getEntityClass(), paths);
+    }
+
+    // load the collections of the fetch plan for the entities of the result
+    private void load(EntityManager em, FetchPlan fetchPlan, List<T> entities, QueryOptions options) {
+        if (fetchPlan != null)
+            fetchPlan.load(entities, em, options);
+    }
+
+    private JPAQuery<T> createQuery(EntityManager em, Predicate predicate, QueryOptions options) {
+        JPAQuery<T> query = initJPAQuery(em, options);
         customize(predicate);
         if (predicate != null)
             query = query.where(predicate);
-        for (Map.Entry<String, Object> hint : hints.entrySet()) {
-            query.setHint(hint.getKey(), hint.getValue());
-        }
         return query;
     }
 
-    private JPAQuery<T> initJPAQuery(Map<String, Object> hints) {
-        JPAQuery<T> query = new JPAQuery<>(getEntityManager());
+    private JPAQuery<T> initJPAQuery(EntityManager em, QueryOptions options) {
+        JPAQuery<T> query = new JPAQuery<>(em);
         EntityPath<T> entityPath = getEntityPath();
         query.select(entityPath).from(entityPath);
-        for (Map.Entry<String, Object> hint : hints.entrySet()) {
+        if (options.getTimeout() != null)
+            query.setHint(QuerydslHelper.HINT_QUERY_TIMEOUT, options.getTimeout().toMillis());
+        for (Map.Entry<String, Object> hint : options.getHints().entrySet()) {
             query.setHint(hint.getKey(), hint.getValue());
         }
         return query;
     }
 
+    // the EntityManager of the running async query, or the read EntityManager if the ReadRouting of the options
+    // allows it, otherwise the primary one. It is resolved once per call, on the caller's thread, and passed down
+    // to every query of the call, so a call never reads from both databases
+    private EntityManager entityManager(QueryOptions options) {
+        EntityManager async = AsyncQuery.current();
+        if (async != null)
+            return async;
+        if (!options.getReadRouting().useReplica())
+            return getEntityManager();
+        EntityManager replica = getReadEntityManager();
+        return replica != null ? replica : getEntityManager();
+    }
+
+    private EntityManagerFactory entityManagerFactory(QueryOptions options) {
+        if (getReadEntityManager() != null && options.getReadRouting().useReplica())
+            return getReadEntityManager().getEntityManagerFactory();
+        return getEntityManagerFactory();
+    }
+
+    // the factory of the database of an EntityManager resolved by entityManager(options)
+    private EntityManagerFactory entityManagerFactory(EntityManager em) {
+        return em == getEntityManager() ? getEntityManagerFactory() : em.getEntityManagerFactory();
+    }
+
     default Predicate customize(Predicate predicate) {
         return predicate;
     }
 
+    // Override to change the default QueryOptions of this repository, e.g. to run count queries in parallel
+    // or to use 'exists' subqueries for collection relations
+    default QueryOptions getQueryOptions() {
+        return QueryOptions.DEFAULT;
+    }
+
+    // Override to use a dedicated (or differently sized) plan cache for this repository
+    default QueryPlanCache getQueryPlanCache() {
+        return QueryPlanCache.getInstance();
+    }
+
+    // Override to use dedicated listeners for this repository
+    default QueryListeners getQueryListeners() {
+        return QueryListeners.getInstance();
+    }
+
     EntityManager getEntityManager();
 
+    // the factory of the EntityManagers of async queries. Override it (e.g. with an injected EntityManagerFactory)
+    // if the EntityManager of the repository can't be used outside of a session
+    default EntityManagerFactory getEntityManagerFactory() {
+        return getEntityManager().getEntityManagerFactory();
+    }
+
+    // Override to run the read-only queries of this executor on another EntityManager, e.g. of a read replica
+    // datasource. It is used if the ReadRouting of QueryOptions allows it. null = the primary EntityManager
+    default EntityManager getReadEntityManager() {
+        return null;
+    }
+
     Class<T> getEntityClass();
 
     private EntityPath<T> getEntityPath() {
@@ -155,8 +785,69 @@ public interface QuerydslPredicateExecutor<T> {
         return new PathBuilder<>(clazz, StringUtils.uncapitalize(clazz.getSimpleName()));
     }
 
-    private void logQuery(JPAQuery<T> query) {
+    private QueryOptions withHints(Map<String, Object> hints) {
+        if (hints.isEmpty())
+            return getQueryOptions();
+        return getQueryOptions().toBuilder().hints(hints).build();
+    }
+
+    private void logQuery(JPAQuery<?> query) {
         if (logger.isDebugEnabled())
             logger.debug(query.toString());
     }
+
+    // null if there is no listener, so queries are not timed at all
+    private QueryEvent startEvent() {
+        return getQueryListeners().isEmpty() ? null : new QueryEvent(getEntityClass());
+    }
+
+    // serializes (and logs) the query, then runs the fetch function
+    private <R> R fetch(JPAQuery<?> query, QueryEvent event, Supplier<R> fetcher) {
+        if (event == null) {
+            logQuery(query);
+            return fetcher.get();
+        }
+        long start = System.nanoTime();
+        String jpql = query.toString();
+        event.record(QueryPhase.SERIALIZE, System.nanoTime() - start);
+        if (logger.isDebugEnabled())
+            logger.debug(jpql);
+        // the first join is the 'from' of the query
+        event.setJoinCount(query.getMetadata().getJoins().size() - 1);
+        start = System.nanoTime();
+        R result = fetcher.get();
+        event.record(QueryPhase.FETCH, System.nanoTime() - start);
+        return result;
+    }
+
+    private long count(QueryEvent event, LongSupplier counter) {
+        if (event == null)
+            return counter.getAsLong();
+        long start = System.nanoTime();
+        long count = counter.getAsLong();
+        event.record(QueryPhase.COUNT, System.nanoTime() - start);
+        return count;
+    }
+
+    private <R> R finish(QueryEvent event, R result, long rowCount) {
+        if (event != null) {
+            event.setRowCount(rowCount);
+            event.stop();
+            getQueryListeners().fire(event);
+        }
+        return result;
+    }
+
+    private <R> R finish(QueryEvent event, R result) {
+        if (event == null)
+            return result;
+        long rowCount = -1;
+        if (result instanceof Collection)
+            rowCount = ((Collection<?>) result).size();
+        else if (result instanceof Page)
+            rowCount = ((Page<?>) result).getContent().size();
+        else if (result instanceof Optional)
+            rowCount = ((Optional<?>) result).isPresent() ? 1 : 0;
+        return finish(event, result, rowCount);
+    }
 }
@@ -0,0 +1,65 @@
+package com.snourian.micronaut.querydsl;
+
+import java.time.Duration;
+import java.util.Objects;
+
+// Decides if the read-only queries of an executor may run on its read EntityManager (see
+// QuerydslPredicateExecutor.getReadEntityManager()). After a write on the current thread, queries stick to the primary
+// EntityManager for the sticky window, so a request reads its own writes even if the replica lags behind
+public final class ReadRouting {
+
+    public static final ReadRouting PRIMARY = new ReadRouting(false, Duration.ZERO);
+
+    // time of the last write on the current thread, see markWrite()
+    private static final ThreadLocal<Long> lastWrite = new ThreadLocal<>();
+
+    private final boolean replica;
+    private final long stickyNanos;
+
+    private ReadRouting(boolean replica, Duration stickyWindow) {
+        this.replica = replica;
+        this.stickyNanos = stickyWindow.toNanos();
+    }
+
+    public static ReadRouting replica() {
+        return replica(Duration.ZERO);
+    }
+
+    public static ReadRouting replica(Duration stickyWindow) {
+        Objects.requireNonNull(stickyWindow, "stickyWindow");
+        if (stickyWindow.isNegative())
+            throw new IllegalArgumentException("stickyWindow must not be negative");
+        return new ReadRouting(true, stickyWindow);
+    }
+
+    // EntityChangeTracker calls it for every flushed entity change. Call it after bulk updates/deletes and
+    // native queries too
+    public static void markWrite() {
+        lastWrite.set(System.nanoTime());
+    }
+
+    // forget the last write of the current thread, e.g. at the end of a request on a pooled thread
+    public static void clearWrite() {
+        lastWrite.remove();
+    }
+
+    public boolean isReplica() {
+        return replica;
+    }
+
+    public Duration getStickyWindow() {
+        return Duration.ofNanos(stickyNanos);
+    }
+
+    boolean useReplica() {
+        if (!replica)
+            return false;
+        Long written = lastWrite.get();
+        if (written == null)
+            return true;
+        if (System.nanoTime() - written < stickyNanos)
+            return false;
+        lastWrite.remove();
+        return true;
+    }
+}
@@ -0,0 +1,107 @@
+package com.snourian.micronaut.querydsl;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// Writes the rows of an export to an OutputStream through a fixed size buffer. The stream is flushed, not closed
+abstract class RowWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    static RowWriter of(ExportOptions options, List<String> fields, OutputStream out) throws IOException {
+        switch (options.getFormat()) {
+            case CSV:
+                return new CsvWriter(fields, out);
+            case NDJSON:
+            default:
+                return new NdjsonWriter(fields, out, options);
+        }
+    }
+
+    abstract void write(Object[] row) throws IOException;
+
+    abstract void finish() throws IOException;
+
+    private static final class NdjsonWriter extends RowWriter {
+        private final String[] fields;
+        private final JsonGenerator generator;
+        private boolean empty = true;
+
+        private NdjsonWriter(List<String> fields, OutputStream out, ExportOptions options) throws IOException {
+            this.fields = fields.toArray(new String[0]);
+            this.generator = options.getObjectMapper().getFactory().createGenerator(out, JsonEncoding.UTF8);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(new SerializedString("\n"));
+        }
+
+        @Override
+        void write(Object[] row) throws IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < fields.length; i++) {
+                generator.writeFieldName(fields[i]);
+                generator.writeObject(row[i]);
+            }
+            generator.writeEndObject();
+            empty = false;
+        }
+
+        @Override
+        void finish() throws IOException {
+            // the separator is only written between rows
+            if (!empty)
+                generator.writeRaw('\n');
+            generator.close();
+        }
+    }
+
+    private static final class CsvWriter extends RowWriter {
+        private final Writer writer;
+
+        private CsvWriter(List<String> fields, OutputStream out) throws IOException {
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+            write(fields.toArray());
+        }
+
+        @Override
+        void write(Object[] row) throws IOException {
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0)
+                    writer.write(',');
+                if (row[i] != null)
+                    writeValue(row[i].toString());
+            }
+            writer.write("\r\n");
+        }
+
+        // values with a separator, quote or line break are quoted, and their quotes doubled
+        private void writeValue(String value) throws IOException {
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                final char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                if (c == '"')
+                    writer.write('"');
+                writer.write(c);
+            }
+            writer.write('"');
+        }
+
+        @Override
+        void finish() throws IOException {
+            writer.flush();
+        }
+    }
+}
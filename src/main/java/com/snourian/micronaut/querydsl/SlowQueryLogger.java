@@ -0,0 +1,55 @@
+package com.snourian.micronaut.querydsl;
+
+import io.micronaut.context.annotation.Context;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Locale;
+
+// Logs the queries which take longer than 'querydsl.slow-query-threshold' (e.g. 500ms) with their shape, number of
+// joins and bound parameters, and the time of each phase. Values of the query are never logged.
+@Context
+@Requires(property = SlowQueryLogger.THRESHOLD_PROPERTY)
+public class SlowQueryLogger implements QueryListener {
+
+    public static final String THRESHOLD_PROPERTY = "querydsl.slow-query-threshold";
+
+    private static final Logger logger = LoggerFactory.getLogger(SlowQueryLogger.class);
+
+    private final long thresholdNanos;
+
+    public SlowQueryLogger(@Value("${" + THRESHOLD_PROPERTY + "}") Duration threshold) {
+        this.thresholdNanos = threshold.toNanos();
+        QueryListeners.getInstance().add(this);
+    }
+
+    @PreDestroy
+    public void close() {
+        QueryListeners.getInstance().remove(this);
+    }
+
+    @Override
+    public void onQuery(QueryEvent event) {
+        final long total = event.getTotalNanos();
+        if (total < thresholdNanos || !logger.isWarnEnabled())
+            return;
+        final StringBuilder phases = new StringBuilder();
+        for (QueryPhase phase : QueryPhase.values()) {
+            final long nanos = event.getNanos(phase);
+            if (nanos >= 0)
+                phases.append(' ').append(phase.name().toLowerCase(Locale.ROOT)).append('=').append(millis(nanos));
+        }
+        logger.warn("Slow query on {} took {} [shape {}: {}] joins={} params={} rows={} |{}",
+                event.getEntity().getSimpleName(), millis(total), event.getFingerprint(),
+                event.getShape() == null ? "predicate" : event.getShape().getDescription(),
+                event.getJoinCount(), event.getParamCount(), event.getRowCount(), phases);
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.2fms", nanos / 1_000_000.0);
+    }
+}
@@ -0,0 +1,72 @@
+package com.snourian.micronaut.querydsl;
+
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.Order;
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.util.StringUtils;
+import com.snourian.micronaut.querydsl.expression.ExpressionFactory;
+import com.snourian.micronaut.querydsl.expression.PredicatePath;
+import com.snourian.micronaut.querydsl.expression.PropertyPathCache;
+import com.snourian.micronaut.querydsl.expression.PropertyPathMetadata;
+import io.micronaut.core.util.clhm.ConcurrentLinkedHashMap;
+import io.micronaut.data.model.Sort;
+
+import java.util.*;
+
+// A sort property resolved like the filters (see ExpressionFactory.resolvePath), e.g. 'location.city' or
+// 'department.name': its OrderSpecifier and the joins of its path. The joins get the same aliases as the joins of
+// the filters, so a query only needs the joins it doesn't already have.
+// Paths through a collection (e.g. 'employees.score') are rejected: their join would repeat the root entity once per
+// element in the page, but not in the count query.
+// Sort paths are immutable and cached per (entity, property, direction, ignore case, null handling).
+class SortPath {
+
+    private static final Map<List<Object>, SortPath> cache =
+            new ConcurrentLinkedHashMap.Builder<List<Object>, SortPath>()
+                    .maximumWeightedCapacity(PropertyPathCache.DEFAULT_MAX_SIZE)
+                    .build();
+
+    private final OrderSpecifier<?> orderSpecifier;
+    private final Collection<QuerydslPredicateBuilder.JoinsData> joins;
+
+    private SortPath(OrderSpecifier<?> orderSpecifier, Collection<QuerydslPredicateBuilder.JoinsData> joins) {
+        this.orderSpecifier = orderSpecifier;
+        this.joins = Collections.unmodifiableList(new ArrayList<>(joins));
+    }
+
+    static SortPath of(Class<?> entity, Sort.Order order, OrderSpecifier.NullHandling nullHandling) {
+        return cache.computeIfAbsent(
+                Arrays.asList(entity, order.getProperty(), order.isAscending(), order.isIgnoreCase(), nullHandling),
+                key -> create(entity, order, nullHandling));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static SortPath create(Class<?> entity, Sort.Order order, OrderSpecifier.NullHandling nullHandling) {
+        final String parentName = StringUtils.uncapitalize(entity.getSimpleName());
+        final PathResolver resolver = new PathResolver(parentName, Expressions.path(entity, parentName));
+        final PropertyPathMetadata metadata = ExpressionFactory.resolvePath(entity, order.getProperty())
+                .orElseThrow(() -> new IllegalArgumentException("Unknown sort property '" + order.getProperty() +
+                        "' for entity " + entity.getSimpleName()));
+        for (PredicatePath predicatePath : metadata.getPaths()) {
+            if (predicatePath.getRelationType() == PredicatePath.RelationType.Collection)
+                throw new IllegalArgumentException("Sorting on a collection is not supported: " + order.getProperty());
+        }
+        Expression<?> path = resolver.toPath(metadata);
+        if (order.isIgnoreCase() && metadata.getPropertyType() == String.class)
+            path = Expressions.stringOperation(Ops.LOWER, path);
+        final OrderSpecifier<?> orderSpecifier = new OrderSpecifier(order.isAscending() ? Order.ASC : Order.DESC,
+                path, nullHandling);
+        return new SortPath(orderSpecifier, resolver.getJoins());
+    }
+
+    OrderSpecifier<?> getOrderSpecifier() {
+        return orderSpecifier;
+    }
+
+    // joins needed by the sort path, e.g. 'department.location as department_location'
+    Collection<QuerydslPredicateBuilder.JoinsData> getJoins() {
+        return joins;
+    }
+}
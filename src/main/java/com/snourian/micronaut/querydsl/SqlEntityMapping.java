@@ -0,0 +1,127 @@
+package com.snourian.micronaut.querydsl;
+
+import io.micronaut.core.util.clhm.ConcurrentLinkedHashMap;
+import io.micronaut.data.model.naming.NamingStrategy;
+
+import javax.persistence.*;
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.function.Function;
+
+// Table and column names of an entity (and of its embeddables), derived from its JPA mappings: @Table, @Column,
+// @JoinColumn, @Id and @Enumerated. Names which are not mapped explicitly are derived with the NamingStrategy,
+// which must match the physical naming strategy of the JPA provider.
+// The annotations are read (by reflection, from the fields) once per (entity, naming strategy).
+final class SqlEntityMapping {
+
+    private static final Map<List<Object>, SqlEntityMapping> cache =
+            new ConcurrentLinkedHashMap.Builder<List<Object>, SqlEntityMapping>()
+                    .maximumWeightedCapacity(256)
+                    .build();
+
+    private final NamingStrategy naming;
+    private final String schema;
+    private final String table;
+    private final String idColumn;
+
+    private SqlEntityMapping(Class<?> entity, NamingStrategy naming) {
+        if (!entity.isAnnotationPresent(Entity.class))
+            throw new IllegalArgumentException(entity.getName() + " is not an @Entity");
+        this.naming = naming;
+        final Table tableAnn = entity.getAnnotation(Table.class);
+        final String entityName = entity.getAnnotation(Entity.class).name();
+        this.schema = tableAnn != null && !tableAnn.schema().isEmpty() ? tableAnn.schema() : null;
+        this.table = tableAnn != null && !tableAnn.name().isEmpty()
+                ? tableAnn.name()
+                : naming.mappedName(entityName.isEmpty() ? entity.getSimpleName() : entityName);
+        this.idColumn = columnOf(idField(entity));
+    }
+
+    static SqlEntityMapping of(Class<?> entity, NamingStrategy naming) {
+        return cache.computeIfAbsent(Arrays.asList(entity, naming), key -> new SqlEntityMapping(entity, naming));
+    }
+
+    String getSchema() {
+        return schema;
+    }
+
+    String getTable() {
+        return table;
+    }
+
+    String getIdColumn() {
+        return idColumn;
+    }
+
+    // the column of a basic property of this entity, or of an embeddable (owner) of it
+    String column(Class<?> owner, String property) {
+        return columnOf(field(owner, property));
+    }
+
+    // the foreign key column of a to-one relation of the owner (this entity or one of its embeddables).
+    // Relations mapped by the other side or by a join table have no column in the table of the owner
+    String joinColumn(Class<?> owner, String property, SqlEntityMapping target) {
+        final Field field = field(owner, property);
+        final OneToOne oneToOne = field.getAnnotation(OneToOne.class);
+        if ((oneToOne != null && !oneToOne.mappedBy().isEmpty()) || field.isAnnotationPresent(JoinTable.class))
+            throw new IllegalArgumentException("Relation '" + property + "' of " + owner.getSimpleName() +
+                    " has no foreign key column in table " + table);
+        final JoinColumn joinColumn = field.getAnnotation(JoinColumn.class);
+        if (joinColumn != null && !joinColumn.name().isEmpty())
+            return joinColumn.name();
+        return naming.mappedName(property) + "_" + target.getIdColumn();
+    }
+
+    // converts a value of the property to its column value (and back): enums are stored by ordinal, unless they
+    // are @Enumerated(STRING). Other values are passed as is
+    Function<Object, Object> toColumn(Class<?> owner, String property, Class<?> type) {
+        if (!type.isEnum())
+            return Function.identity();
+        final Enumerated enumerated = field(owner, property).getAnnotation(Enumerated.class);
+        if (enumerated != null && enumerated.value() == EnumType.STRING)
+            return value -> value == null ? null : ((Enum<?>) value).name();
+        return value -> value == null ? null : ((Enum<?>) value).ordinal();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Function<Object, Object> fromColumn(Class<?> owner, String property, Class<?> type) {
+        if (!type.isEnum())
+            return Function.identity();
+        final Enumerated enumerated = field(owner, property).getAnnotation(Enumerated.class);
+        final Object[] constants = type.getEnumConstants();
+        if (enumerated != null && enumerated.value() == EnumType.STRING)
+            return value -> value == null ? null : Enum.valueOf((Class) type, value.toString());
+        return value -> value == null ? null : constants[((Number) value).intValue()];
+    }
+
+    private String columnOf(Field field) {
+        final Column column = field.getAnnotation(Column.class);
+        if (column != null && !column.name().isEmpty())
+            return column.name();
+        return naming.mappedName(field.getName());
+    }
+
+    private static Field idField(Class<?> entity) {
+        for (Class<?> clazz = entity; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (field.isAnnotationPresent(Id.class))
+                    return field;
+            }
+        }
+        throw new IllegalArgumentException("No @Id field in " + entity.getName() +
+                " (composite and property-access ids are not supported by NativeQueryEngine)");
+    }
+
+    // the field of a property, declared in the owner or in one of its super classes
+    private static Field field(Class<?> owner, String property) {
+        for (Class<?> clazz = owner; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            try {
+                return clazz.getDeclaredField(property);
+            } catch (NoSuchFieldException e) {
+                // look up in the super class
+            }
+        }
+        throw new IllegalArgumentException("No field '" + property + "' in " + owner.getSimpleName() +
+                " (property access is not supported by NativeQueryEngine)");
+    }
+}
@@ -0,0 +1,143 @@
+package com.snourian.micronaut.querydsl;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// A cold Publisher over a (scrolled) query Stream. The stream is opened on the first request of each subscriber,
+// rows are only read from the database as they are requested, and the stream is closed on completion,
+// error or cancellation. With an executor, rows are read and emitted on it instead of the thread calling request()
+class StreamPublisher<T> implements Publisher<T> {
+
+    private final Supplier<Stream<T>> source;
+    private final Executor executor;
+
+    StreamPublisher(Supplier<Stream<T>> source) {
+        this(source, null);
+    }
+
+    StreamPublisher(Supplier<Stream<T>> source, Executor executor) {
+        this.source = source;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        subscriber.onSubscribe(new StreamSubscription<>(subscriber, source, executor));
+    }
+
+    private static final class StreamSubscription<T> implements Subscription {
+        private final Subscriber<? super T> subscriber;
+        private final Supplier<Stream<T>> source;
+        private final Executor executor;
+        private final AtomicLong requested = new AtomicLong();
+        // serializes the emission, so request() can be called from onNext() (rule 3.3)
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+        private boolean done;
+        private Stream<T> stream;
+        private Iterator<T> iterator;
+
+        private StreamSubscription(Subscriber<? super T> subscriber, Supplier<Stream<T>> source, Executor executor) {
+            this.subscriber = subscriber;
+            this.source = source;
+            this.executor = executor;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Rule 3.9: the number of requested elements must be positive: " + n);
+                cancelled = true;
+            } else {
+                requested.getAndUpdate(r -> r == Long.MAX_VALUE || r + n < 0 ? Long.MAX_VALUE : r + n);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0)
+                return;
+            if (executor == null) {
+                drainLoop();
+                return;
+            }
+            try {
+                executor.execute(this::drainLoop);
+            } catch (RejectedExecutionException e) {
+                // no drain loop is running (wip was zero), so the stream (and its EntityManager) is closed here.
+                // wip stays non-zero, so nothing is emitted after onError
+                terminate();
+                if (!cancelled || error != null)
+                    subscriber.onError(error != null ? error : e);
+            }
+        }
+
+        private void drainLoop() {
+            int missed = 1;
+            do {
+                if (!done)
+                    emit();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            try {
+                if (cancelled) {
+                    terminate();
+                    if (error != null)
+                        subscriber.onError(error);
+                    return;
+                }
+                if (iterator == null) {
+                    stream = source.get();
+                    iterator = stream.iterator();
+                }
+                final long r = requested.get();
+                long emitted = 0;
+                while (emitted != r) {
+                    if (cancelled) {
+                        terminate();
+                        return;
+                    }
+                    if (!iterator.hasNext()) {
+                        terminate();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    subscriber.onNext(iterator.next());
+                    emitted++;
+                }
+                if (r != Long.MAX_VALUE)
+                    requested.addAndGet(-emitted);
+            } catch (Throwable t) {
+                terminate();
+                subscriber.onError(t);
+            }
+        }
+
+        private void terminate() {
+            done = true;
+            if (stream != null)
+                stream.close();
+        }
+    }
+}
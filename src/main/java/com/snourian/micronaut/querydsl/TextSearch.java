@@ -0,0 +1,62 @@
+package com.snourian.micronaut.querydsl;
+
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.Expressions;
+import com.snourian.micronaut.querydsl.expression.operator.PredicateOperator;
+
+import java.util.*;
+
+// The configuration of the text search operators (FTS, PREFIX_IC) of a QueryOptions: the TextSearchDialect and the
+// normalized properties (see QueryOptions.Builder.textSearchDialect and normalize).
+// A normalized property holds the lower case value of another property (e.g. set in a @PrePersist/@PreUpdate
+// method), so a case-insensitive prefix becomes a 'like' on it, without lower(): 'Gotham' -> n like 'gotham%'.
+// Text search predicates are not cached in query plans (see QueryShape), so every query uses the one of its options
+final class TextSearch {
+
+    static final TextSearch DEFAULT = new TextSearch(TextSearchDialect.DEFAULT, Collections.emptyMap());
+
+    private final TextSearchDialect dialect;
+    private final Map<List<Object>, String> normalized;
+
+    TextSearch(TextSearchDialect dialect, Map<List<Object>, String> normalized) {
+        this.dialect = dialect;
+        this.normalized = Collections.unmodifiableMap(new HashMap<>(normalized));
+    }
+
+    TextSearchDialect getDialect() {
+        return dialect;
+    }
+
+    // (owner, property) -> normalized property
+    Map<List<Object>, String> getNormalized() {
+        return normalized;
+    }
+
+    // the normalized property of a property, or null. The owner is the entity or embeddable of the property
+    String normalizedOf(Class<?> owner, String property) {
+        return normalized.get(Arrays.asList(owner, property));
+    }
+
+    static boolean isTextSearch(PredicateOperator op) {
+        return op == PredicateOperator.FTS || op == PredicateOperator.PREFIX_IC;
+    }
+
+    // normalizedPath is the path of the normalized property, or null
+    Predicate predicate(PredicateOperator op, Object[] values, Expression<?> path, Expression<String> normalizedPath,
+                        boolean sql) {
+        if (op == PredicateOperator.FTS) {
+            final StringJoiner query = new StringJoiner(" ");
+            for (Object value : values)
+                query.add(String.valueOf(value));
+            return dialect.fullText(path, query.toString(), sql);
+        }
+        final String prefix = String.valueOf(values[0]);
+        if (normalizedPath == null)
+            return Expressions.predicate(Ops.STARTS_WITH_IC, path, Expressions.constant(prefix));
+        // 'like' with the wildcards of the prefix escaped, so the result doesn't depend on the collation
+        return Expressions.predicate(Ops.STARTS_WITH, normalizedPath,
+                Expressions.constant(prefix.toLowerCase(Locale.ROOT)));
+    }
+}
@@ -0,0 +1,43 @@
+package com.snourian.micronaut.querydsl;
+
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.Expressions;
+
+import java.util.Objects;
+
+// How the FTS operator is rendered, in JPQL (QuerydslPredicateExecutor) and in SQL (NativeQueryEngine).
+// Templates get the property as {0} and the search query as {1}. The default calls a boolean SQL function
+// fts(text, query) through JPQL's function(), so every database only needs that function, e.g. on PostgreSQL
+// (inlined, so an index on to_tsvector('simple', column) is used):
+//   create function fts(t text, q text) returns boolean as
+//   $$ select to_tsvector('simple', t) @@ plainto_tsquery('simple', q) $$ language sql immutable;
+// and on H2, see H2TextSearch.install()
+public final class TextSearchDialect {
+
+    public static final TextSearchDialect DEFAULT = function("fts");
+
+    private final String jpqlTemplate;
+    private final String sqlTemplate;
+
+    private TextSearchDialect(String jpqlTemplate, String sqlTemplate) {
+        this.jpqlTemplate = jpqlTemplate;
+        this.sqlTemplate = sqlTemplate;
+    }
+
+    // a boolean SQL function of (text, query)
+    public static TextSearchDialect function(String name) {
+        Objects.requireNonNull(name, "name");
+        return of("function('" + name + "', {0}, {1}) = true", name + "({0}, {1})");
+    }
+
+    // e.g. of("function('match_against', {0}, {1}) > 0", "match({0}) against ({1} in natural language mode)")
+    public static TextSearchDialect of(String jpqlTemplate, String sqlTemplate) {
+        return new TextSearchDialect(Objects.requireNonNull(jpqlTemplate, "jpqlTemplate"),
+                Objects.requireNonNull(sqlTemplate, "sqlTemplate"));
+    }
+
+    Predicate fullText(Expression<?> property, String query, boolean sql) {
+        return Expressions.booleanTemplate(sql ? sqlTemplate : jpqlTemplate, property, Expressions.constant(query));
+    }
+}
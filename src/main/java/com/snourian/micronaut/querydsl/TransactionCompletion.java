@@ -0,0 +1,42 @@
+package com.snourian.micronaut.querydsl;
+
+import io.micronaut.transaction.support.TransactionSynchronization;
+import io.micronaut.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+// Changes of entity types which are reported again when the transaction of the current thread completes, with the
+// transaction synchronizations of micronaut-data-tx (e.g. of micronaut-data-hibernate-jpa). Only loaded if it is on
+// the classpath, see EntityChangeTracker
+final class TransactionCompletion {
+
+    // the changed types of the current transaction are bound to it under this key
+    private static final Object KEY = new Object();
+
+    private TransactionCompletion() {
+    }
+
+    // false if the current thread has no transaction with synchronizations
+    static boolean register(Class<?> type) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive())
+            return false;
+        @SuppressWarnings("unchecked")
+        Set<Class<?>> types = (Set<Class<?>>) TransactionSynchronizationManager.getResource(KEY);
+        if (types == null) {
+            final Set<Class<?>> changed = new LinkedHashSet<>();
+            TransactionSynchronizationManager.bindResource(KEY, changed);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(Status status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(KEY);
+                    changed.forEach(EntityChangeTracker::changed);
+                    ReadRouting.markWrite();
+                }
+            });
+            types = changed;
+        }
+        types.add(type);
+        return true;
+    }
+}
@@ -0,0 +1,106 @@
+package com.snourian.micronaut.querydsl.expression;
+
+import io.micronaut.core.beans.BeanIntrospection;
+import io.micronaut.core.beans.BeanProperty;
+import io.micronaut.core.type.Argument;
+
+import javax.persistence.Embeddable;
+import javax.persistence.Entity;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+// The properties of an @Entity or @Embeddable class which are needed to resolve property paths: name, type, and the
+// element type of collections. Generated at compile time by the querydsl-dynamic-query-processor module
+// (see EntityMetadataProvider), or derived from the BeanIntrospection of the class.
+public class EntityMetadata {
+
+    private final Class<?> type;
+    private final boolean entity;
+    private final boolean embeddable;
+    private final Map<String, Property> properties;
+
+    private EntityMetadata(Class<?> type, boolean entity, boolean embeddable, Property[] properties) {
+        this.type = type;
+        this.entity = entity;
+        this.embeddable = embeddable;
+        final Map<String, Property> map = new HashMap<>();
+        for (Property property : properties)
+            map.put(property.getName(), property);
+        this.properties = Collections.unmodifiableMap(map);
+    }
+
+    public static EntityMetadata entity(Class<?> type, Property... properties) {
+        return new EntityMetadata(type, true, false, properties);
+    }
+
+    public static EntityMetadata embeddable(Class<?> type, Property... properties) {
+        return new EntityMetadata(type, false, true, properties);
+    }
+
+    static EntityMetadata of(BeanIntrospection<?> introspection) {
+        final Property[] properties = introspection.getBeanProperties().stream()
+                .map(EntityMetadata::propertyOf)
+                .toArray(Property[]::new);
+        return new EntityMetadata(introspection.getBeanType(), introspection.hasAnnotation(Entity.class),
+                introspection.hasAnnotation(Embeddable.class), properties);
+    }
+
+    private static Property propertyOf(BeanProperty<?, ?> property) {
+        final Argument<?>[] typeParameters = property.asArgument().getTypeParameters();
+        final Class<?> elementType = Iterable.class.isAssignableFrom(property.getType()) && typeParameters.length > 0
+                ? typeParameters[0].getType()
+                : null;
+        return Property.of(property.getName(), property.getType(), elementType);
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    public boolean isEntity() {
+        return entity;
+    }
+
+    public boolean isEmbeddable() {
+        return embeddable;
+    }
+
+    // null if there is no such property
+    public Property getProperty(String name) {
+        return properties.get(name);
+    }
+
+    public Map<String, Property> getProperties() {
+        return properties;
+    }
+
+    public static class Property {
+        private final String name;
+        private final Class<?> type;
+        // the generic type of collections, e.g. Employee for List<Employee>
+        private final Class<?> elementType;
+
+        private Property(String name, Class<?> type, Class<?> elementType) {
+            this.name = name;
+            this.type = type;
+            this.elementType = elementType;
+        }
+
+        public static Property of(String name, Class<?> type, Class<?> elementType) {
+            return new Property(name, type, elementType);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Class<?> getType() {
+            return type;
+        }
+
+        public Class<?> getElementType() {
+            return elementType;
+        }
+    }
+}
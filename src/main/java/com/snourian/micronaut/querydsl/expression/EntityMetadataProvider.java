@@ -0,0 +1,8 @@
+package com.snourian.micronaut.querydsl.expression;
+
+// Implemented by the classes generated by the querydsl-dynamic-query-processor module (one per @Entity/@Embeddable),
+// and loaded as a service by EntityMetadataRegistry
+public interface EntityMetadataProvider {
+
+    EntityMetadata getMetadata();
+}
@@ -0,0 +1,43 @@
+package com.snourian.micronaut.querydsl.expression;
+
+import io.micronaut.core.beans.BeanIntrospector;
+import io.micronaut.core.io.service.SoftServiceLoader;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The metadata of entities and embeddables. The tables generated at compile time are loaded once (service loader),
+// and classes without a generated table fall back to their BeanIntrospection. Lookups of other classes
+// (String, Long, ...) are cached too, as empty results.
+public class EntityMetadataRegistry {
+
+    private static final EntityMetadataRegistry INSTANCE = new EntityMetadataRegistry();
+
+    private final Map<Class<?>, Optional<EntityMetadata>> metadata = new ConcurrentHashMap<>();
+
+    public EntityMetadataRegistry() {
+        SoftServiceLoader.load(EntityMetadataProvider.class).forEach(provider -> {
+            if (provider.isPresent()) {
+                final EntityMetadata entity = provider.load().getMetadata();
+                metadata.put(entity.getType(), Optional.of(entity));
+            }
+        });
+    }
+
+    public static EntityMetadataRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    public Optional<EntityMetadata> get(Class<?> type) {
+        return metadata.computeIfAbsent(type, EntityMetadataRegistry::introspect);
+    }
+
+    public int size() {
+        return metadata.size();
+    }
+
+    private static Optional<EntityMetadata> introspect(Class<?> type) {
+        return BeanIntrospector.SHARED.findIntrospection(type).map(EntityMetadata::of);
+    }
+}
@@ -1,21 +1,45 @@
 package com.snourian.micronaut.querydsl.expression;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+// A node of the predicate tree: its predicates and nested groups are combined with its ExpressionType (AND/OR).
+// e.g. EXPR=anyOf(allOf(employees.rank=eq(Manager),employees.score=gt(70)),location.city=eq(Gotham))
 public class ExpressionEntries {
 
     private final ExpressionType type;
     private final List<PredicateEntry> predicates;
+    private final List<ExpressionEntries> groups;
+    // set by ExpressionNormalizer when the predicates contradict each other, e.g. score=gt(10) and score=lt(5)
+    private final boolean unsatisfiable;
 
     public ExpressionEntries(ExpressionType type, List<PredicateEntry> predicates) {
+        this(type, predicates, new ArrayList<>());
+    }
+
+    public ExpressionEntries(ExpressionType type, List<PredicateEntry> predicates, List<ExpressionEntries> groups) {
+        this(type, predicates, groups, false);
+    }
+
+    private ExpressionEntries(ExpressionType type, List<PredicateEntry> predicates, List<ExpressionEntries> groups,
+                              boolean unsatisfiable) {
         this.type = type;
         this.predicates = predicates;
+        this.groups = groups;
+        this.unsatisfiable = unsatisfiable;
     }
 
     public ExpressionEntries() {
         this.type = ExpressionType.ALLOF;
         this.predicates = new ArrayList<>();
+        this.groups = new ArrayList<>();
+        this.unsatisfiable = false;
+    }
+
+    // a node which never matches any row
+    public static ExpressionEntries unsatisfiable(ExpressionType type) {
+        return new ExpressionEntries(type, Collections.emptyList(), Collections.emptyList(), true);
     }
 
     public ExpressionType getType() {
@@ -25,4 +49,31 @@ public class ExpressionEntries {
     public List<PredicateEntry> getPredicates() {
         return predicates;
     }
+
+    public List<ExpressionEntries> getGroups() {
+        return groups;
+    }
+
+    public boolean isUnsatisfiable() {
+        return unsatisfiable;
+    }
+
+    // no predicates at all, which matches every row
+    public boolean isEmpty() {
+        return !unsatisfiable && predicates.isEmpty() && groups.isEmpty();
+    }
+
+    // all the predicates of the tree in DFS order: predicates of a node first, then its groups
+    public List<PredicateEntry> flatten() {
+        if (groups.isEmpty())
+            return predicates;
+        final List<PredicateEntry> all = new ArrayList<>();
+        flatten(all);
+        return all;
+    }
+
+    private void flatten(List<PredicateEntry> all) {
+        all.addAll(predicates);
+        groups.forEach(group -> group.flatten(all));
+    }
 }
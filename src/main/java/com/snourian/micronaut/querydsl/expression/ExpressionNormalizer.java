@@ -0,0 +1,332 @@
+package com.snourian.micronaut.querydsl.expression;
+
+import com.snourian.micronaut.querydsl.expression.operator.PredicateOperator;
+
+import java.time.temporal.Temporal;
+import java.util.*;
+
+// Simplifies the predicate tree before any QueryDSL expression is built:
+// - nested groups of the same type (and groups of a single element) are flattened, unless they have a predicate on a
+//   collection which the node already has predicates on. JoinStrategy.EXISTS puts the predicates of a node on the
+//   same collection in one subquery (the same element), e.g. allOf(employees.a,anyOf(employees.b)) has two subqueries
+// - identical predicates are removed
+// - anyOf: eq/in predicates on the same property are merged into a single 'in'
+// - allOf: eq/in/range predicates on the same property are intersected. gt/goe/lt/loe are collapsed into the
+//   tightest bounds ('between' if both are inclusive), and contradictions (e.g. score=gt(10) and score=lt(5))
+//   make the node unsatisfiable, so the query can return an empty result without touching the database.
+//   Only numeric and temporal properties are intersected: the database compares strings with its collation (case,
+//   accents, ...), which Java can't reproduce
+public class ExpressionNormalizer {
+
+    private static final Set<PredicateOperator> CONSTRAINT_OPS = EnumSet.of(PredicateOperator.EQ, PredicateOperator.IN,
+            PredicateOperator.GT, PredicateOperator.GOE, PredicateOperator.LT, PredicateOperator.LOE,
+            PredicateOperator.BETWEEN, PredicateOperator.IS_NULL, PredicateOperator.IS_NOT_NULL);
+
+    private ExpressionNormalizer() {
+    }
+
+    public static ExpressionEntries normalize(ExpressionEntries node) {
+        if (node.isUnsatisfiable())
+            return node;
+        final ExpressionType type = node.getType();
+        final List<PredicateEntry> leaves = new ArrayList<>(node.getPredicates());
+        final List<ExpressionEntries> groups = new ArrayList<>();
+        // normalized child groups. Groups lifted from a child are already normalized too
+        final Deque<ExpressionEntries> pending = new ArrayDeque<>();
+        node.getGroups().forEach(group -> pending.add(normalize(group)));
+        boolean dropped = false;
+        while (!pending.isEmpty()) {
+            final ExpressionEntries child = pending.poll();
+            if (child.isUnsatisfiable()) {
+                if (type == ExpressionType.ALLOF)
+                    return ExpressionEntries.unsatisfiable(type);
+                dropped = true; // never true in an OR
+                continue;
+            }
+            if (child.isEmpty()) {
+                if (type == ExpressionType.ANYOF)
+                    return new ExpressionEntries(type, new ArrayList<>()); // always true in an OR
+                continue;
+            }
+            if ((child.getType() == type || child.getPredicates().size() + child.getGroups().size() == 1)
+                    && !sharesCollection(leaves, child.getPredicates())) {
+                leaves.addAll(child.getPredicates());
+                pending.addAll(child.getGroups());
+            } else
+                groups.add(child);
+        }
+        // an OR of contradictions only is a contradiction too, not an empty (match all) node
+        if (dropped && leaves.isEmpty() && groups.isEmpty())
+            return ExpressionEntries.unsatisfiable(type);
+        List<PredicateEntry> normalized = distinct(leaves);
+        if (type == ExpressionType.ANYOF)
+            normalized = mergeEqualities(normalized);
+        else {
+            normalized = intersect(normalized);
+            if (normalized == null)
+                return ExpressionEntries.unsatisfiable(type);
+        }
+        return new ExpressionEntries(type, normalized, groups);
+    }
+
+    // true if a predicate of the group goes through a collection which one of the leaves goes through too
+    private static boolean sharesCollection(List<PredicateEntry> leaves, List<PredicateEntry> group) {
+        Set<String> collections = null;
+        for (PredicateEntry entry : group) {
+            final String collection = collectionOf(entry);
+            if (collection == null)
+                continue;
+            if (collections == null) {
+                collections = new HashSet<>();
+                for (PredicateEntry leaf : leaves)
+                    collections.add(collectionOf(leaf));
+            }
+            if (collections.contains(collection))
+                return true;
+        }
+        return false;
+    }
+
+    // the path of the first collection in the path of the predicate (e.g. 'department_employees'), or null
+    private static String collectionOf(PredicateEntry entry) {
+        for (PredicatePath path : entry.getPath()) {
+            if (path.getRelationType() == PredicatePath.RelationType.Collection)
+                return path.getFullPath();
+        }
+        return null;
+    }
+
+    private static List<PredicateEntry> distinct(List<PredicateEntry> leaves) {
+        final Map<List<Object>, PredicateEntry> unique = new LinkedHashMap<>();
+        for (PredicateEntry leaf : leaves)
+            unique.putIfAbsent(Arrays.asList(leaf.getKey(), leaf.getOp(), Arrays.asList(leaf.getValues())), leaf);
+        return unique.size() == leaves.size() ? leaves : new ArrayList<>(unique.values());
+    }
+
+    // a=eq(1) or a=eq(2) or a=in(3,4) -> a=in(1,2,3,4)
+    private static List<PredicateEntry> mergeEqualities(List<PredicateEntry> leaves) {
+        final Map<String, List<PredicateEntry>> byKey = groupByKey(leaves,
+                leaf -> leaf.getOp() == PredicateOperator.EQ || leaf.getOp() == PredicateOperator.IN);
+        final List<PredicateEntry> result = new ArrayList<>(leaves.size());
+        for (PredicateEntry leaf : leaves) {
+            final List<PredicateEntry> sameKey = byKey.get(leaf.getKey());
+            if (sameKey == null || sameKey.size() < 2 || !(leaf.getOp() == PredicateOperator.EQ || leaf.getOp() == PredicateOperator.IN)) {
+                result.add(leaf);
+            } else if (sameKey.get(0) == leaf) { // the merged predicate takes the place of the first one
+                final Set<Object> values = new LinkedHashSet<>();
+                sameKey.forEach(entry -> values.addAll(Arrays.asList(entry.getValues())));
+                result.add(copyOf(leaf, PredicateOperator.IN, values.toArray()));
+            }
+        }
+        return result;
+    }
+
+    // returns null if the predicates on a property contradict each other
+    private static List<PredicateEntry> intersect(List<PredicateEntry> leaves) {
+        final Map<String, List<PredicateEntry>> byKey = groupByKey(leaves, ExpressionNormalizer::isConstraint);
+        final List<PredicateEntry> result = new ArrayList<>(leaves.size());
+        for (PredicateEntry leaf : leaves) {
+            final List<PredicateEntry> sameKey = byKey.get(leaf.getKey());
+            if (sameKey == null || sameKey.size() < 2 || !isConstraint(leaf)) {
+                result.add(leaf);
+            } else if (sameKey.get(0) == leaf) {
+                final List<PredicateEntry> intersection = new Constraints(sameKey).intersect();
+                if (intersection == null)
+                    return null;
+                result.addAll(intersection);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isConstraint(PredicateEntry leaf) {
+        if (!CONSTRAINT_OPS.contains(leaf.getOp()) || !isNumericOrTemporal(leaf.getPropertyType()))
+            return false;
+        return leaf.getOp() != PredicateOperator.BETWEEN || leaf.getValues().length == 2;
+    }
+
+    private static boolean isNumericOrTemporal(Class<?> type) {
+        if (type == null)
+            return false;
+        if (type.isPrimitive())
+            return type != boolean.class && type != char.class;
+        return Number.class.isAssignableFrom(type) || Temporal.class.isAssignableFrom(type) ||
+                Date.class.isAssignableFrom(type);
+    }
+
+    private static Map<String, List<PredicateEntry>> groupByKey(List<PredicateEntry> leaves,
+                                                               java.util.function.Predicate<PredicateEntry> filter) {
+        final Map<String, List<PredicateEntry>> byKey = new HashMap<>();
+        for (PredicateEntry leaf : leaves) {
+            if (filter.test(leaf))
+                byKey.computeIfAbsent(leaf.getKey(), key -> new ArrayList<>()).add(leaf);
+        }
+        return byKey;
+    }
+
+    private static PredicateEntry copyOf(PredicateEntry template, PredicateOperator op, Object... values) {
+        return new PredicateEntry(op, template.getPath(), template.getParentName(), template.getPropertyType(),
+                template.getProperty(), values);
+    }
+
+    // eq/in/range/null predicates on the same property, AND-ed together
+    private static class Constraints {
+        private final PredicateEntry template;
+        private Set<Object> values; // intersection of eq and in values. null = no eq/in
+        private Object lower;
+        private boolean lowerInclusive;
+        private Object upper;
+        private boolean upperInclusive;
+        private boolean isNull;
+        private boolean isNotNull;
+        private boolean comparable = true;
+        private final List<PredicateEntry> ranges = new ArrayList<>();
+
+        private Constraints(List<PredicateEntry> leaves) {
+            this.template = leaves.get(0);
+            for (PredicateEntry leaf : leaves) {
+                final Object[] vals = leaf.getValues();
+                switch (leaf.getOp()) {
+                    case EQ:
+                    case IN:
+                        retainValues(Arrays.asList(vals));
+                        break;
+                    case GT:
+                        lowerBound(vals[0], false);
+                        ranges.add(leaf);
+                        break;
+                    case GOE:
+                        lowerBound(vals[0], true);
+                        ranges.add(leaf);
+                        break;
+                    case LT:
+                        upperBound(vals[0], false);
+                        ranges.add(leaf);
+                        break;
+                    case LOE:
+                        upperBound(vals[0], true);
+                        ranges.add(leaf);
+                        break;
+                    case BETWEEN:
+                        lowerBound(vals[0], true);
+                        upperBound(vals[1], true);
+                        ranges.add(leaf);
+                        break;
+                    case IS_NULL:
+                        isNull = true;
+                        break;
+                    case IS_NOT_NULL:
+                        isNotNull = true;
+                        break;
+                    default:
+                }
+            }
+        }
+
+        private List<PredicateEntry> intersect() {
+            // comparisons with null are never true
+            if (isNull && (isNotNull || values != null || lower != null || upper != null))
+                return null;
+            if (isNull)
+                return Collections.singletonList(copyOf(template, PredicateOperator.IS_NULL));
+            if (values != null) {
+                if (comparable)
+                    values.removeIf(value -> !inRange(value));
+                if (values.isEmpty())
+                    return null;
+                final List<PredicateEntry> result = new ArrayList<>(ranges.size() + 1);
+                result.add(values.size() == 1
+                        ? copyOf(template, PredicateOperator.EQ, values.iterator().next())
+                        : copyOf(template, PredicateOperator.IN, values.toArray()));
+                // ranges are implied by the values, unless they couldn't be compared
+                if (!comparable)
+                    result.addAll(ranges);
+                return result;
+            }
+            final List<PredicateEntry> result = new ArrayList<>(2);
+            if (!comparable)
+                result.addAll(ranges);
+            else if (lower != null && upper != null) {
+                final int cmp = compare(lower, upper);
+                if (cmp > 0 || (cmp == 0 && !(lowerInclusive && upperInclusive)))
+                    return null;
+                if (cmp == 0)
+                    result.add(copyOf(template, PredicateOperator.EQ, lower));
+                else if (lowerInclusive && upperInclusive)
+                    result.add(copyOf(template, PredicateOperator.BETWEEN, lower, upper));
+                else {
+                    result.add(copyOf(template, lowerInclusive ? PredicateOperator.GOE : PredicateOperator.GT, lower));
+                    result.add(copyOf(template, upperInclusive ? PredicateOperator.LOE : PredicateOperator.LT, upper));
+                }
+            } else if (lower != null)
+                result.add(copyOf(template, lowerInclusive ? PredicateOperator.GOE : PredicateOperator.GT, lower));
+            else if (upper != null)
+                result.add(copyOf(template, upperInclusive ? PredicateOperator.LOE : PredicateOperator.LT, upper));
+            // a range already excludes nulls
+            if (isNotNull && result.isEmpty())
+                result.add(copyOf(template, PredicateOperator.IS_NOT_NULL));
+            return result;
+        }
+
+        private void retainValues(Collection<Object> vals) {
+            if (values == null)
+                values = new LinkedHashSet<>(vals);
+            else
+                values.removeIf(value -> vals.stream().noneMatch(other -> same(value, other)));
+        }
+
+        // by value, e.g. BigDecimal 1.0 and 1.00 are the same number
+        private static boolean same(Object value, Object other) {
+            if (value instanceof Comparable && other != null && value.getClass() == other.getClass())
+                return compare(value, other) == 0;
+            return Objects.equals(value, other);
+        }
+
+        private void lowerBound(Object value, boolean inclusive) {
+            if (!canCompare(value, lower))
+                return;
+            final int cmp = lower == null ? 1 : compare(value, lower);
+            if (cmp > 0 || (cmp == 0 && !inclusive)) {
+                lower = value;
+                lowerInclusive = inclusive;
+            }
+        }
+
+        private void upperBound(Object value, boolean inclusive) {
+            if (!canCompare(value, upper))
+                return;
+            final int cmp = upper == null ? -1 : compare(value, upper);
+            if (cmp < 0 || (cmp == 0 && !inclusive)) {
+                upper = value;
+                upperInclusive = inclusive;
+            }
+        }
+
+        private boolean inRange(Object value) {
+            if (!canCompare(value, lower) || !canCompare(value, upper))
+                return true;
+            if (lower != null) {
+                final int cmp = compare(value, lower);
+                if (cmp < 0 || (cmp == 0 && !lowerInclusive))
+                    return false;
+            }
+            if (upper != null) {
+                final int cmp = compare(value, upper);
+                return cmp < 0 || (cmp == 0 && upperInclusive);
+            }
+            return true;
+        }
+
+        // bounds are only collapsed if all the values are Comparable and of the same type
+        private boolean canCompare(Object value, Object other) {
+            if (!(value instanceof Comparable) || (other != null && other.getClass() != value.getClass()))
+                comparable = false;
+            return comparable;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static int compare(Object a, Object b) {
+            return ((Comparable<Object>) a).compareTo(b);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.snourian.micronaut.querydsl.expression;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Parses the value of the 'EXPR' param into a tree of ExpressionEntries:
+//   expr  := group | leaf
+//   group := ('allOf' | 'anyOf') '(' expr (',' expr)* ')'
+//   leaf  := key '=' op '(' values ')'
+// e.g. anyOf(allOf(employees.rank=eq(Manager),employees.score=gt(70)),location.city=eq(Gotham))
+class ExpressionTreeParser {
+
+    private final Class<?> entity;
+    private final String input;
+    private int pos;
+
+    private ExpressionTreeParser(Class<?> entity, String input) {
+        this.entity = entity;
+        this.input = input;
+    }
+
+    static ExpressionEntries parse(Class<?> entity, String input) {
+        final ExpressionTreeParser parser = new ExpressionTreeParser(entity, input);
+        final List<PredicateEntry> predicates = new ArrayList<>(1);
+        final List<ExpressionEntries> groups = new ArrayList<>(1);
+        parser.parseInto(predicates, groups);
+        parser.skipWhitespace();
+        if (parser.pos != input.length())
+            throw parser.error("unexpected trailing characters");
+        return groups.isEmpty() ? new ExpressionEntries(ExpressionType.ALLOF, predicates) : groups.get(0);
+    }
+
+    // parses a group or a leaf and adds it to the given lists of the parent node
+    private void parseInto(List<PredicateEntry> predicates, List<ExpressionEntries> groups) {
+        skipWhitespace();
+        final int start = pos;
+        while (pos < input.length() && input.charAt(pos) != '(' && input.charAt(pos) != '=')
+            pos++;
+        if (pos == input.length())
+            throw error("expected a group or a predicate");
+        final String name = input.substring(start, pos).trim();
+        if (input.charAt(pos) == '=') {
+            pos++;
+            predicates.add(ExpressionFactory.create(entity, name, leafValue())
+                    .orElseThrow(() -> error("unknown property '" + name + "'")));
+            return;
+        }
+        final ExpressionType type;
+        if ("allOf".equalsIgnoreCase(name))
+            type = ExpressionType.ALLOF;
+        else if ("anyOf".equalsIgnoreCase(name))
+            type = ExpressionType.ANYOF;
+        else
+            throw error("unknown group '" + name + "', expected allOf or anyOf");
+        pos++; // '('
+        final List<PredicateEntry> childPredicates = new ArrayList<>();
+        final List<ExpressionEntries> childGroups = new ArrayList<>();
+        while (true) {
+            parseInto(childPredicates, childGroups);
+            skipWhitespace();
+            if (pos == input.length())
+                throw error("missing ')'");
+            final char c = input.charAt(pos++);
+            if (c == ')')
+                break;
+            if (c != ',')
+                throw error("expected ',' or ')'");
+        }
+        groups.add(new ExpressionEntries(type, childPredicates, childGroups));
+    }
+
+    // op(...) with balanced parentheses (outside of quoted values), so values may contain nested parentheses
+    private String leafValue() {
+        final int start = pos;
+        while (pos < input.length() && input.charAt(pos) != '(')
+            pos++;
+        if (pos == input.length())
+            throw error("expected an operator");
+        int depth = 0;
+        char quote = 0;
+        do {
+            final char c = input.charAt(pos++);
+            if (c == '\\' && pos < input.length())
+                pos++; // escaped character
+            else if (quote != 0) {
+                if (c == quote)
+                    quote = 0;
+            } else if ((c == '\'' || c == '"') && startsValue(pos - 1))
+                quote = c;
+            else if (c == '(')
+                depth++;
+            else if (c == ')')
+                depth--;
+        } while (depth > 0 && pos < input.length());
+        if (depth != 0)
+            throw error("missing ')'");
+        return input.substring(start, pos).trim();
+    }
+
+    // quotes only start a value, e.g. eq('a,b') but not eq(O'Brien)
+    private boolean startsValue(int quotePos) {
+        final char prev = input.charAt(quotePos - 1);
+        return prev == '(' || prev == ',' || prev == ' ';
+    }
+
+    private void skipWhitespace() {
+        while (pos < input.length() && Character.isWhitespace(input.charAt(pos)))
+            pos++;
+    }
+
+    private PredicateParseException error(String message) {
+        return new PredicateParseException(input, pos, message);
+    }
+}
@@ -4,4 +4,6 @@ public enum ExpressionType {
     ALLOF, ANYOF;
 
     public static final String TypeKey = "EXPR_TYPE";
+    // a nested boolean expression, e.g. EXPR=anyOf(allOf(employees.rank=eq(Manager),employees.score=gt(70)),location.city=eq(Gotham))
+    public static final String ExprKey = "EXPR";
 }
@@ -1,4 +0,0 @@
-package com.snourian.micronaut.querydsl.expression;
-
-public class NotEntityException extends RuntimeException {
-}
@@ -51,6 +51,15 @@ public class PredicateEntry {
         return property;
     }
 
+    // the dotted key of this predicate from the root entity, e.g. 'employees.rank'
+    public String getKey() {
+        if (path == null || path.isEmpty())
+            return property;
+        final StringBuilder sb = new StringBuilder();
+        path.forEach(p -> sb.append(p.getProperty()).append('.'));
+        return sb.append(property).toString();
+    }
+
     public Class<?> getPropertyType() {
         return propertyType;
     }
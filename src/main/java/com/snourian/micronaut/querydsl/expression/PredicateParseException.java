@@ -0,0 +1,33 @@
+package com.snourian.micronaut.querydsl.expression;
+
+// An invalid predicate or expression param. The position is the index in the input where parsing has failed,
+// so the caller (e.g. an exception handler) can point to the exact character
+public class PredicateParseException extends RuntimeException {
+
+    private final String input;
+    private final int position;
+    private final String reason;
+
+    public PredicateParseException(String input, int position, String reason) {
+        this(input, position, reason, null);
+    }
+
+    public PredicateParseException(String input, int position, String reason, Throwable cause) {
+        super("Invalid predicate | " + reason + " at position " + position + ": " + input, cause);
+        this.input = input;
+        this.position = position;
+        this.reason = reason;
+    }
+
+    public String getInput() {
+        return input;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+}
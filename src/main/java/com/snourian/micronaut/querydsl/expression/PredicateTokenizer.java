@@ -0,0 +1,153 @@
+package com.snourian.micronaut.querydsl.expression;
+
+import com.snourian.micronaut.querydsl.expression.operator.OpType;
+import com.snourian.micronaut.querydsl.expression.operator.PredicateOperator;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+// Single-pass parser of a predicate value: op '(' [value (',' value)*] ')'
+// - the operator is case-insensitive, e.g. not_in(a,b) or NOT_IN(a,b)
+// - values may be quoted with ' or " to contain commas and parentheses, e.g. eq('Smith, John')
+// - a backslash escapes the next character, quoted or not, e.g. eq(Smith\, John) or eq('It\'s')
+// Values are converted to the property type as soon as they are read
+final class PredicateTokenizer {
+
+    private final String input;
+    private final Function<String, Object> converter;
+    // index of the closing parenthesis
+    private final int end;
+    private int pos;
+    // only used for values with escaped characters
+    private StringBuilder buffer;
+
+    private PredicateTokenizer(String input, Function<String, Object> converter) {
+        this.input = input;
+        this.converter = converter;
+        this.end = input.length() - 1;
+    }
+
+    static ExpressionFactory.OperatorAndValues tokenize(String input, Function<String, Object> converter) {
+        return new PredicateTokenizer(input, converter).parse();
+    }
+
+    private ExpressionFactory.OperatorAndValues parse() {
+        while (pos < input.length() && isOperatorChar(input.charAt(pos)))
+            pos++;
+        if (pos == 0)
+            throw error(0, "cannot find operator");
+        if (pos == input.length() || input.charAt(pos) != '(')
+            throw error(pos, "expected '(' after the operator");
+        final PredicateOperator op = PredicateOperator.lookup(input, 0, pos);
+        if (op == null)
+            throw error(0, "invalid operator '" + input.substring(0, pos) + "'");
+        if (input.charAt(end) != ')' || end == pos)
+            throw error(input.length(), "no closing parentheses at the end");
+        pos++; // '('
+        if (pos == end) { // no arguments inside parentheses, e.g. is_null()
+            // an empty list would drop the predicate (and match every row) instead of matching none
+            if (op.getOpType() == OpType.LIST)
+                throw error(pos, "empty list of values");
+            return ExpressionFactory.OperatorAndValues.of(op, new Object[0]);
+        }
+        // values of in/not_in are distinct, which keeps the list of parameters as short as possible
+        final Set<Object> seen = op.getOpType() == OpType.LIST ? new HashSet<>() : null;
+        final List<Object> values = new ArrayList<>();
+        while (true) {
+            final int start = pos;
+            final Object value = convert(nextValue(), start);
+            if (seen == null || seen.add(value))
+                values.add(value);
+            if (pos == end)
+                break;
+            pos++; // ','
+        }
+        return ExpressionFactory.OperatorAndValues.of(op, values.toArray());
+    }
+
+    // reads a value and stops at the next ',' or the closing parenthesis
+    private String nextValue() {
+        int quotePos = pos;
+        while (quotePos < end && input.charAt(quotePos) == ' ')
+            quotePos++;
+        if (quotePos < end && (input.charAt(quotePos) == '\'' || input.charAt(quotePos) == '"')) {
+            pos = quotePos;
+            return quoted(input.charAt(quotePos));
+        }
+        final int start = pos;
+        int chunk = pos;
+        StringBuilder sb = null;
+        while (pos < end) {
+            final char c = input.charAt(pos);
+            if (c == ',')
+                break;
+            if (c == '\\') {
+                sb = escape(sb, chunk);
+                chunk = pos;
+            } else
+                pos++;
+        }
+        return sb == null ? input.substring(start, pos) : sb.append(input, chunk, pos).toString();
+    }
+
+    private String quoted(char quote) {
+        final int start = pos++;
+        final int contentStart = pos;
+        int chunk = pos;
+        StringBuilder sb = null;
+        while (pos < end) {
+            final char c = input.charAt(pos);
+            if (c == quote) {
+                final String value = sb == null
+                        ? input.substring(contentStart, pos)
+                        : sb.append(input, chunk, pos).toString();
+                pos++;
+                while (pos < end && input.charAt(pos) == ' ')
+                    pos++;
+                if (pos < end && input.charAt(pos) != ',')
+                    throw error(pos, "expected ',' or ')' after a quoted value");
+                return value;
+            }
+            if (c == '\\') {
+                sb = escape(sb, chunk);
+                chunk = pos;
+            } else
+                pos++;
+        }
+        throw error(start, "unterminated quoted value");
+    }
+
+    // appends the pending characters and the escaped character to the buffer, and skips the escape sequence
+    private StringBuilder escape(StringBuilder sb, int chunk) {
+        if (pos + 1 >= end)
+            throw error(pos, "incomplete escape sequence");
+        if (sb == null) {
+            if (buffer == null)
+                buffer = new StringBuilder();
+            sb = buffer;
+            sb.setLength(0);
+        }
+        sb.append(input, chunk, pos).append(input.charAt(pos + 1));
+        pos += 2;
+        return sb;
+    }
+
+    private Object convert(String value, int start) {
+        try {
+            return converter.apply(value);
+        } catch (RuntimeException e) {
+            throw new PredicateParseException(input, start, "invalid value '" + value + "'", e);
+        }
+    }
+
+    private static boolean isOperatorChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private PredicateParseException error(int position, String reason) {
+        return new PredicateParseException(input, position, reason);
+    }
+}
@@ -0,0 +1,79 @@
+package com.snourian.micronaut.querydsl.expression;
+
+import io.micronaut.core.util.clhm.ConcurrentLinkedHashMap;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+// A thread-safe and bounded (LRU) cache of resolved property paths, keyed by (root entity, dotted key).
+// Resolving a key walks the BeanIntrospection of every related entity, so repeated keys like 'employees.rank'
+// should be resolved only once.
+public class PropertyPathCache {
+
+    public static final int DEFAULT_MAX_SIZE = 2048;
+
+    private static final PropertyPathCache INSTANCE = new PropertyPathCache(DEFAULT_MAX_SIZE);
+
+    // Optional.empty() is cached for keys which are not a property of the entity (e.g. 'page' or 'size')
+    private final ConcurrentLinkedHashMap<Key, Optional<PropertyPathMetadata>> cache;
+
+    public PropertyPathCache(long maxSize) {
+        this.cache = new ConcurrentLinkedHashMap.Builder<Key, Optional<PropertyPathMetadata>>()
+                .maximumWeightedCapacity(maxSize)
+                .build();
+    }
+
+    public static PropertyPathCache getInstance() {
+        return INSTANCE;
+    }
+
+    Optional<PropertyPathMetadata> get(Class<?> entity, String key, Supplier<Optional<PropertyPathMetadata>> resolver) {
+        final Key cacheKey = new Key(entity, key);
+        Optional<PropertyPathMetadata> metadata = cache.get(cacheKey);
+        if (metadata == null) {
+            metadata = resolver.get();
+            cache.putIfAbsent(cacheKey, metadata);
+        }
+        return metadata;
+    }
+
+    public void setMaxSize(long maxSize) {
+        cache.setCapacity(maxSize);
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    private static final class Key {
+        private final Class<?> entity;
+        private final String key;
+        private final int hash;
+
+        private Key(Class<?> entity, String key) {
+            this.entity = entity;
+            this.key = key;
+            this.hash = Objects.hash(entity, key);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return entity == other.entity && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
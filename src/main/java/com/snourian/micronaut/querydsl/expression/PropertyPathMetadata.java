@@ -0,0 +1,41 @@
+package com.snourian.micronaut.querydsl.expression;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+// Resolved metadata of a dotted http param key (e.g. 'employees.rank') against a root entity.
+// Instances are immutable and shared between requests through PropertyPathCache.
+public class PropertyPathMetadata {
+
+    private final List<PredicatePath> paths;
+    private final String property;
+    private final Class<?> propertyType;
+    private final Function<String, Object> converter;
+
+    public PropertyPathMetadata(List<PredicatePath> paths, String property, Class<?> propertyType,
+                                Function<String, Object> converter) {
+        this.paths = Collections.unmodifiableList(paths);
+        this.property = property;
+        this.propertyType = propertyType;
+        this.converter = converter;
+    }
+
+    // related entities (and embeddables) between the root entity and the final property
+    public List<PredicatePath> getPaths() {
+        return paths;
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    public Class<?> getPropertyType() {
+        return propertyType;
+    }
+
+    // converts a raw String value to the type of the final property
+    public Function<String, Object> getConverter() {
+        return converter;
+    }
+}
@@ -0,0 +1,16 @@
+package com.snourian.micronaut.querydsl.expression;
+
+// Converts the string values of predicates (e.g. the '70' of 'score=gt(70)') to the type of the property.
+// Implementations declared as beans are registered on startup, which replaces the built-in converter of the type.
+// They can also be registered manually with ValueConverters.getInstance().register()
+public interface ValueConverter<T> {
+
+    Class<T> getType();
+
+    T convert(String value);
+
+    // the inverse of convert(), e.g. for the cursors of keyset pagination: convert(format(value)) equals value
+    default String format(T value) {
+        return value.toString();
+    }
+}
@@ -0,0 +1,17 @@
+package com.snourian.micronaut.querydsl.expression;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micronaut.context.annotation.Context;
+
+import java.util.List;
+
+// Registers the ValueConverter beans of the application and its ObjectMapper on startup
+@Context
+public class ValueConverterRegistrar {
+
+    public ValueConverterRegistrar(List<ValueConverter<?>> converters, ObjectMapper objectMapper) {
+        final ValueConverters registry = ValueConverters.getInstance();
+        registry.setObjectMapper(objectMapper);
+        converters.forEach(registry::register);
+    }
+}
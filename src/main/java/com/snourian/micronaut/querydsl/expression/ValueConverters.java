@@ -0,0 +1,122 @@
+package com.snourian.micronaut.querydsl.expression;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// The registry of value converters. The converter of a property type is resolved once and cached:
+// - registered converters and the built-in ones (boxed and primitive types, BigDecimal, UUID, java.time, ...)
+// - enums, through a precomputed name -> constant map
+// - otherwise, Jackson's ObjectMapper.convertValue() with a shared mapper. It is a two-step conversion which supports
+//   almost all other types (and enum constants renamed with @JsonProperty)
+// Values are formatted back to strings (see formatterFor) the same way, so a formatted value converts to itself.
+public class ValueConverters {
+
+    private static final ValueConverters INSTANCE = new ValueConverters();
+
+    private final Map<Class<?>, Function<String, Object>> converters = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Function<String, Object>> resolved = new ConcurrentHashMap<>();
+    // formatters of the registered converters. The built-in ones use toString()
+    private final Map<Class<?>, Function<Object, String>> formats = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Function<Object, String>> resolvedFormats = new ConcurrentHashMap<>();
+    private volatile ObjectMapper objectMapper = new ObjectMapper();
+
+    public ValueConverters() {
+        add(String.class, str -> str);
+        add(Long.class, long.class, Long::valueOf);
+        add(Integer.class, int.class, Integer::valueOf);
+        add(Short.class, short.class, Short::valueOf);
+        add(Byte.class, byte.class, Byte::valueOf);
+        add(Double.class, double.class, Double::valueOf);
+        add(Float.class, float.class, Float::valueOf);
+        add(Boolean.class, boolean.class, Boolean::valueOf);
+        add(Character.class, char.class, str -> str.charAt(0));
+        add(BigDecimal.class, BigDecimal::new);
+        add(BigInteger.class, BigInteger::new);
+        add(UUID.class, UUID::fromString);
+        add(LocalDate.class, LocalDate::parse);
+        add(LocalDateTime.class, LocalDateTime::parse);
+        add(LocalTime.class, LocalTime::parse);
+        add(OffsetDateTime.class, OffsetDateTime::parse);
+        add(ZonedDateTime.class, ZonedDateTime::parse);
+        add(Instant.class, Instant::parse);
+    }
+
+    public static ValueConverters getInstance() {
+        return INSTANCE;
+    }
+
+    public Function<String, Object> converterFor(Class<?> type) {
+        return resolved.computeIfAbsent(type, this::resolve);
+    }
+
+    // the inverse of the converter of the type
+    public Function<Object, String> formatterFor(Class<?> type) {
+        return resolvedFormats.computeIfAbsent(type, this::resolveFormat);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> void register(ValueConverter<T> converter) {
+        converters.put(converter.getType(), converter::convert);
+        formats.put(converter.getType(), value -> converter.format((T) value));
+        invalidate();
+    }
+
+    // the mapper of the fallback conversion, e.g. the ObjectMapper bean of the application
+    public void setObjectMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        invalidate();
+    }
+
+    private Function<String, Object> resolve(Class<?> type) {
+        final Function<String, Object> converter = converters.get(type);
+        if (converter != null)
+            return converter;
+        final ObjectMapper mapper = objectMapper;
+        if (type.isEnum()) {
+            final Map<String, Object> constants = new HashMap<>();
+            for (Object constant : type.getEnumConstants())
+                constants.put(((Enum<?>) constant).name(), constant);
+            return str -> {
+                final Object constant = constants.get(str);
+                return constant != null ? constant : mapper.convertValue(str, type);
+            };
+        }
+        return str -> mapper.convertValue(str, type);
+    }
+
+    private Function<Object, String> resolveFormat(Class<?> type) {
+        final Function<Object, String> format = formats.get(type);
+        if (format != null)
+            return format;
+        if (converters.containsKey(type))
+            return Object::toString;
+        final ObjectMapper mapper = objectMapper;
+        if (type.isEnum())
+            return value -> ((Enum<?>) value).name();
+        return value -> mapper.convertValue(value, String.class);
+    }
+
+    // converters are also cached along with the resolved property paths
+    private void invalidate() {
+        resolved.clear();
+        resolvedFormats.clear();
+        PropertyPathCache.getInstance().clear();
+    }
+
+    private void add(Class<?> type, Function<String, Object> converter) {
+        converters.put(type, converter);
+    }
+
+    private void add(Class<?> type, Class<?> primitiveType, Function<String, Object> converter) {
+        converters.put(type, converter);
+        converters.put(primitiveType, converter);
+    }
+}
@@ -27,11 +27,33 @@ public enum PredicateOperator implements Operator {
     LIKE_IC(Ops.LIKE_IC),
     LIKE_ESCAPE(Ops.LIKE_ESCAPE),
     LIKE_ESCAPE_IC(Ops.LIKE_ESCAPE_IC),
+    // full-text search, rendered by the TextSearchDialect of the QueryOptions
+    FTS(TextOps.FULL_TEXT),
+    // case-insensitive prefix. A prefix 'like' on the normalized property if there is one (see QueryOptions.Builder.normalize),
+    // otherwise the same as STARTS_WITH_IC
+    PREFIX_IC(Ops.STARTS_WITH_IC),
 
     IN(Ops.IN, OpType.LIST),
     NOT_IN(Ops.NOT_IN, OpType.LIST)
     ;
 
+    // operators grouped by the length of their name, for a case-insensitive lookup without allocations
+    private static final PredicateOperator[][] BY_LENGTH;
+
+    static {
+        int maxLength = 0;
+        for (PredicateOperator op : values())
+            maxLength = Math.max(maxLength, op.name().length());
+        final int[] counts = new int[maxLength + 1];
+        for (PredicateOperator op : values())
+            counts[op.name().length()]++;
+        BY_LENGTH = new PredicateOperator[maxLength + 1][];
+        for (int i = 0; i <= maxLength; i++)
+            BY_LENGTH[i] = new PredicateOperator[counts[i]];
+        for (PredicateOperator op : values())
+            BY_LENGTH[op.name().length()][--counts[op.name().length()]] = op;
+    }
+
     private final Operator operator;
     private final OpType opType;
 
@@ -45,6 +67,18 @@ public enum PredicateOperator implements Operator {
         this.opType = opType;
     }
 
+    // the operator named input[start, end), ignoring case (e.g. 'not_in' or 'NOT_IN'), or null
+    public static PredicateOperator lookup(String input, int start, int end) {
+        final int length = end - start;
+        if (length <= 0 || length >= BY_LENGTH.length)
+            return null;
+        for (PredicateOperator op : BY_LENGTH[length]) {
+            if (op.name().regionMatches(true, 0, input, start, length))
+                return op;
+        }
+        return null;
+    }
+
     public Operator getOperator() {
         return operator;
     }
@@ -0,0 +1,13 @@
+package com.snourian.micronaut.querydsl.expression.operator;
+
+import com.querydsl.core.types.Operator;
+
+// Operators without a template in the QueryDSL serializers. Their predicates are built with a TextSearchDialect
+public enum TextOps implements Operator {
+    FULL_TEXT;
+
+    @Override
+    public Class<?> getType() {
+        return Boolean.class;
+    }
+}
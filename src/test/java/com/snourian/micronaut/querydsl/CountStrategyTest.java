@@ -0,0 +1,138 @@
+package com.snourian.micronaut.querydsl;
+
+import com.snourian.micronaut.querydsl.model.Employee;
+import io.micronaut.data.model.Page;
+import io.micronaut.data.model.Pageable;
+import io.micronaut.data.model.Sort;
+import org.junit.jupiter.api.*;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// employees 1 to 10, with a score of 10 * id. Full pages which are not the first one need a count query
+class CountStrategyTest {
+
+    private static EntityManagerFactory factory;
+    private EntityManager em;
+
+    @BeforeAll
+    static void createDatabase() {
+        factory = Persistence.createEntityManagerFactory("primary");
+        final EntityManager em = factory.createEntityManager();
+        em.getTransaction().begin();
+        for (long id = 1; id <= 10; id++)
+            em.persist(employee(id));
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    private static Employee employee(long id) {
+        final Employee employee = new Employee();
+        employee.setId(id);
+        employee.setName("employee" + id);
+        employee.setScore((int) id * 10);
+        return employee;
+    }
+
+    @AfterAll
+    static void closeDatabase() {
+        factory.close();
+    }
+
+    @BeforeEach
+    void open() {
+        em = factory.createEntityManager();
+    }
+
+    @AfterEach
+    void close() {
+        em.close();
+    }
+
+    @Test
+    void cappedCountAboveTheCap() {
+        final TestRepository<Employee> repository = repository(CountStrategy.capped(5));
+        final CappedPage<Employee> first = capped(repository.findAll(params(Map.of()), page(0)));
+        assertEquals(2, first.getContent().size());
+        assertEquals(6, first.getTotalSize());
+        assertEquals(5, first.getCap());
+        assertTrue(first.isCapped());
+        // the count of cap + 1 rows is less than the rows up to a later page
+        final CappedPage<Employee> later = capped(repository.findAll(params(Map.of()), page(3)));
+        assertEquals(9, later.getTotalSize());
+        assertTrue(later.isCapped());
+        assertEquals(6, repository.count(params(Map.of())));
+    }
+
+    @Test
+    void cappedCountBelowTheCapIsExact() {
+        final TestRepository<Employee> repository = repository(CountStrategy.capped(5));
+        final CappedPage<Employee> page = capped(repository.findAll(params(Map.of("score", "gt(60)")), page(1)));
+        assertEquals(4, page.getTotalSize());
+        assertFalse(page.isCapped());
+        assertEquals(10, capped(repository(CountStrategy.capped(10)).findAll(params(Map.of()), page(1)))
+                .getTotalSize());
+    }
+
+    @Test
+    void cachedCountIsSharedByThePagesAndSortsOfTheQuery() {
+        final QueryResultCache cache = new QueryResultCache(16, Duration.ofHours(1));
+        final TestRepository<Employee> repository = repository(CountStrategy.cached(cache));
+        assertEquals(10, repository.findAll(params(Map.of()), page(0)).getTotalSize());
+        assertEquals(10, repository.findAll(params(Map.of()),
+                Pageable.from(1, 2, Sort.of(Sort.Order.desc("score")))).getTotalSize());
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        // other values have their own count
+        assertEquals(4, repository.findAll(params(Map.of("score", "gt(60)")), page(1)).getTotalSize());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void cachedCountIsInvalidatedByAChange() {
+        final QueryResultCache cache = new QueryResultCache(16, Duration.ofHours(1));
+        final TestRepository<Employee> repository = repository(CountStrategy.cached(cache));
+        assertEquals(10, repository.findAll(params(Map.of()), page(0)).getTotalSize());
+        em.getTransaction().begin();
+        em.persist(employee(11));
+        em.getTransaction().commit();
+        try {
+            // the primary unit has no EntityChangeTracker: the count is stale until the change is reported
+            assertEquals(10, repository.findAll(params(Map.of()), page(0)).getTotalSize());
+            EntityChangeTracker.changed(Employee.class);
+            assertEquals(11, repository.findAll(params(Map.of()), page(0)).getTotalSize());
+        } finally {
+            em.getTransaction().begin();
+            em.remove(em.find(Employee.class, 11L));
+            em.getTransaction().commit();
+        }
+    }
+
+    @Test
+    void sameTtlSharesTheCache() {
+        assertSame(CountStrategy.cached(Duration.ofMinutes(1)), CountStrategy.cached(Duration.ofMinutes(1)));
+        assertNotSame(CountStrategy.cached(Duration.ofMinutes(1)), CountStrategy.cached(Duration.ofMinutes(2)));
+    }
+
+    private TestRepository<Employee> repository(CountStrategy strategy) {
+        return new TestRepository<>(em, Employee.class, QueryOptions.builder().countStrategy(strategy).build());
+    }
+
+    private static CappedPage<Employee> capped(Page<Employee> page) {
+        return assertInstanceOf(CappedPage.class, page);
+    }
+
+    private static Pageable page(int number) {
+        return Pageable.from(number, 2, Sort.of(Sort.Order.asc("id")));
+    }
+
+    private static QueryParameters params(Map<String, String> params) {
+        return new QueryParameters(params);
+    }
+}
@@ -0,0 +1,129 @@
+package com.snourian.micronaut.querydsl;
+
+import com.snourian.micronaut.querydsl.model.Department;
+import com.snourian.micronaut.querydsl.model.Employee;
+import com.snourian.micronaut.querydsl.model.Rank;
+import io.micronaut.data.model.Pageable;
+import io.micronaut.data.model.Sort;
+import org.junit.jupiter.api.*;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// department 1: a manager with a low score and a staff with a high score
+// department 2: two managers with high scores
+// department 3: a staff with a low score
+class ExistsSubqueryTest {
+
+    private static final QueryOptions EXISTS = QueryOptions.builder().joinStrategy(JoinStrategy.EXISTS).build();
+
+    private static EntityManagerFactory factory;
+    private EntityManager em;
+
+    @BeforeAll
+    static void createDatabase() {
+        factory = Persistence.createEntityManagerFactory("primary");
+        final EntityManager em = factory.createEntityManager();
+        em.getTransaction().begin();
+        final Department research = department(em, 1L, "Research");
+        final Department sales = department(em, 2L, "Sales");
+        final Department support = department(em, 3L, "Support");
+        employee(em, 1L, research, Rank.Manager, 60);
+        employee(em, 2L, research, Rank.Staff, 90);
+        employee(em, 3L, sales, Rank.Manager, 90);
+        employee(em, 4L, sales, Rank.Manager, 95);
+        employee(em, 5L, support, Rank.Staff, 50);
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    private static Department department(EntityManager em, long id, String name) {
+        final Department department = new Department();
+        department.setId(id);
+        department.setName(name);
+        em.persist(department);
+        return department;
+    }
+
+    private static void employee(EntityManager em, long id, Department department, Rank rank, int score) {
+        final Employee employee = new Employee();
+        employee.setId(id);
+        employee.setName("employee" + id);
+        employee.setDepartment(department);
+        employee.setRank(rank);
+        employee.setScore(score);
+        em.persist(employee);
+    }
+
+    @AfterAll
+    static void closeDatabase() {
+        factory.close();
+    }
+
+    @BeforeEach
+    void open() {
+        em = factory.createEntityManager();
+    }
+
+    @AfterEach
+    void close() {
+        em.close();
+    }
+
+    @Test
+    void predicatesOnACollectionMatchTheSameElement() {
+        final Map<String, String> params = Map.of("employees.rank", "eq(Manager)", "employees.score", "gt(80)");
+        // department 1 has a manager and a score above 80, but not in the same employee
+        assertEquals(List.of(2L), ids(EXISTS, params));
+        // the join returns department 2 once per matching employee
+        assertEquals(List.of(2L, 2L), ids(QueryOptions.DEFAULT, params));
+    }
+
+    @Test
+    void anyOfMatchesAnyElement() {
+        final Map<String, String> params = Map.of("employees.rank", "eq(Manager)", "employees.score", "gt(80)",
+                "EXPR_TYPE", "anyOf");
+        assertEquals(List.of(1L, 2L), ids(EXISTS, params));
+        assertEquals(List.of(1L, 1L, 2L, 2L), ids(QueryOptions.DEFAULT, params));
+    }
+
+    @Test
+    void nestedGroupHasItsOwnSubquery() {
+        final Map<String, String> params = Map.of("EXPR",
+                "anyOf(allOf(employees.rank=eq(Manager),employees.score=gt(80)),name=eq(Support))");
+        assertEquals(List.of(2L, 3L), ids(EXISTS, params));
+    }
+
+    @Test
+    void groupOnTheSameCollectionMayMatchAnotherElement() {
+        // department 1: the manager and the employee with a score above 80 are different employees
+        assertEquals(List.of(1L, 2L), ids(EXISTS,
+                Map.of("EXPR", "allOf(employees.rank=eq(Manager),anyOf(employees.score=gt(80)))")));
+        assertEquals(List.of(1L, 2L), ids(EXISTS,
+                Map.of("employees.rank", "eq(Manager)", "EXPR", "allOf(employees.score=gt(80))")));
+        assertEquals(List.of(2L), ids(EXISTS,
+                Map.of("EXPR", "allOf(employees.rank=eq(Manager),employees.score=gt(80))")));
+    }
+
+    @Test
+    void countCountsDepartments() {
+        final QueryParameters params = new QueryParameters(Map.of("employees.score", "gt(80)"));
+        final Pageable pageable = Pageable.from(0, 10, Sort.of(Sort.Order.asc("id")));
+        assertEquals(2, new TestRepository<>(em, Department.class, EXISTS).findAll(params, pageable).getTotalSize());
+        assertEquals(2, new TestRepository<>(em, Department.class, EXISTS).count(params));
+    }
+
+    private List<Long> ids(QueryOptions options, Map<String, String> params) {
+        return new TestRepository<>(em, Department.class, options)
+                .findAll(new QueryParameters(params), Sort.of(Sort.Order.asc("id")))
+                .stream()
+                .map(Department::getId)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,136 @@
+package com.snourian.micronaut.querydsl;
+
+import com.snourian.micronaut.querydsl.model.Department;
+import com.snourian.micronaut.querydsl.model.Employee;
+import io.micronaut.data.model.Page;
+import io.micronaut.data.model.Pageable;
+import io.micronaut.data.model.Sort;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.*;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.PersistenceUnitUtil;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// departments 1 to 5 with 2 employees each. The statements of every test are counted by the statistics of Hibernate
+class FetchPlanTest {
+
+    private static EntityManagerFactory factory;
+    private static Statistics statistics;
+    private static PersistenceUnitUtil units;
+    private EntityManager em;
+
+    @BeforeAll
+    static void createDatabase() {
+        factory = Persistence.createEntityManagerFactory("primary", Map.of("hibernate.generate_statistics", "true"));
+        statistics = factory.unwrap(SessionFactory.class).getStatistics();
+        units = factory.getPersistenceUnitUtil();
+        final EntityManager em = factory.createEntityManager();
+        em.getTransaction().begin();
+        for (long id = 1; id <= 5; id++) {
+            final Department department = new Department();
+            department.setId(id);
+            department.setName("department" + id);
+            em.persist(department);
+            for (long i = 0; i < 2; i++) {
+                final Employee employee = new Employee();
+                employee.setId(id * 10 + i);
+                employee.setName("employee" + (id * 10 + i));
+                employee.setDepartment(department);
+                em.persist(employee);
+            }
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    @AfterAll
+    static void closeDatabase() {
+        factory.close();
+    }
+
+    @BeforeEach
+    void open() {
+        em = factory.createEntityManager();
+        statistics.clear();
+    }
+
+    @AfterEach
+    void close() {
+        em.close();
+    }
+
+    @Test
+    void collectionsAreLoadedInBatches() {
+        // one query, and one per chunk of 2 departments
+        final List<Department> departments = departments(Map.of("FETCH", "employees"));
+        assertEquals(5, departments.size());
+        assertEquals(4, statistics.getPrepareStatementCount());
+        for (Department department : departments) {
+            assertTrue(units.isLoaded(department, "employees"));
+            assertEquals(2, department.getEmployees().size());
+        }
+        assertEquals(4, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void collectionsOfAPageAreLoadedAfterThePage() {
+        final TestRepository<Department> repository = new TestRepository<>(em, Department.class, QueryOptions.DEFAULT);
+        final Page<Department> page = repository.findAll(new QueryParameters(Map.of("FETCH", "employees")),
+                Pageable.from(1, 2, Sort.of(Sort.Order.asc("id"))));
+        // the collection doesn't multiply the rows of the page
+        assertEquals(2, page.getContent().size());
+        assertEquals(5, page.getTotalSize());
+        assertEquals(3L, page.getContent().get(0).getId());
+        page.getContent().forEach(department -> assertTrue(units.isLoaded(department, "employees")));
+    }
+
+    @Test
+    void toOneRelationsAreFetchJoined() {
+        final List<Employee> employees = employees(Map.of("FETCH", "department"));
+        assertEquals(10, employees.size());
+        for (Employee employee : employees) {
+            assertTrue(units.isLoaded(employee, "department"));
+            assertTrue(units.isLoaded(employee.getDepartment()));
+        }
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void joinOfTheFilterIsFetched() {
+        final List<Employee> employees = employees(Map.of("department.name", "eq(department2)", "FETCH", "department"));
+        assertEquals(2, employees.size());
+        employees.forEach(employee -> assertTrue(units.isLoaded(employee.getDepartment())));
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void relationsAreLazyWithoutAFetchPlan() {
+        final List<Employee> employees = employees(Map.of());
+        employees.forEach(employee -> assertFalse(units.isLoaded(employee.getDepartment())));
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void unknownRelationsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> employees(Map.of("FETCH", "manager")));
+        assertThrows(IllegalArgumentException.class, () -> FetchPlan.of(Department.class, "employees.unknown"));
+    }
+
+    private List<Department> departments(Map<String, String> params) {
+        final QueryOptions options = QueryOptions.builder().inListChunkSize(2).build();
+        return new TestRepository<>(em, Department.class, options)
+                .findAll(new QueryParameters(params), Sort.of(Sort.Order.asc("id")));
+    }
+
+    private List<Employee> employees(Map<String, String> params) {
+        return new TestRepository<>(em, Employee.class, QueryOptions.DEFAULT)
+                .findAll(new QueryParameters(params), Sort.of(Sort.Order.asc("id")));
+    }
+}
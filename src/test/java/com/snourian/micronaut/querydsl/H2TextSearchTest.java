@@ -0,0 +1,121 @@
+package com.snourian.micronaut.querydsl;
+
+import com.snourian.micronaut.querydsl.model.Employee;
+import io.micronaut.data.model.Sort;
+import org.hibernate.Session;
+import org.junit.jupiter.api.*;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class H2TextSearchTest {
+
+    private static final List<String> NAMES = List.of("Bruce Wayne", "Thomas Wayne", "Dick Grayson", "bruno_diaz");
+
+    private static EntityManagerFactory factory;
+    private EntityManager em;
+
+    @BeforeAll
+    static void createDatabase() {
+        factory = Persistence.createEntityManagerFactory("search");
+        final EntityManager em = factory.createEntityManager();
+        em.getTransaction().begin();
+        em.unwrap(Session.class).doWork(H2TextSearch::install);
+        long id = 1;
+        for (String name : NAMES) {
+            final Employee employee = new Employee();
+            employee.setId(id++);
+            employee.setName(name);
+            em.persist(employee);
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    @AfterAll
+    static void closeDatabase() {
+        factory.close();
+    }
+
+    @BeforeEach
+    void open() {
+        em = factory.createEntityManager();
+    }
+
+    @AfterEach
+    void close() {
+        em.close();
+    }
+
+    @Test
+    void matchesEveryWordIgnoringCase() {
+        assertTrue(H2TextSearch.matches("The Dark Knight, Gotham", "knight gotham"));
+        assertTrue(H2TextSearch.matches("Wayne-Enterprises", "ENTERPRISES"));
+        assertFalse(H2TextSearch.matches("The Dark Knight", "knight gotham"));
+        assertFalse(H2TextSearch.matches("Knights", "knight"));
+        assertFalse(H2TextSearch.matches("anything", " , "));
+        assertFalse(H2TextSearch.matches(null, "knight"));
+    }
+
+    @Test
+    void fullText() {
+        assertEquals(List.of("Bruce Wayne", "Thomas Wayne"), names(QueryOptions.DEFAULT, "fts(wayne)"));
+        assertEquals(List.of("Bruce Wayne"), names(QueryOptions.DEFAULT, "fts(WAYNE bruce)"));
+        assertEquals(List.of(), names(QueryOptions.DEFAULT, "fts(bruce grayson)"));
+    }
+
+    @Test
+    void prefixWithoutNormalizedProperty() {
+        assertEquals(List.of("Bruce Wayne", "bruno_diaz"), names(QueryOptions.DEFAULT, "prefix_ic(BRU)"));
+    }
+
+    @Test
+    void prefixOnNormalizedProperty() {
+        final QueryOptions options = QueryOptions.builder().normalize(Employee.class, "name", "nameNormalized").build();
+        assertEquals(List.of("Bruce Wayne", "bruno_diaz"), names(options, "prefix_ic(BRU)"));
+        assertEquals(List.of("Thomas Wayne"), names(options, "prefix_ic(thomas w)"));
+        // wildcards of the prefix are matched literally
+        assertEquals(List.of("bruno_diaz"), names(options, "prefix_ic(bruno_)"));
+        assertEquals(List.of(), names(options, "prefix_ic(bruc_)"));
+        assertEquals(List.of(), names(options, "prefix_ic(%)"));
+    }
+
+    private List<String> names(QueryOptions options, String nameFilter) {
+        final EmployeeRepository repository = new EmployeeRepository(em, options);
+        return repository.findAll(new QueryParameters(Map.of("name", nameFilter)), Sort.of(Sort.Order.asc("id")))
+                .stream()
+                .map(Employee::getName)
+                .collect(Collectors.toList());
+    }
+
+    private static class EmployeeRepository implements QuerydslPredicateExecutor<Employee> {
+        private final EntityManager em;
+        private final QueryOptions options;
+
+        private EmployeeRepository(EntityManager em, QueryOptions options) {
+            this.em = em;
+            this.options = options;
+        }
+
+        @Override
+        public EntityManager getEntityManager() {
+            return em;
+        }
+
+        @Override
+        public Class<Employee> getEntityClass() {
+            return Employee.class;
+        }
+
+        @Override
+        public QueryOptions getQueryOptions() {
+            return options;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.snourian.micronaut.querydsl;
+
+import com.snourian.micronaut.querydsl.expression.ExpressionFactory;
+import com.snourian.micronaut.querydsl.expression.PredicateParseException;
+import com.snourian.micronaut.querydsl.model.Employee;
+import io.micronaut.data.model.Sort;
+import org.junit.jupiter.api.*;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// the queries run on employees 1 to 7, with lists split into chunks of 2 values
+class InListTest {
+
+    private static EntityManagerFactory factory;
+    private EntityManager em;
+
+    @BeforeAll
+    static void createDatabase() {
+        factory = Persistence.createEntityManagerFactory("primary");
+        final EntityManager em = factory.createEntityManager();
+        em.getTransaction().begin();
+        for (long id = 1; id <= 7; id++) {
+            final Employee employee = new Employee();
+            employee.setId(id);
+            employee.setName("employee" + id);
+            em.persist(employee);
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    @AfterAll
+    static void closeDatabase() {
+        factory.close();
+    }
+
+    @BeforeEach
+    void open() {
+        em = factory.createEntityManager();
+    }
+
+    @AfterEach
+    void close() {
+        em.close();
+    }
+
+    @Test
+    void emptyInIsRejected() {
+        final PredicateParseException e = assertThrows(PredicateParseException.class,
+                () -> ExpressionFactory.createFromParams(Employee.class, Map.of("id", "in()")));
+        assertEquals("empty list of values", e.getReason());
+        assertEquals(3, e.getPosition());
+    }
+
+    @Test
+    void emptyNotInIsRejected() {
+        final PredicateParseException e = assertThrows(PredicateParseException.class,
+                () -> ExpressionFactory.createFromParams(Employee.class, Map.of("id", "NOT_IN()")));
+        assertEquals("empty list of values", e.getReason());
+    }
+
+    @Test
+    void paddedToAPowerOfTwoUpToTheChunkSize() {
+        assertEquals(1, QuerydslPredicateBuilder.paddedListSize(1, true, 1000));
+        assertEquals(2, QuerydslPredicateBuilder.paddedListSize(2, true, 1000));
+        assertEquals(4, QuerydslPredicateBuilder.paddedListSize(3, true, 1000));
+        assertEquals(4, QuerydslPredicateBuilder.paddedListSize(4, true, 1000));
+        assertEquals(8, QuerydslPredicateBuilder.paddedListSize(5, true, 1000));
+        assertEquals(512, QuerydslPredicateBuilder.paddedListSize(512, true, 1000));
+        // the next power of two (1024) is above the chunk size
+        assertEquals(1000, QuerydslPredicateBuilder.paddedListSize(513, true, 1000));
+        assertEquals(1000, QuerydslPredicateBuilder.paddedListSize(1000, true, 1000));
+    }
+
+    @Test
+    void paddedToChunksAboveTheChunkSize() {
+        assertEquals(2000, QuerydslPredicateBuilder.paddedListSize(1001, true, 1000));
+        assertEquals(2000, QuerydslPredicateBuilder.paddedListSize(1500, true, 1000));
+        assertEquals(2000, QuerydslPredicateBuilder.paddedListSize(2000, true, 1000));
+        assertEquals(3000, QuerydslPredicateBuilder.paddedListSize(2001, true, 1000));
+        assertEquals(6, QuerydslPredicateBuilder.paddedListSize(5, true, 2));
+    }
+
+    @Test
+    void notPaddedWithoutPadding() {
+        assertEquals(3, QuerydslPredicateBuilder.paddedListSize(3, false, 1000));
+        assertEquals(1500, QuerydslPredicateBuilder.paddedListSize(1500, false, 1000));
+    }
+
+    @Test
+    void inAroundTheChunkBoundaries() {
+        for (boolean padding : new boolean[]{true, false}) {
+            final TestRepository<Employee> repository = repository(padding);
+            assertEquals(List.of(2L), ids(repository, "in(2)"));
+            assertEquals(List.of(1L, 2L), ids(repository, "in(1,2)"));
+            assertEquals(List.of(1L, 2L, 3L), ids(repository, "in(3,2,1)"));
+            assertEquals(List.of(1L, 2L, 3L, 4L, 5L), ids(repository, "in(1,2,3,4,5)"));
+            // duplicates and missing values
+            assertEquals(List.of(1L, 4L, 7L), ids(repository, "in(7,1,1,4,9)"));
+        }
+    }
+
+    @Test
+    void notInAroundTheChunkBoundaries() {
+        for (boolean padding : new boolean[]{true, false}) {
+            final TestRepository<Employee> repository = repository(padding);
+            assertEquals(List.of(1L, 3L, 4L, 5L, 6L, 7L), ids(repository, "not_in(2)"));
+            assertEquals(List.of(3L, 4L, 5L, 6L, 7L), ids(repository, "not_in(1,2)"));
+            assertEquals(List.of(4L, 5L, 6L, 7L), ids(repository, "not_in(3,2,1)"));
+            assertEquals(List.of(6L, 7L), ids(repository, "not_in(1,2,3,4,5)"));
+            assertEquals(List.of(2L, 3L, 5L, 6L), ids(repository, "not_in(7,1,1,4,9)"));
+        }
+    }
+
+    private TestRepository<Employee> repository(boolean padding) {
+        return new TestRepository<>(em, Employee.class, QueryOptions.builder()
+                .inListPadding(padding)
+                .inListChunkSize(2)
+                .build());
+    }
+
+    private static List<Long> ids(TestRepository<Employee> repository, String predicate) {
+        return repository.findAll(new QueryParameters(Map.of("id", predicate)), Sort.of(Sort.Order.asc("id")))
+                .stream()
+                .map(Employee::getId)
+                .collect(Collectors.toList());
+    }
+}
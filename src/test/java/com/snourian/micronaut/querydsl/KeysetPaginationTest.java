@@ -0,0 +1,173 @@
+package com.snourian.micronaut.querydsl;
+
+import com.querydsl.core.types.OrderSpecifier;
+import com.snourian.micronaut.querydsl.model.Employee;
+import io.micronaut.data.model.Pageable;
+import io.micronaut.data.model.Sort;
+import org.junit.jupiter.api.*;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// every order is walked page by page, forward to the last page and back to the first one
+class KeysetPaginationTest {
+
+    private static final String[] NAMES = {"alice", "Bo:b", null, "carol", "ALICE", null};
+    private static final Integer[] SCORES = {10, null, 30, 20, null, 30};
+    private static final String[] SALARIES = {"2.50", "1.25", "3.00", "2.5", "0.75", "4"};
+    private static final String[] HIRED = {"2020-03-01", "2019-12-31", "2021-07-15", "2020-01-01", "2018-05-20",
+            "2022-02-28"};
+
+    private static EntityManagerFactory factory;
+    private EntityManager em;
+
+    @BeforeAll
+    static void createDatabase() {
+        factory = Persistence.createEntityManagerFactory("primary");
+        final EntityManager em = factory.createEntityManager();
+        em.getTransaction().begin();
+        for (int i = 0; i < NAMES.length; i++) {
+            final Employee employee = new Employee();
+            employee.setId(i + 1L);
+            employee.setName(NAMES[i]);
+            employee.setScore(SCORES[i]);
+            employee.setSalary(new BigDecimal(SALARIES[i]));
+            employee.setHired(LocalDate.parse(HIRED[i]));
+            em.persist(employee);
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    @AfterAll
+    static void closeDatabase() {
+        factory.close();
+    }
+
+    @BeforeEach
+    void open() {
+        em = factory.createEntityManager();
+    }
+
+    @AfterEach
+    void close() {
+        em.close();
+    }
+
+    @Test
+    void ignoreCaseComparesLowerCaseValues() {
+        final Sort sort = Sort.of(new Sort.Order("name", Sort.Order.Direction.ASC, true));
+        assertPages(QueryOptions.DEFAULT, sort, List.of(List.of(1L, 5L), List.of(2L, 4L), List.of(3L, 6L)));
+    }
+
+    @Test
+    void nullsAreLastAscendingByDefault() {
+        assertPages(QueryOptions.DEFAULT, Sort.of(Sort.Order.asc("score")),
+                List.of(List.of(1L, 4L), List.of(3L, 6L), List.of(2L, 5L)));
+    }
+
+    @Test
+    void nullsAreFirstDescendingByDefault() {
+        assertPages(QueryOptions.DEFAULT, Sort.of(Sort.Order.desc("score")),
+                List.of(List.of(5L, 2L), List.of(6L, 3L), List.of(4L, 1L)));
+    }
+
+    @Test
+    void nullHandlingOfTheOptions() {
+        final QueryOptions nullsFirst = QueryOptions.builder().nullHandling(OrderSpecifier.NullHandling.NullsFirst).build();
+        assertPages(nullsFirst, Sort.of(Sort.Order.asc("score")),
+                List.of(List.of(2L, 5L), List.of(1L, 4L), List.of(3L, 6L)));
+        final QueryOptions nullsLast = QueryOptions.builder().nullHandling(OrderSpecifier.NullHandling.NullsLast).build();
+        assertPages(nullsLast, Sort.of(Sort.Order.desc("score")),
+                List.of(List.of(6L, 3L), List.of(4L, 1L), List.of(5L, 2L)));
+    }
+
+    @Test
+    void primaryKeyBreaksTies() {
+        // pages of one row split the equal scores (and nulls) 3/6 and 2/5
+        final TestRepository<Employee> repository = new TestRepository<>(em, Employee.class, QueryOptions.DEFAULT);
+        final Pageable pageable = Pageable.from(0, 1, Sort.of(Sort.Order.asc("score")));
+        final List<Long> ids = new ArrayList<>();
+        CursorPage<Employee> page = repository.findAllByCursor(new QueryParameters(Map.of()), pageable, null);
+        ids.addAll(ids(page));
+        while (page.hasNext()) {
+            page = repository.findAllByCursor(new QueryParameters(Map.of()), pageable, page.getNextCursor());
+            ids.addAll(ids(page));
+        }
+        assertEquals(List.of(1L, 4L, 3L, 6L, 2L, 5L), ids);
+    }
+
+    @Test
+    void cursorsRoundTripTheirValues() {
+        // equal BigDecimals (2.50 and 2.5), dates, and strings with the separator of the cursor
+        assertPages(QueryOptions.DEFAULT, Sort.of(Sort.Order.desc("salary")),
+                List.of(List.of(6L, 3L), List.of(4L, 1L), List.of(2L, 5L)));
+        assertPages(QueryOptions.DEFAULT, Sort.of(Sort.Order.asc("hired")),
+                List.of(List.of(5L, 2L), List.of(4L, 1L), List.of(3L, 6L)));
+        assertPages(QueryOptions.DEFAULT, Sort.of(Sort.Order.desc("name"), Sort.Order.asc("score")),
+                List.of(List.of(3L, 6L), List.of(4L, 1L), List.of(2L, 5L)));
+    }
+
+    @Test
+    void emptyPageLeadsBack() {
+        final TestRepository<Employee> repository = new TestRepository<>(em, Employee.class, QueryOptions.DEFAULT);
+        final Pageable pageable = Pageable.from(0, 2, Sort.of(Sort.Order.asc("score")));
+        final String next = repository.findAllByCursor(new QueryParameters(Map.of()), pageable, null).getNextCursor();
+        // no row with a score < 25 after the second row (id 4, score 20)
+        final QueryParameters lowScores = new QueryParameters(Map.of("score", "lt(25)"));
+        final CursorPage<Employee> empty = repository.findAllByCursor(lowScores, pageable, next);
+        assertTrue(empty.getContent().isEmpty());
+        assertNull(empty.getNextCursor());
+        final CursorPage<Employee> back = repository.findAllByCursor(lowScores, pageable, empty.getPreviousCursor());
+        assertEquals(List.of(1L, 4L), ids(back));
+        assertFalse(back.hasPrevious());
+    }
+
+    @Test
+    void invalidCursorsAreRejected() {
+        final TestRepository<Employee> repository = new TestRepository<>(em, Employee.class, QueryOptions.DEFAULT);
+        final QueryParameters params = new QueryParameters(Map.of());
+        final Pageable byScore = Pageable.from(0, 2, Sort.of(Sort.Order.asc("score")));
+        final String next = repository.findAllByCursor(params, byScore, null).getNextCursor();
+        assertThrows(IllegalArgumentException.class, () -> repository.findAllByCursor(params, byScore, "x%!"));
+        // a cursor of another sort
+        final Pageable byScoreAndName = Pageable.from(0, 2, Sort.of(Sort.Order.asc("score"), Sort.Order.asc("name")));
+        assertThrows(IllegalArgumentException.class, () -> repository.findAllByCursor(params, byScoreAndName, next));
+    }
+
+    private void assertPages(QueryOptions options, Sort sort, List<List<Long>> expected) {
+        final TestRepository<Employee> repository = new TestRepository<>(em, Employee.class, options);
+        final QueryParameters params = new QueryParameters(Map.of());
+        final Pageable pageable = Pageable.from(0, 2, sort);
+        final List<List<Long>> forward = new ArrayList<>();
+        CursorPage<Employee> page = repository.findAllByCursor(params, pageable, null);
+        forward.add(ids(page));
+        while (page.hasNext()) {
+            page = repository.findAllByCursor(params, pageable, page.getNextCursor());
+            forward.add(ids(page));
+        }
+        assertEquals(expected, forward);
+        final List<List<Long>> backward = new ArrayList<>();
+        backward.add(ids(page));
+        while (page.hasPrevious()) {
+            page = repository.findAllByCursor(params, pageable, page.getPreviousCursor());
+            backward.add(ids(page));
+        }
+        Collections.reverse(backward);
+        assertEquals(expected, backward);
+    }
+
+    private static List<Long> ids(CursorPage<Employee> page) {
+        return page.getContent().stream().map(Employee::getId).collect(Collectors.toList());
+    }
+}
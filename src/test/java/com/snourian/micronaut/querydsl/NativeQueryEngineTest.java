@@ -0,0 +1,261 @@
+package com.snourian.micronaut.querydsl;
+
+import com.snourian.micronaut.querydsl.model.*;
+import io.micronaut.data.model.Page;
+import io.micronaut.data.model.Pageable;
+import io.micronaut.data.model.Sort;
+import io.micronaut.data.model.naming.NamingStrategies;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.*;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Rows of the engine are compared with the projections of the JPA executor, on two databases: one with Hibernate's
+// default physical naming (camel case columns, NamingStrategies.Raw) and one with under_score_lower_case names
+// (UnderscoreNamingStrategy, the default NamingStrategy of the engine)
+class NativeQueryEngineTest {
+
+    private static final List<Map<String, String>> FILTERS = List.of(
+            Map.of(),
+            Map.of("nameNormalized", "starts_with(c)"),
+            Map.of("rank", "in(Manager,Chief)"),
+            Map.of("rank", "ne(Staff)", "score", "goe(20)"),
+            Map.of("salary", "between(2,4)"),
+            Map.of("hired", "lt(2021-01-01)"),
+            Map.of("department.name", "eq(Research)"),
+            Map.of("department.location.city", "eq(Berlin)"),
+            Map.of("EXPR", "anyOf(allOf(department.name=eq(Sales),score=gt(40)),rank=eq(Staff))"));
+    private static final Sort BY_DEPARTMENT = Sort.of(Sort.Order.desc("department.name"), Sort.Order.asc("id"));
+
+    private static EntityManagerFactory standardFactory;
+    private static EntityManagerFactory underscoreFactory;
+    private static NativeQueryEngine standardEngine;
+    private static NativeQueryEngine underscoreEngine;
+
+    @BeforeAll
+    static void createDatabases() {
+        standardFactory = Persistence.createEntityManagerFactory("primary");
+        underscoreFactory = Persistence.createEntityManagerFactory("primary", Map.of(
+                "javax.persistence.jdbc.url", "jdbc:h2:mem:underscore;DB_CLOSE_DELAY=-1",
+                "hibernate.physical_naming_strategy", UnderscoreNamingStrategy.class.getName()));
+        insertRows(standardFactory);
+        insertRows(underscoreFactory);
+        standardEngine = new NativeQueryEngine(dataSource("primary"), null, new NamingStrategies.Raw());
+        underscoreEngine = new NativeQueryEngine(dataSource("underscore"));
+    }
+
+    @AfterAll
+    static void closeDatabases() {
+        standardFactory.close();
+        underscoreFactory.close();
+    }
+
+    private static JdbcDataSource dataSource(String database) {
+        final JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("");
+        return dataSource;
+    }
+
+    private static void insertRows(EntityManagerFactory factory) {
+        final EntityManager em = factory.createEntityManager();
+        em.getTransaction().begin();
+        final Department research = department(em, 1L, "Research", "Paris");
+        final Department sales = department(em, 2L, "Sales", "Berlin");
+        employee(em, 1L, "Alice", Rank.Manager, 10, "2.50", "2020-01-01", research);
+        employee(em, 2L, "Bob", Rank.Staff, 20, "1.25", "2019-06-30", research);
+        employee(em, 3L, "carol", Rank.Chief, 30, "4.00", "2021-03-15", sales);
+        employee(em, 4L, "Dave", Rank.Senior, null, null, "2022-11-02", sales);
+        employee(em, 5L, "Eve", Rank.Staff, 50, "3.10", null, null);
+        employee(em, 6L, "Cid", null, 60, "2.00", "2018-08-08", sales);
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    private static Department department(EntityManager em, long id, String name, String city) {
+        final Location location = new Location();
+        location.setCity(city);
+        final Department department = new Department();
+        department.setId(id);
+        department.setName(name);
+        department.setLocation(location);
+        em.persist(department);
+        return department;
+    }
+
+    private static void employee(EntityManager em, long id, String name, Rank rank, Integer score, String salary,
+                                 String hired, Department department) {
+        final Employee employee = new Employee();
+        employee.setId(id);
+        employee.setName(name);
+        employee.setRank(rank);
+        employee.setScore(score);
+        employee.setSalary(salary != null ? new BigDecimal(salary) : null);
+        employee.setHired(hired != null ? LocalDate.parse(hired) : null);
+        employee.setDepartment(department);
+        em.persist(employee);
+    }
+
+    @Test
+    void listsMatchTheJpaExecutor() {
+        for (Map<String, String> filter : FILTERS) {
+            assertSameRows(standardFactory, standardEngine, filter, Sort.of(Sort.Order.asc("id")));
+            assertSameRows(underscoreFactory, underscoreEngine, filter, Sort.of(Sort.Order.asc("id")));
+        }
+    }
+
+    @Test
+    void sortedByAJoinedColumn() {
+        // employee 5 has no department: the join of the sort is a left join
+        final List<Long> ids = List.of(3L, 4L, 6L, 1L, 2L, 5L);
+        assertEquals(ids, assertSameRows(standardFactory, standardEngine, Map.of(), BY_DEPARTMENT));
+        assertEquals(ids, assertSameRows(underscoreFactory, underscoreEngine, Map.of(), BY_DEPARTMENT));
+    }
+
+    @Test
+    void pagesMatchTheJpaExecutor() {
+        for (Map<String, String> filter : FILTERS) {
+            for (int number = 0; number < 3; number++) {
+                final Pageable pageable = Pageable.from(number, 2, BY_DEPARTMENT);
+                assertSamePage(standardFactory, standardEngine, filter, pageable);
+                assertSamePage(underscoreFactory, underscoreEngine, filter, pageable);
+            }
+        }
+    }
+
+    @Test
+    void countQueryHasTheJoinsOfTheFilters() {
+        final Page<EmployeeRow> page = underscoreEngine.findAll(Employee.class,
+                new QueryParameters(Map.of("department.location.city", "eq(Berlin)")),
+                Pageable.from(0, 2, Sort.of(Sort.Order.asc("id"))), EmployeeRow.class);
+        assertEquals(List.of(3L, 4L), page.getContent().stream().map(EmployeeRow::getId).collect(Collectors.toList()));
+        assertEquals(3, page.getTotalSize());
+    }
+
+    @Test
+    void enumsAreReadAndWrittenByName() {
+        final List<EmployeeRow> rows = underscoreEngine.findAll(Employee.class,
+                new QueryParameters(Map.of("rank", "eq(Chief)")), Sort.unsorted(), EmployeeRow.class);
+        assertEquals(1, rows.size());
+        assertEquals(Rank.Chief, rows.get(0).getRank());
+    }
+
+    @Test
+    void namesOfTheStandardAndUnderscoreNamingStrategies() {
+        final SqlEntityMapping underscore = SqlEntityMapping.of(Employee.class,
+                new NamingStrategies.UnderScoreSeparatedLowerCase());
+        final SqlEntityMapping raw = SqlEntityMapping.of(Employee.class, new NamingStrategies.Raw());
+        final SqlEntityMapping department = SqlEntityMapping.of(Department.class, new NamingStrategies.Raw());
+        assertEquals("employee", underscore.getTable());
+        assertEquals("Employee", raw.getTable());
+        assertNull(raw.getSchema());
+        assertEquals("id", raw.getIdColumn());
+        assertEquals("name_normalized", underscore.column(Employee.class, "nameNormalized"));
+        assertEquals("nameNormalized", raw.column(Employee.class, "nameNormalized"));
+        // @Column
+        assertEquals("employee_rank", underscore.column(Employee.class, "rank"));
+        assertEquals("employee_rank", raw.column(Employee.class, "rank"));
+        // the JPA default of a join column: <property>_<id column of the target>
+        assertEquals("department_id", underscore.joinColumn(Employee.class, "department", department));
+        // columns of an embeddable are in the table of its owner, without a prefix
+        assertEquals("city", department.column(Location.class, "city"));
+    }
+
+    @Test
+    void explicitMappings() {
+        final SqlEntityMapping badge = SqlEntityMapping.of(Badge.class, new NamingStrategies.UnderScoreSeparatedLowerCase());
+        assertEquals("hr", badge.getSchema());
+        assertEquals("badges", badge.getTable());
+        final SqlEntityMapping award = SqlEntityMapping.of(Award.class, new NamingStrategies.UnderScoreSeparatedLowerCase());
+        // the name of the entity
+        assertEquals("prize", award.getTable());
+        assertEquals("award_no", award.getIdColumn());
+        assertEquals("winner", award.joinColumn(Award.class, "winner", badge));
+        assertEquals("previous_award_no", award.joinColumn(Award.class, "previous", award));
+        assertThrows(IllegalArgumentException.class, () -> award.joinColumn(Award.class, "holder", badge));
+        assertThrows(IllegalArgumentException.class, () -> award.column(Award.class, "unknown"));
+        assertThrows(IllegalArgumentException.class,
+                () -> SqlEntityMapping.of(Location.class, new NamingStrategies.Raw()));
+    }
+
+    @Test
+    void enumsAreStoredByOrdinalOrName() {
+        final SqlEntityMapping award = SqlEntityMapping.of(Award.class, new NamingStrategies.Raw());
+        assertEquals(2, award.toColumn(Award.class, "rank", Rank.class).apply(Rank.Manager));
+        assertEquals(Rank.Chief, award.fromColumn(Award.class, "rank", Rank.class).apply(3));
+        assertEquals("Senior", award.toColumn(Award.class, "minimumRank", Rank.class).apply(Rank.Senior));
+        assertEquals(Rank.Staff, award.fromColumn(Award.class, "minimumRank", Rank.class).apply("Staff"));
+        assertNull(award.toColumn(Award.class, "rank", Rank.class).apply(null));
+        assertNull(award.fromColumn(Award.class, "minimumRank", Rank.class).apply(null));
+        assertEquals(7, award.toColumn(Award.class, "points", Integer.class).apply(7));
+    }
+
+    // ids of the rows, which are the same as the rows of the JPA executor
+    private static List<Long> assertSameRows(EntityManagerFactory factory, NativeQueryEngine engine,
+                                             Map<String, String> filter, Sort sort) {
+        final EntityManager em = factory.createEntityManager();
+        try {
+            final List<EmployeeRow> expected = new TestRepository<>(em, Employee.class, QueryOptions.DEFAULT)
+                    .findAll(new QueryParameters(filter), sort, EmployeeRow.class);
+            final List<EmployeeRow> rows = engine.findAll(Employee.class, new QueryParameters(filter), sort,
+                    EmployeeRow.class);
+            assertEquals(values(expected), values(rows), filter::toString);
+            return rows.stream().map(EmployeeRow::getId).collect(Collectors.toList());
+        } finally {
+            em.close();
+        }
+    }
+
+    private static void assertSamePage(EntityManagerFactory factory, NativeQueryEngine engine,
+                                       Map<String, String> filter, Pageable pageable) {
+        final EntityManager em = factory.createEntityManager();
+        try {
+            final Page<EmployeeRow> expected = new TestRepository<>(em, Employee.class, QueryOptions.DEFAULT)
+                    .findAll(new QueryParameters(filter), pageable, EmployeeRow.class);
+            final Page<EmployeeRow> page = engine.findAll(Employee.class, new QueryParameters(filter), pageable,
+                    EmployeeRow.class);
+            assertEquals(values(expected.getContent()), values(page.getContent()), filter::toString);
+            assertEquals(expected.getTotalSize(), page.getTotalSize(), filter::toString);
+        } finally {
+            em.close();
+        }
+    }
+
+    private static List<List<Object>> values(List<EmployeeRow> rows) {
+        return rows.stream().map(EmployeeRow::values).collect(Collectors.toList());
+    }
+
+    // only read by SqlEntityMapping, they are not in a persistence unit
+    @Entity
+    @Table(name = "badges", schema = "hr")
+    static class Badge {
+        @Id
+        private Long id;
+    }
+
+    @Entity(name = "Prize")
+    static class Award {
+        @Id
+        @Column(name = "award_no")
+        private Long number;
+        private Rank rank;
+        @Enumerated(EnumType.STRING)
+        private Rank minimumRank;
+        private Integer points;
+        @ManyToOne
+        @JoinColumn(name = "winner")
+        private Badge winner;
+        @ManyToOne
+        private Award previous;
+        @OneToOne(mappedBy = "award")
+        private Badge holder;
+    }
+}
@@ -0,0 +1,61 @@
+package com.snourian.micronaut.querydsl;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionedExportTest {
+
+    // every id of [min, max] is in exactly one of the ranges (-inf, p0), [p0, p1), ..., [pn, +inf), and no range
+    // of [min, max] is empty
+    private static void assertPartitions(long min, long max, int partitions) {
+        final long[] points = PartitionedExport.splitPoints(min, max, partitions);
+        assertEquals(partitions - 1, points.length);
+        long lower = min;
+        for (long point : points) {
+            assertTrue(point > lower, "empty range before " + point);
+            lower = point;
+        }
+        assertTrue(lower <= max, "empty last range from " + lower);
+        for (long id = min; id <= max && max - min < 10_000; id++) {
+            int ranges = 0;
+            for (int i = 0; i <= points.length; i++) {
+                final boolean aboveLower = i == 0 || id >= points[i - 1];
+                final boolean belowUpper = i == points.length || id < points[i];
+                if (aboveLower && belowUpper)
+                    ranges++;
+            }
+            assertEquals(1, ranges, "id " + id);
+        }
+    }
+
+    @Test
+    void rangesHaveNoGapsOrOverlaps() {
+        assertPartitions(1, 1000, 4);
+        assertPartitions(1, 1001, 4);
+        assertPartitions(-500, 499, 7);
+        assertPartitions(0, Long.MAX_VALUE, 16);
+    }
+
+    @Test
+    void smallestSplittableRange() {
+        assertPartitions(10, 14, 4);
+        assertArrayEquals(new long[]{11, 12, 13}, PartitionedExport.splitPoints(10, 14, 4));
+    }
+
+    @Test
+    void fewerIdsThanPartitionsIsOnePartition() {
+        assertEquals(0, PartitionedExport.splitPoints(10, 12, 4).length);
+        assertEquals(0, PartitionedExport.splitPoints(5, 5, 2).length);
+    }
+
+    @Test
+    void onePartition() {
+        assertEquals(0, PartitionedExport.splitPoints(1, 1000, 1).length);
+    }
+
+    @Test
+    void overflowingSpanIsOnePartition() {
+        assertEquals(0, PartitionedExport.splitPoints(Long.MIN_VALUE, Long.MAX_VALUE, 4).length);
+    }
+}
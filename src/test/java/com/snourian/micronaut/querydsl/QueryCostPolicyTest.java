@@ -0,0 +1,176 @@
+package com.snourian.micronaut.querydsl;
+
+import com.snourian.micronaut.querydsl.expression.ExpressionEntries;
+import com.snourian.micronaut.querydsl.expression.ExpressionFactory;
+import com.snourian.micronaut.querydsl.expression.operator.PredicateOperator;
+import com.snourian.micronaut.querydsl.model.Department;
+import com.snourian.micronaut.querydsl.model.Employee;
+import io.micronaut.data.model.Page;
+import io.micronaut.data.model.Pageable;
+import io.micronaut.data.model.Sort;
+import org.junit.jupiter.api.*;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// the queries of the executor run on employees 1 to 5
+class QueryCostPolicyTest {
+
+    private static EntityManagerFactory factory;
+    private EntityManager em;
+
+    @BeforeAll
+    static void createDatabase() {
+        factory = Persistence.createEntityManagerFactory("primary");
+        final EntityManager em = factory.createEntityManager();
+        em.getTransaction().begin();
+        for (long id = 1; id <= 5; id++) {
+            final Employee employee = new Employee();
+            employee.setId(id);
+            employee.setName("employee" + id);
+            employee.setScore((int) id * 10);
+            em.persist(employee);
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    @AfterAll
+    static void closeDatabase() {
+        factory.close();
+    }
+
+    @BeforeEach
+    void open() {
+        em = factory.createEntityManager();
+    }
+
+    @AfterEach
+    void close() {
+        em.close();
+    }
+
+    private static ExpressionEntries entries(Class<?> entity, Map<String, String> params) {
+        return ExpressionFactory.createFromParams(entity, params);
+    }
+
+    private static ExpressionEntries entries(Map<String, String> params) {
+        return entries(Employee.class, params);
+    }
+
+    private static void assertRejected(QueryCostPolicy policy, Class<?> entity, Map<String, String> params,
+                                       Pageable pageable) {
+        final QueryRejectedException e = assertThrows(QueryRejectedException.class,
+                () -> policy.evaluate(entity, entries(entity, params), pageable));
+        assertEquals(0, e.getCost());
+    }
+
+    @Test
+    void unpagedListsAreOnlyLimitedByMaxRows() {
+        final QueryCost pageLimited = QueryCostPolicy.builder().maxPageSize(2).build()
+                .evaluate(Employee.class, entries(Map.of()), Pageable.unpaged());
+        assertEquals(Integer.MAX_VALUE, pageLimited.getMaxRows());
+        assertEquals(List.of(1, 2, 3), pageLimited.checkRows(List.of(1, 2, 3)));
+
+        final QueryCost rowLimited = QueryCostPolicy.builder().maxRows(2).build()
+                .evaluate(Employee.class, entries(Map.of()), Pageable.unpaged());
+        assertEquals(2, rowLimited.getMaxRows());
+        assertEquals(List.of(1, 2), rowLimited.checkRows(List.of(1, 2)));
+        assertThrows(QueryRejectedException.class, () -> rowLimited.checkRows(List.of(1, 2, 3)));
+    }
+
+    @Test
+    void pagesAboveTheLimitsAreRejected() {
+        final QueryCostPolicy policy = QueryCostPolicy.builder().maxPageSize(20).maxOffset(40).build();
+        assertEquals(40, policy.evaluate(Employee.class, entries(Map.of()), Pageable.from(2, 20))
+                .getPageable().getOffset());
+        // a page is never clamped to a smaller size, which would move its offset
+        assertRejected(policy, Employee.class, Map.of(), Pageable.from(0, 21));
+        assertRejected(policy, Employee.class, Map.of(), Pageable.from(3, 20));
+    }
+
+    @Test
+    void hardLimitsOfThePredicates() {
+        final QueryCostPolicy policy = QueryCostPolicy.builder()
+                .maxInValues(3)
+                .maxInValues("score", 5)
+                .denyOperators("name", PredicateOperator.LIKE, PredicateOperator.MATCHES)
+                .build();
+        policy.evaluate(Employee.class, entries(Map.of("id", "in(1,2,3)")), Pageable.unpaged());
+        assertRejected(policy, Employee.class, Map.of("id", "in(1,2,3,4)"), Pageable.unpaged());
+        policy.evaluate(Employee.class, entries(Map.of("score", "in(1,2,3,4,5)")), Pageable.unpaged());
+        assertRejected(policy, Employee.class, Map.of("score", "in(1,2,3,4,5,6)"), Pageable.unpaged());
+        policy.evaluate(Employee.class, entries(Map.of("name", "eq(a)")), Pageable.unpaged());
+        assertRejected(policy, Employee.class, Map.of("name", "like(a%)"), Pageable.unpaged());
+    }
+
+    @Test
+    void joinsAndCollectionDepth() {
+        final Map<String, String> params = Map.of("employees.score", "gt(10)");
+        QueryCostPolicy.builder().maxJoins(1).maxCollectionDepth(1).build()
+                .evaluate(Department.class, entries(Department.class, params), Pageable.unpaged());
+        assertRejected(QueryCostPolicy.builder().maxJoins(0).build(), Department.class, params, Pageable.unpaged());
+        assertRejected(QueryCostPolicy.builder().maxCollectionDepth(0).build(), Department.class, params,
+                Pageable.unpaged());
+    }
+
+    @Test
+    void scoreIsRejectedOrDegraded() {
+        // string_contains weighs 5, and a page of 10 rows 0.1
+        final Map<String, String> params = Map.of("name", "string_contains(ee)");
+        final QueryCost cost = QueryCostPolicy.builder().degradeCost(5).build()
+                .evaluate(Employee.class, entries(params), Pageable.from(0, 10));
+        assertEquals(5.1, cost.getScore(), 1e-9);
+        assertTrue(cost.isDegraded());
+        assertFalse(QueryCostPolicy.builder().degradeCost(5.2).build()
+                .evaluate(Employee.class, entries(params), Pageable.from(0, 10)).isDegraded());
+        final QueryRejectedException e = assertThrows(QueryRejectedException.class,
+                () -> QueryCostPolicy.builder().maxCost(5).build()
+                        .evaluate(Employee.class, entries(params), Pageable.from(0, 10)));
+        assertEquals(5.1, e.getCost(), 1e-9);
+    }
+
+    @Test
+    void policyOfTheEntityOverridesTheDefault() {
+        final QueryCostPolicy policy = QueryCostPolicy.builder()
+                .maxCost(1)
+                .entity(Department.class, QueryCostPolicy.builder().maxCost(10).build())
+                .build();
+        final Map<String, String> params = Map.of("name", "string_contains(a)");
+        assertThrows(QueryRejectedException.class,
+                () -> policy.evaluate(Employee.class, entries(params), Pageable.unpaged()));
+        assertEquals(5, policy.evaluate(Department.class, entries(Department.class, params), Pageable.unpaged())
+                .getScore(), 1e-9);
+    }
+
+    @Test
+    void degradedPagesHaveALowerBoundOfTheTotalSize() {
+        final QueryOptions options = QueryOptions.builder()
+                .costPolicy(QueryCostPolicy.builder().degradeCost(0).build())
+                .build();
+        final TestRepository<Employee> repository = new TestRepository<>(em, Employee.class, options);
+        final QueryParameters params = new QueryParameters(Map.of("score", "gt(0)"));
+        final Page<Employee> first = repository.findAll(params, Pageable.from(0, 2, Sort.of(Sort.Order.asc("id"))));
+        assertEquals(2, first.getContent().size());
+        assertEquals(3, first.getTotalSize());
+        final Page<Employee> last = repository.findAll(params, Pageable.from(2, 2, Sort.of(Sort.Order.asc("id"))));
+        assertEquals(1, last.getContent().size());
+        assertEquals(5, last.getTotalSize());
+    }
+
+    @Test
+    void listsAboveMaxRowsAreRejected() {
+        final QueryOptions options = QueryOptions.builder()
+                .costPolicy(QueryCostPolicy.builder().maxRows(3).maxPageSize(2).build())
+                .build();
+        final TestRepository<Employee> repository = new TestRepository<>(em, Employee.class, options);
+        assertEquals(3, repository.findAll(new QueryParameters(Map.of("score", "goe(30)"))).size());
+        assertThrows(QueryRejectedException.class,
+                () -> repository.findAll(new QueryParameters(Map.of("score", "goe(20)"))));
+    }
+}
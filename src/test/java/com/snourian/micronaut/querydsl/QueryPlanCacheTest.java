@@ -0,0 +1,104 @@
+package com.snourian.micronaut.querydsl;
+
+import com.snourian.micronaut.querydsl.model.Employee;
+import io.micronaut.data.model.Sort;
+import org.junit.jupiter.api.*;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// employees 1 to 5, with a score of 10 * id
+class QueryPlanCacheTest {
+
+    private static EntityManagerFactory factory;
+    private EntityManager em;
+    private QueryPlanCache cache;
+    private TestRepository<Employee> repository;
+
+    @BeforeAll
+    static void createDatabase() {
+        factory = Persistence.createEntityManagerFactory("primary");
+        final EntityManager em = factory.createEntityManager();
+        em.getTransaction().begin();
+        for (long id = 1; id <= 5; id++) {
+            final Employee employee = new Employee();
+            employee.setId(id);
+            employee.setName("employee" + id);
+            employee.setScore((int) id * 10);
+            em.persist(employee);
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    @AfterAll
+    static void closeDatabase() {
+        factory.close();
+    }
+
+    @BeforeEach
+    void open() {
+        em = factory.createEntityManager();
+        cache = new QueryPlanCache(16);
+        repository = new TestRepository<>(em, Employee.class, QueryOptions.DEFAULT) {
+            @Override
+            public QueryPlanCache getQueryPlanCache() {
+                return cache;
+            }
+        };
+    }
+
+    @AfterEach
+    void close() {
+        em.close();
+    }
+
+    @Test
+    void sameShapeReusesThePlanAndBindsTheValues() {
+        assertEquals(List.of(3L, 4L, 5L), ids(Map.of("score", "gt(20)")));
+        assertEquals(List.of(5L), ids(Map.of("score", "gt(40)")));
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void everyShapeHasItsOwnPlan() {
+        assertEquals(List.of(3L, 4L, 5L), ids(Map.of("score", "gt(20)")));
+        assertEquals(List.of(1L, 2L), ids(Map.of("score", "lt(30)")));
+        assertEquals(List.of(2L), ids(Map.of("score", "gt(10)", "name", "eq(employee2)")));
+        assertEquals(3, cache.size());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    void paddedListsShareAPlan() {
+        // 3 and 4 values are both padded to 4
+        assertEquals(List.of(1L, 2L, 3L), ids(Map.of("id", "in(1,2,3)")));
+        assertEquals(List.of(2L, 3L, 4L, 5L), ids(Map.of("id", "in(5,4,3,2)")));
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void shapesWithUnboundValuesAreNotCached() {
+        assertEquals(List.of(3L), ids(Map.of("name", "string_contains_ic(YEE3)")));
+        assertEquals(List.of(4L), ids(Map.of("name", "string_contains_ic(yee4)")));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    private List<Long> ids(Map<String, String> params) {
+        return repository.findAll(new QueryParameters(params), Sort.of(Sort.Order.asc("id")))
+                .stream()
+                .map(Employee::getId)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,124 @@
+package com.snourian.micronaut.querydsl;
+
+import com.snourian.micronaut.querydsl.expression.ExpressionEntries;
+import com.snourian.micronaut.querydsl.expression.ExpressionFactory;
+import com.snourian.micronaut.querydsl.model.Department;
+import com.snourian.micronaut.querydsl.model.Employee;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryProfilerTest {
+
+    private QueryProfiler profiler;
+
+    @AfterEach
+    void close() {
+        if (profiler != null)
+            profiler.close();
+    }
+
+    @Test
+    void mostFrequentShapesFirst() {
+        profiler = new QueryProfiler(3);
+        query("score=gt(1)", 3, 10);
+        query("name=eq(a)", 2, 20);
+        query("rank=eq(Manager)", 1, 30);
+        final List<QueryProfile> profiles = profiler.getProfiles();
+        assertEquals(List.of(3L, 2L, 1L), profiles.stream().map(QueryProfile::getCount).collect(Collectors.toList()));
+        profiles.forEach(profile -> assertEquals(0, profile.getError()));
+        assertEquals(10, profiles.get(0).getAverageRows());
+        assertEquals("Employee", profiles.get(0).getEntity());
+        assertEquals(List.of("Employee(score)"), profiles.get(0).getSuggestedIndexes());
+    }
+
+    @Test
+    void newShapeReplacesTheLeastFrequentOne() {
+        profiler = new QueryProfiler(2);
+        query("score=gt(1)", 3, 1);
+        query("name=eq(a)", 1, 1);
+        query("rank=eq(Manager)", 1, 1);
+        Map<String, QueryProfile> profiles = profilesByShape();
+        assertEquals(2, profiles.size());
+        assertEquals(3, profiles.get(shape("score=gt(1)")).getCount());
+        // inherits the count of name=eq(a)
+        assertEquals(2, profiles.get(shape("rank=eq(Manager)")).getCount());
+        assertEquals(1, profiles.get(shape("rank=eq(Manager)")).getError());
+        query("hired=lt(2020-01-01)", 1, 1);
+        profiles = profilesByShape();
+        assertEquals(3, profiles.get(shape("score=gt(1)")).getCount());
+        assertEquals(3, profiles.get(shape("hired=lt(2020-01-01)")).getCount());
+        assertEquals(2, profiles.get(shape("hired=lt(2020-01-01)")).getError());
+        // the replaced shape starts again from the smallest count
+        query("name=eq(a)", 1, 1);
+        assertEquals(4, profilesByShape().get(shape("name=eq(a)")).getCount());
+    }
+
+    @Test
+    void resetForgetsTheShapes() {
+        profiler = new QueryProfiler(2);
+        query("score=gt(1)", 2, 1);
+        profiler.reset();
+        assertTrue(profiler.getProfiles().isEmpty());
+        query("score=gt(1)", 1, 1);
+        assertEquals(1, profiler.getProfiles().get(0).getCount());
+    }
+
+    @Test
+    void equalityColumnsBeforeOneRangeColumn() {
+        assertEquals(List.of("Employee(name, rank, score)"),
+                indexes(Employee.class, "allOf(score=gt(1),name=eq(a),rank=in(Manager,Chief))"));
+        assertEquals(List.of("Employee(score)"),
+                indexes(Employee.class, "allOf(score=gt(1),hired=lt(2020-01-01))"));
+    }
+
+    @Test
+    void oneIndexPerTable() {
+        assertEquals(List.of("Department(name, location.city)", "Employee(rank, score)"),
+                indexes(Department.class,
+                        "allOf(name=eq(a),employees.score=goe(10),location.city=eq(Paris),employees.rank=eq(Manager))"));
+    }
+
+    @Test
+    void predicatesUnderAnyOfAreIgnored() {
+        assertEquals(List.of(), indexes(Employee.class, "anyOf(name=eq(a),score=gt(1))"));
+        assertEquals(List.of("Employee(rank)"),
+                indexes(Employee.class, "allOf(rank=eq(Staff),anyOf(name=eq(a),score=gt(1)))"));
+        // operators which can't use the index
+        assertEquals(List.of(), indexes(Employee.class, "allOf(name=string_contains(a),score=ne(1))"));
+    }
+
+    private void query(String expr, int times, long rows) {
+        for (int i = 0; i < times; i++) {
+            final ExpressionEntries entries = entries(Employee.class, expr);
+            final QueryEvent event = new QueryEvent(Employee.class);
+            event.setPlan(QueryPlan.build(QueryShape.of(Employee.class, entries, QueryOptions.DEFAULT),
+                    Employee.class, entries, QueryOptions.DEFAULT));
+            event.setRowCount(rows);
+            event.stop();
+            profiler.onQuery(event);
+        }
+    }
+
+    private Map<String, QueryProfile> profilesByShape() {
+        return profiler.getProfiles().stream().collect(Collectors.toMap(QueryProfile::getShape, Function.identity()));
+    }
+
+    private static String shape(String expr) {
+        return QueryShape.of(Employee.class, entries(Employee.class, expr), QueryOptions.DEFAULT).getDescription();
+    }
+
+    private static List<String> indexes(Class<?> entity, String expr) {
+        return QueryProfiler.suggestIndexes(QueryTerm.of(entity, entries(entity, expr)));
+    }
+
+    private static ExpressionEntries entries(Class<?> entity, String expr) {
+        return ExpressionFactory.createFromParams(entity, Map.of("EXPR", expr));
+    }
+}
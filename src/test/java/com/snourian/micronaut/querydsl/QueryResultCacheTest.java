@@ -0,0 +1,145 @@
+package com.snourian.micronaut.querydsl;
+
+import com.snourian.micronaut.querydsl.model.Department;
+import com.snourian.micronaut.querydsl.model.Employee;
+import io.micronaut.data.model.Sort;
+import io.micronaut.transaction.support.TransactionSynchronization;
+import io.micronaut.transaction.support.TransactionSynchronizationManager;
+import org.junit.jupiter.api.*;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// the 'tracked' unit has EntityChangeTracker as the default entity listener. Every test adds its own rows
+class QueryResultCacheTest {
+
+    private static EntityManagerFactory factory;
+    private static long nextId = 1;
+    private EntityManager em;
+    private QueryResultCache cache;
+    private QueryOptions options;
+
+    @BeforeAll
+    static void createDatabase() {
+        factory = Persistence.createEntityManagerFactory("tracked");
+    }
+
+    @AfterAll
+    static void closeDatabase() {
+        factory.close();
+    }
+
+    @BeforeEach
+    void open() {
+        em = factory.createEntityManager();
+        cache = new QueryResultCache(100, Duration.ofHours(1));
+        options = QueryOptions.builder().resultCache(cache).build();
+    }
+
+    @AfterEach
+    void close() {
+        ReadRouting.clearWrite();
+        em.close();
+    }
+
+    @Test
+    void hitUntilTheEntityChanges() {
+        final long id = insertEmployee("cached", null);
+        final Map<String, String> params = Map.of("name", "eq(cached)");
+        assertEquals(List.of(id), employeeIds(params));
+        assertEquals(List.of(id), employeeIds(params));
+        assertEquals(1, cache.getHitCount());
+        final long other = insertEmployee("cached", null);
+        assertEquals(List.of(id, other), employeeIds(params));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    void changeOfAJoinedEntityInvalidates() {
+        final Department department = insertDepartment("joined");
+        final long id = insertEmployee("member", department);
+        final Map<String, String> params = Map.of("department.name", "eq(joined)");
+        assertEquals(List.of(id), employeeIds(params));
+        insertDepartment("unrelated");
+        assertEquals(List.of(id), employeeIds(params));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    void changeOfAnotherEntityKeepsTheEntry() {
+        final Department department = insertDepartment("kept");
+        final Map<String, String> params = Map.of("name", "eq(kept)");
+        final TestRepository<Department> departments = new TestRepository<>(em, Department.class, options);
+        assertEquals(1, departments.findAll(new QueryParameters(params), Sort.unsorted()).size());
+        insertEmployee("other", null);
+        final List<Department> cached = departments.findAll(new QueryParameters(params), Sort.unsorted());
+        assertEquals(List.of(department.getId()), cached.stream().map(Department::getId).collect(Collectors.toList()));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void transactionCompletionInvalidatesTheEntriesOfTheTransaction() {
+        final Map<String, String> params = Map.of("name", "eq(committed)");
+        final long id;
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // the listener runs at flush time: a query of another thread could still cache the rows of before
+            // the commit under the new generation, simulated here by caching the result before the completion
+            id = insertEmployee("committed", null);
+            assertEquals(List.of(id), employeeIds(params));
+            assertEquals(List.of(id), employeeIds(params));
+            assertEquals(1, cache.getHitCount());
+            final List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager
+                    .getSynchronizations();
+            assertEquals(1, synchronizations.size());
+            synchronizations.forEach(sync -> sync.afterCompletion(TransactionSynchronization.Status.COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertEquals(List.of(id), employeeIds(params));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    private List<Long> employeeIds(Map<String, String> params) {
+        return new TestRepository<>(em, Employee.class, options)
+                .findAll(new QueryParameters(params), Sort.of(Sort.Order.asc("id")))
+                .stream()
+                .map(Employee::getId)
+                .collect(Collectors.toList());
+    }
+
+    private long insertEmployee(String name, Department department) {
+        final Employee employee = new Employee();
+        employee.setId(nextId++);
+        employee.setName(name);
+        employee.setDepartment(department);
+        persist(employee);
+        return employee.getId();
+    }
+
+    private Department insertDepartment(String name) {
+        final Department department = new Department();
+        department.setId(nextId++);
+        department.setName(name);
+        persist(department);
+        return department;
+    }
+
+    private void persist(Object entity) {
+        final EntityManager writer = factory.createEntityManager();
+        writer.getTransaction().begin();
+        writer.persist(entity);
+        writer.getTransaction().commit();
+        writer.close();
+    }
+}
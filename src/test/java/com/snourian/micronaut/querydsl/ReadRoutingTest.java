@@ -0,0 +1,162 @@
+package com.snourian.micronaut.querydsl;
+
+import com.snourian.micronaut.querydsl.model.Employee;
+import io.micronaut.data.model.Page;
+import io.micronaut.data.model.Pageable;
+import io.micronaut.data.model.Sort;
+import org.junit.jupiter.api.*;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// the primary database has 3 employees, the replica 5, so every result tells which database it was read from
+class ReadRoutingTest {
+
+    private static EntityManagerFactory primaryFactory;
+    private static EntityManagerFactory replicaFactory;
+    private static ExecutorService executor;
+    private EntityManager primary;
+    private EntityManager replica;
+
+    @BeforeAll
+    static void createDatabases() {
+        primaryFactory = Persistence.createEntityManagerFactory("primary");
+        replicaFactory = Persistence.createEntityManagerFactory("replica");
+        insertEmployees(primaryFactory, 3);
+        insertEmployees(replicaFactory, 5);
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterAll
+    static void closeDatabases() {
+        executor.shutdown();
+        primaryFactory.close();
+        replicaFactory.close();
+    }
+
+    @BeforeEach
+    void open() {
+        primary = primaryFactory.createEntityManager();
+        replica = replicaFactory.createEntityManager();
+    }
+
+    @AfterEach
+    void close() {
+        ReadRouting.clearWrite();
+        primary.close();
+        replica.close();
+    }
+
+    @Test
+    void primaryByDefault() {
+        final EmployeeRepository repository = repository(QueryOptions.DEFAULT);
+        assertEquals(3, repository.findAll(params(), Sort.unsorted()).size());
+        assertEquals(3, repository.count(params()));
+    }
+
+    @Test
+    void replicaIfRouted() {
+        final EmployeeRepository repository = repository(replicaOptions(Duration.ZERO));
+        assertEquals(5, repository.findAll(params(), Sort.unsorted()).size());
+        assertEquals(5, repository.count(params()));
+    }
+
+    @Test
+    void primaryInTheStickyWindow() {
+        final EmployeeRepository repository = repository(replicaOptions(Duration.ofHours(1)));
+        ReadRouting.markWrite();
+        assertEquals(3, repository.findAll(params(), Sort.unsorted()).size());
+        assertEquals(3, repository.count(params()));
+        ReadRouting.clearWrite();
+        assertEquals(5, repository.findAll(params(), Sort.unsorted()).size());
+    }
+
+    @Test
+    void replicaAfterTheStickyWindow() {
+        final EmployeeRepository repository = repository(replicaOptions(Duration.ZERO));
+        ReadRouting.markWrite();
+        assertEquals(5, repository.findAll(params(), Sort.unsorted()).size());
+    }
+
+    @Test
+    void parallelCountReadsTheDatabaseOfTheCall() {
+        final QueryOptions options = replicaOptions(Duration.ofHours(1)).toBuilder()
+                .parallelCount(true)
+                .executor(executor)
+                .build();
+        final EmployeeRepository repository = repository(options);
+        ReadRouting.markWrite();
+        Page<Employee> page = repository.findAll(params(), Pageable.from(0, 2), options);
+        assertEquals(2, page.getContent().size());
+        assertEquals(3, page.getTotalSize());
+        ReadRouting.clearWrite();
+        page = repository.findAll(params(), Pageable.from(0, 2), options);
+        assertEquals(2, page.getContent().size());
+        assertEquals(5, page.getTotalSize());
+    }
+
+    private EmployeeRepository repository(QueryOptions options) {
+        return new EmployeeRepository(primary, replica, options);
+    }
+
+    private static QueryOptions replicaOptions(Duration stickyWindow) {
+        return QueryOptions.builder().readRouting(ReadRouting.replica(stickyWindow)).build();
+    }
+
+    private static QueryParameters params() {
+        return new QueryParameters(Map.of());
+    }
+
+    private static void insertEmployees(EntityManagerFactory factory, int count) {
+        final EntityManager em = factory.createEntityManager();
+        em.getTransaction().begin();
+        for (long id = 1; id <= count; id++) {
+            final Employee employee = new Employee();
+            employee.setId(id);
+            employee.setName("employee" + id);
+            employee.setScore((int) id * 10);
+            em.persist(employee);
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    private static class EmployeeRepository implements QuerydslPredicateExecutor<Employee> {
+        private final EntityManager primary;
+        private final EntityManager replica;
+        private final QueryOptions options;
+
+        private EmployeeRepository(EntityManager primary, EntityManager replica, QueryOptions options) {
+            this.primary = primary;
+            this.replica = replica;
+            this.options = options;
+        }
+
+        @Override
+        public EntityManager getEntityManager() {
+            return primary;
+        }
+
+        @Override
+        public EntityManager getReadEntityManager() {
+            return replica;
+        }
+
+        @Override
+        public Class<Employee> getEntityClass() {
+            return Employee.class;
+        }
+
+        @Override
+        public QueryOptions getQueryOptions() {
+            return options;
+        }
+    }
+}
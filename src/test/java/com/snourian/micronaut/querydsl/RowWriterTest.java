@@ -0,0 +1,53 @@
+package com.snourian.micronaut.querydsl;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RowWriterTest {
+
+    private static String write(ExportFormat format, List<String> fields, Object[]... rows) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final RowWriter writer = RowWriter.of(ExportOptions.builder().format(format).build(), fields, out);
+        for (Object[] row : rows)
+            writer.write(row);
+        writer.finish();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void csvQuotesSeparatorsQuotesAndLineBreaks() throws IOException {
+        final String csv = write(ExportFormat.CSV, List.of("name", "city"),
+                new Object[]{"Smith, John", "Gotham"},
+                new Object[]{"The \"Bat\"", "line\nbreak"},
+                new Object[]{"cr\r", null});
+        assertEquals("name,city\r\n" +
+                "\"Smith, John\",Gotham\r\n" +
+                "\"The \"\"Bat\"\"\",\"line\nbreak\"\r\n" +
+                "\"cr\r\",\r\n", csv);
+    }
+
+    @Test
+    void csvWritesValuesAsIs() throws IOException {
+        assertEquals("score,name\r\n70,O'Brien\r\n",
+                write(ExportFormat.CSV, List.of("score", "name"), new Object[]{70, "O'Brien"}));
+    }
+
+    @Test
+    void csvWithoutRowsIsTheHeader() throws IOException {
+        assertEquals("\"a,b\"\r\n", write(ExportFormat.CSV, List.of("a,b")));
+    }
+
+    @Test
+    void ndjsonWritesOneObjectPerLine() throws IOException {
+        assertEquals("{\"name\":\"a\\\"b\",\"score\":1}\n{\"name\":null,\"score\":2}\n",
+                write(ExportFormat.NDJSON, List.of("name", "score"),
+                        new Object[]{"a\"b", 1}, new Object[]{null, 2}));
+        assertEquals("", write(ExportFormat.NDJSON, List.of("name")));
+    }
+}
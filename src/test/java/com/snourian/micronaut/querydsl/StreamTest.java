@@ -0,0 +1,81 @@
+package com.snourian.micronaut.querydsl;
+
+import com.snourian.micronaut.querydsl.model.Employee;
+import io.micronaut.data.model.Sort;
+import org.junit.jupiter.api.*;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamTest {
+
+    private static EntityManagerFactory factory;
+    private EntityManager em;
+
+    @BeforeAll
+    static void createDatabase() {
+        factory = Persistence.createEntityManagerFactory("primary");
+        final EntityManager em = factory.createEntityManager();
+        em.getTransaction().begin();
+        for (long id = 1; id <= 5; id++) {
+            final Employee employee = new Employee();
+            employee.setId(id);
+            employee.setName("employee" + id);
+            employee.setScore((int) id * 10);
+            em.persist(employee);
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    @AfterAll
+    static void closeDatabase() {
+        factory.close();
+    }
+
+    @BeforeEach
+    void open() {
+        em = factory.createEntityManager();
+    }
+
+    @AfterEach
+    void close() {
+        em.close();
+    }
+
+    @Test
+    void streamsEveryRowInOrder() {
+        final TestRepository<Employee> repository = new TestRepository<>(em, Employee.class,
+                QueryOptions.builder().fetchSize(2).detachEvery(2).build());
+        try (Stream<Employee> employees = repository.streamAll(new QueryParameters(Map.of("score", "goe(20)")),
+                Sort.of(Sort.Order.desc("score")))) {
+            assertEquals(List.of(5L, 4L, 3L, 2L), employees.map(Employee::getId).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void entitiesOfTheCallerAreNotDetached() {
+        final Employee managed = em.find(Employee.class, 1L);
+        final TestRepository<Employee> repository = new TestRepository<>(em, Employee.class,
+                QueryOptions.builder().detachEvery(1).build());
+        try (Stream<Employee> employees = repository.streamAll(new QueryParameters(Map.of()), Sort.unsorted())) {
+            assertEquals(5, employees.count());
+        }
+        assertTrue(em.contains(managed));
+    }
+
+    @Test
+    void streamedRowsAreNotInTheCallersContext() {
+        final TestRepository<Employee> repository = new TestRepository<>(em, Employee.class, QueryOptions.DEFAULT);
+        try (Stream<Employee> employees = repository.streamAll(new QueryParameters(Map.of()), Sort.unsorted())) {
+            employees.forEach(employee -> assertFalse(em.contains(employee)));
+        }
+    }
+}
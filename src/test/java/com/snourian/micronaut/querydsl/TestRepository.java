@@ -0,0 +1,32 @@
+package com.snourian.micronaut.querydsl;
+
+import javax.persistence.EntityManager;
+
+// a repository of the tests, on one EntityManager
+class TestRepository<T> implements QuerydslPredicateExecutor<T> {
+
+    private final EntityManager em;
+    private final Class<T> entityClass;
+    private final QueryOptions options;
+
+    TestRepository(EntityManager em, Class<T> entityClass, QueryOptions options) {
+        this.em = em;
+        this.entityClass = entityClass;
+        this.options = options;
+    }
+
+    @Override
+    public EntityManager getEntityManager() {
+        return em;
+    }
+
+    @Override
+    public Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    @Override
+    public QueryOptions getQueryOptions() {
+        return options;
+    }
+}
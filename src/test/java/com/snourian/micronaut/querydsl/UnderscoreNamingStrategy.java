@@ -0,0 +1,27 @@
+package com.snourian.micronaut.querydsl;
+
+import io.micronaut.data.model.naming.NamingStrategies;
+import io.micronaut.data.model.naming.NamingStrategy;
+import org.hibernate.boot.model.naming.Identifier;
+import org.hibernate.boot.model.naming.PhysicalNamingStrategyStandardImpl;
+import org.hibernate.engine.jdbc.env.spi.JdbcEnvironment;
+
+// under_score_lower_case tables and columns, like the default physical naming strategy of micronaut-hibernate-jpa
+public class UnderscoreNamingStrategy extends PhysicalNamingStrategyStandardImpl {
+
+    private static final NamingStrategy NAMING = new NamingStrategies.UnderScoreSeparatedLowerCase();
+
+    @Override
+    public Identifier toPhysicalTableName(Identifier name, JdbcEnvironment context) {
+        return underscore(name);
+    }
+
+    @Override
+    public Identifier toPhysicalColumnName(Identifier name, JdbcEnvironment context) {
+        return underscore(name);
+    }
+
+    private static Identifier underscore(Identifier name) {
+        return name == null ? null : Identifier.toIdentifier(NAMING.mappedName(name.getText()), name.isQuoted());
+    }
+}
@@ -0,0 +1,107 @@
+package com.snourian.micronaut.querydsl.expression;
+
+import com.snourian.micronaut.querydsl.expression.operator.PredicateOperator;
+import com.snourian.micronaut.querydsl.model.Department;
+import com.snourian.micronaut.querydsl.model.Employee;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpressionNormalizerTest {
+
+    private static ExpressionEntries expr(String expr) {
+        return ExpressionFactory.createFromParams(Employee.class, Map.of(ExpressionType.ExprKey, expr));
+    }
+
+    @Test
+    void contradictionIsUnsatisfiable() {
+        assertTrue(expr("allOf(score=gt(10),score=lt(5))").isUnsatisfiable());
+    }
+
+    @Test
+    void anyOfOfContradictionsIsUnsatisfiable() {
+        final ExpressionEntries entries = expr("anyOf(allOf(score=gt(10),score=lt(5)))");
+        assertTrue(entries.isUnsatisfiable());
+        assertFalse(entries.isEmpty());
+    }
+
+    @Test
+    void anyOfOfContradictionsMakesParentUnsatisfiable() {
+        assertTrue(expr("allOf(name=eq(a),anyOf(allOf(score=gt(10),score=lt(5)),allOf(score=eq(1),score=eq(2))))")
+                .isUnsatisfiable());
+    }
+
+    @Test
+    void anyOfKeepsSatisfiableAlternatives() {
+        final ExpressionEntries entries = expr("anyOf(allOf(score=gt(10),score=lt(5)),name=eq(a))");
+        assertFalse(entries.isUnsatisfiable());
+        assertEquals(1, entries.flatten().size());
+        assertEquals("name", entries.flatten().get(0).getKey());
+    }
+
+    @Test
+    void emptyParamsMatchAll() {
+        final ExpressionEntries entries = ExpressionFactory.createFromParams(Employee.class, Map.of());
+        assertTrue(entries.isEmpty());
+        assertFalse(entries.isUnsatisfiable());
+    }
+
+    @Test
+    void bigDecimalsAreComparedByValue() {
+        final ExpressionEntries entries = expr("allOf(salary=eq(1.0),salary=in(1.00,2))");
+        assertFalse(entries.isUnsatisfiable());
+        assertEquals(1, entries.flatten().size());
+        assertEquals(0, new BigDecimal("1").compareTo((BigDecimal) entries.flatten().get(0).getValues()[0]));
+        assertFalse(expr("allOf(salary=eq(1.0),salary=loe(1.00))").isUnsatisfiable());
+        assertTrue(expr("allOf(salary=eq(1.0),salary=lt(1.00))").isUnsatisfiable());
+    }
+
+    @Test
+    void temporalRangesAreIntersected() {
+        assertTrue(expr("allOf(hired=gt(2021-01-01),hired=lt(2020-01-01))").isUnsatisfiable());
+        final ExpressionEntries entries = expr("allOf(hired=goe(2020-01-01),hired=loe(2021-01-01),hired=loe(2022-01-01))");
+        assertEquals(1, entries.flatten().size());
+        assertEquals(PredicateOperator.BETWEEN, entries.flatten().get(0).getOp());
+    }
+
+    @Test
+    void stringsAreNotIntersected() {
+        // e.g. a case insensitive collation matches both values
+        final ExpressionEntries entries = expr("allOf(name=eq(abc),name=eq(ABC))");
+        assertFalse(entries.isUnsatisfiable());
+        assertEquals(2, entries.flatten().size());
+        assertFalse(expr("allOf(name=gt(b),name=lt(a))").isUnsatisfiable());
+    }
+
+    @Test
+    void groupsOnACollectionOfTheNodeAreKept() {
+        // under JoinStrategy.EXISTS the group has its own subquery, i.e. it may match another employee
+        ExpressionEntries entries = departments("allOf(employees.rank=eq(Manager),anyOf(employees.score=gt(80)))");
+        assertEquals(1, entries.getPredicates().size());
+        assertEquals(1, entries.getGroups().size());
+        assertEquals("employees.score", entries.getGroups().get(0).getPredicates().get(0).getKey());
+        entries = departments("allOf(employees.rank=eq(Manager),allOf(employees.score=gt(80),name=eq(a)))");
+        assertEquals(1, entries.getPredicates().size());
+        assertEquals(2, entries.getGroups().get(0).getPredicates().size());
+        // the intersection of the ranges only applies to predicates of the same node
+        assertFalse(departments("allOf(employees.score=gt(10),allOf(employees.score=lt(5)))").isUnsatisfiable());
+        assertTrue(departments("allOf(employees.score=gt(10),employees.score=lt(5))").isUnsatisfiable());
+    }
+
+    @Test
+    void groupsOnOtherCollectionsAreFlattened() {
+        ExpressionEntries entries = departments("allOf(name=eq(a),anyOf(employees.score=gt(80)))");
+        assertEquals(2, entries.getPredicates().size());
+        assertTrue(entries.getGroups().isEmpty());
+        entries = departments("allOf(allOf(employees.rank=eq(Manager),employees.score=gt(80)),location.city=eq(Paris))");
+        assertEquals(3, entries.getPredicates().size());
+        assertTrue(entries.getGroups().isEmpty());
+    }
+
+    private static ExpressionEntries departments(String expr) {
+        return ExpressionFactory.createFromParams(Department.class, Map.of(ExpressionType.ExprKey, expr));
+    }
+}
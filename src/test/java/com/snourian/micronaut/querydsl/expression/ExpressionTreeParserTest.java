@@ -0,0 +1,103 @@
+package com.snourian.micronaut.querydsl.expression;
+
+import com.snourian.micronaut.querydsl.expression.operator.PredicateOperator;
+import com.snourian.micronaut.querydsl.model.Department;
+import com.snourian.micronaut.querydsl.model.Employee;
+import com.snourian.micronaut.querydsl.model.Rank;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpressionTreeParserTest {
+
+    @Test
+    void leafIsOneAllOf() {
+        final ExpressionEntries entries = ExpressionTreeParser.parse(Employee.class, "score=gt(70)");
+        assertEquals(ExpressionType.ALLOF, entries.getType());
+        assertEquals(1, entries.getPredicates().size());
+        final PredicateEntry entry = entries.getPredicates().get(0);
+        assertEquals("score", entry.getKey());
+        assertEquals(PredicateOperator.GT, entry.getOp());
+        assertArrayEquals(new Object[]{70}, entry.getValues());
+    }
+
+    @Test
+    void nestedGroups() {
+        final ExpressionEntries entries = ExpressionTreeParser.parse(Department.class,
+                "anyOf(allOf(employees.rank=eq(Manager), employees.score=gt(70)), location.city=eq(Gotham))");
+        assertEquals(ExpressionType.ANYOF, entries.getType());
+        assertEquals(1, entries.getPredicates().size());
+        assertEquals("location.city", entries.getPredicates().get(0).getKey());
+        assertEquals(1, entries.getGroups().size());
+        final ExpressionEntries group = entries.getGroups().get(0);
+        assertEquals(ExpressionType.ALLOF, group.getType());
+        assertEquals(2, group.getPredicates().size());
+        assertEquals(Rank.Manager, group.getPredicates().get(0).getValues()[0]);
+        assertEquals("employees.score", group.getPredicates().get(1).getKey());
+    }
+
+    @Test
+    void groupNamesIgnoreCase() {
+        assertEquals(ExpressionType.ANYOF,
+                ExpressionTreeParser.parse(Employee.class, "ANYOF(score=eq(1),score=eq(2))").getType());
+    }
+
+    @Test
+    void quotedValuesKeepCommasAndParentheses() {
+        final ExpressionEntries entries = ExpressionTreeParser.parse(Employee.class,
+                "allOf(name=in('Smith, John','a(b'),score=eq(1))");
+        assertEquals(2, entries.getPredicates().size());
+        assertArrayEquals(new Object[]{"Smith, John", "a(b"}, entries.getPredicates().get(0).getValues());
+    }
+
+    @Test
+    void apostropheInsideAValueIsNotAQuote() {
+        final ExpressionEntries entries = ExpressionTreeParser.parse(Employee.class, "anyOf(name=eq(O'Brien),score=eq(1))");
+        assertArrayEquals(new Object[]{"O'Brien"}, entries.getPredicates().get(0).getValues());
+    }
+
+    @Test
+    void escapedParenthesesDoNotCloseTheLeaf() {
+        final ExpressionEntries entries = ExpressionTreeParser.parse(Employee.class,
+                "allOf(name=eq(a\\)b),score=eq(1))");
+        assertEquals(2, entries.getPredicates().size());
+        assertArrayEquals(new Object[]{"a)b"}, entries.getPredicates().get(0).getValues());
+    }
+
+    @Test
+    void whitespaceAroundKeysAndGroups() {
+        final ExpressionEntries entries = ExpressionTreeParser.parse(Employee.class,
+                " anyOf( name = eq(a) , allOf(score=gt(1), score=lt(9)) ) ");
+        assertEquals(ExpressionType.ANYOF, entries.getType());
+        assertEquals("name", entries.getPredicates().get(0).getKey());
+        assertEquals(2, entries.getGroups().get(0).getPredicates().size());
+    }
+
+    @Test
+    void missingParenthesis() {
+        final PredicateParseException e = assertThrows(PredicateParseException.class,
+                () -> ExpressionTreeParser.parse(Employee.class, "allOf(score=eq(1),score=eq(2)"));
+        assertEquals("missing ')'", e.getReason());
+    }
+
+    @Test
+    void unknownGroup() {
+        final PredicateParseException e = assertThrows(PredicateParseException.class,
+                () -> ExpressionTreeParser.parse(Employee.class, "noneOf(score=eq(1))"));
+        assertEquals(6, e.getPosition());
+    }
+
+    @Test
+    void unknownProperty() {
+        final PredicateParseException e = assertThrows(PredicateParseException.class,
+                () -> ExpressionTreeParser.parse(Employee.class, "allOf(age=eq(1))"));
+        assertEquals("unknown property 'age'", e.getReason());
+    }
+
+    @Test
+    void trailingCharacters() {
+        final PredicateParseException e = assertThrows(PredicateParseException.class,
+                () -> ExpressionTreeParser.parse(Employee.class, "allOf(score=eq(1)) x"));
+        assertEquals("unexpected trailing characters", e.getReason());
+    }
+}
@@ -0,0 +1,86 @@
+package com.snourian.micronaut.querydsl.expression;
+
+import com.snourian.micronaut.querydsl.expression.operator.PredicateOperator;
+import com.snourian.micronaut.querydsl.model.Employee;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PredicateTokenizerTest {
+
+    @Test
+    void operatorsIgnoreCase() {
+        assertEquals(PredicateOperator.NOT_IN, entry("name", "NOT_IN(a,b)").getOp());
+        assertEquals(PredicateOperator.EQ, entry("name", "Eq(a)").getOp());
+        final PredicateEntry isNull = entry("name", "Is_Null()");
+        assertEquals(PredicateOperator.IS_NULL, isNull.getOp());
+        assertEquals(0, isNull.getValues().length);
+    }
+
+    @Test
+    void valuesAreConvertedToThePropertyType() {
+        assertArrayEquals(new Object[]{10, 20}, entry("score", "between(10,20)").getValues());
+        // spaces belong to unquoted values
+        assertArrayEquals(new Object[]{" a", "b "}, entry("name", "in( a,b )").getValues());
+    }
+
+    @Test
+    void quotedValues() {
+        assertArrayEquals(new Object[]{"Smith, John"}, entry("name", "eq('Smith, John')").getValues());
+        assertArrayEquals(new Object[]{"a(b)", "c"}, entry("name", "in(\"a(b)\",c)").getValues());
+        assertArrayEquals(new Object[]{"O'Brien"}, entry("name", "eq(\"O'Brien\")").getValues());
+        // spaces around a quoted value are skipped
+        assertArrayEquals(new Object[]{"a", "b"}, entry("name", "in( 'a' , 'b' )").getValues());
+        assertArrayEquals(new Object[]{""}, entry("name", "eq('')").getValues());
+    }
+
+    @Test
+    void backslashEscapesTheNextCharacter() {
+        assertArrayEquals(new Object[]{"Smith, John"}, entry("name", "eq(Smith\\, John)").getValues());
+        assertArrayEquals(new Object[]{"It's"}, entry("name", "eq('It\\'s')").getValues());
+        assertArrayEquals(new Object[]{"a\\b"}, entry("name", "eq(a\\\\b)").getValues());
+        assertArrayEquals(new Object[]{"a)", "b,c"}, entry("name", "in(a\\),'b\\,c')").getValues());
+    }
+
+    @Test
+    void valuesOfListsAreDistinct() {
+        assertArrayEquals(new Object[]{1, 2}, entry("score", "in(1,2,1,2)").getValues());
+        assertArrayEquals(new Object[]{"a"}, entry("name", "not_in(a,'a',\"a\")").getValues());
+        // other operators keep every value
+        assertArrayEquals(new Object[]{1, 1}, entry("score", "between(1,1)").getValues());
+    }
+
+    @Test
+    void errorsPointToTheInvalidCharacter() {
+        assertError("(a)", 0, "cannot find operator");
+        assertError("eq", 2, "expected '(' after the operator");
+        assertError("eq a)", 2, "expected '(' after the operator");
+        assertError("equal(a)", 0, "invalid operator 'equal'");
+        assertError("eq(a", 4, "no closing parentheses at the end");
+        assertError("in()", 3, "empty list of values");
+        assertError("eq(a\\)", 4, "incomplete escape sequence");
+        assertError("eq('a\\)", 5, "incomplete escape sequence");
+        assertError("eq('abc)", 3, "unterminated quoted value");
+        assertError("in(a,'b'c)", 8, "expected ',' or ')' after a quoted value");
+    }
+
+    @Test
+    void invalidValuePointsToItsStart() {
+        final PredicateParseException e = assertThrows(PredicateParseException.class,
+                () -> entry("score", "in(1,x)"));
+        assertEquals(5, e.getPosition());
+        assertEquals("invalid value 'x'", e.getReason());
+        assertEquals("in(1,x)", e.getInput());
+        assertNotNull(e.getCause());
+    }
+
+    private static void assertError(String value, int position, String reason) {
+        final PredicateParseException e = assertThrows(PredicateParseException.class, () -> entry("name", value));
+        assertEquals(reason, e.getReason(), value);
+        assertEquals(position, e.getPosition(), value);
+    }
+
+    private static PredicateEntry entry(String key, String value) {
+        return ExpressionFactory.create(Employee.class, key, value).orElseThrow();
+    }
+}
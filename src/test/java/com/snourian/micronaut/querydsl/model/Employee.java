@@ -0,0 +1,97 @@
+package com.snourian.micronaut.querydsl.model;
+
+import io.micronaut.core.annotation.Introspected;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Locale;
+
+@Entity
+@Introspected
+public class Employee {
+
+    @Id
+    private Long id;
+    private String name;
+    // lower case name, for PREFIX_IC
+    private String nameNormalized;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "employee_rank")
+    private Rank rank;
+    private Integer score;
+    private BigDecimal salary;
+    private LocalDate hired;
+    @ManyToOne(fetch = FetchType.LAZY)
+    private Department department;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getNameNormalized() {
+        return nameNormalized;
+    }
+
+    public void setNameNormalized(String nameNormalized) {
+        this.nameNormalized = nameNormalized;
+    }
+
+    @PrePersist
+    @PreUpdate
+    void normalize() {
+        nameNormalized = name != null ? name.toLowerCase(Locale.ROOT) : null;
+    }
+
+    public Rank getRank() {
+        return rank;
+    }
+
+    public void setRank(Rank rank) {
+        this.rank = rank;
+    }
+
+    public Integer getScore() {
+        return score;
+    }
+
+    public void setScore(Integer score) {
+        this.score = score;
+    }
+
+    public BigDecimal getSalary() {
+        return salary;
+    }
+
+    public void setSalary(BigDecimal salary) {
+        this.salary = salary;
+    }
+
+    public LocalDate getHired() {
+        return hired;
+    }
+
+    public void setHired(LocalDate hired) {
+        this.hired = hired;
+    }
+
+    public Department getDepartment() {
+        return department;
+    }
+
+    public void setDepartment(Department department) {
+        this.department = department;
+    }
+}
@@ -0,0 +1,79 @@
+package com.snourian.micronaut.querydsl.model;
+
+import com.snourian.micronaut.querydsl.ProjectedFrom;
+import io.micronaut.core.annotation.Introspected;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+// a projection of Employee with its department, which may be null
+@Introspected
+public class EmployeeRow {
+
+    private final Long id;
+    private final String name;
+    private final String nameNormalized;
+    private final Rank rank;
+    private final Integer score;
+    private final BigDecimal salary;
+    private final LocalDate hired;
+    private final String department;
+    private final String city;
+
+    public EmployeeRow(Long id, String name, String nameNormalized, Rank rank, Integer score, BigDecimal salary,
+                       LocalDate hired, @ProjectedFrom("department.name") String department,
+                       @ProjectedFrom("department.location.city") String city) {
+        this.id = id;
+        this.name = name;
+        this.nameNormalized = nameNormalized;
+        this.rank = rank;
+        this.score = score;
+        this.salary = salary;
+        this.hired = hired;
+        this.department = department;
+        this.city = city;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getNameNormalized() {
+        return nameNormalized;
+    }
+
+    public Rank getRank() {
+        return rank;
+    }
+
+    public Integer getScore() {
+        return score;
+    }
+
+    public BigDecimal getSalary() {
+        return salary;
+    }
+
+    public LocalDate getHired() {
+        return hired;
+    }
+
+    public String getDepartment() {
+        return department;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    // the values of the row, to compare the rows of two queries
+    public List<Object> values() {
+        return Arrays.asList(id, name, nameNormalized, rank, score, salary, hired, department, city);
+    }
+}
@@ -0,0 +1,29 @@
+package com.snourian.micronaut.querydsl.model;
+
+import io.micronaut.core.annotation.Introspected;
+
+import javax.persistence.Embeddable;
+
+@Embeddable
+@Introspected
+public class Location {
+
+    private String city;
+    private String country;
+
+    public String getCity() {
+        return city;
+    }
+
+    public void setCity(String city) {
+        this.city = city;
+    }
+
+    public String getCountry() {
+        return country;
+    }
+
+    public void setCountry(String country) {
+        this.country = country;
+    }
+}